@@ -0,0 +1,141 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Module;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generación del archivo module-info.class de {@code moduleCount} módulos independientes: compilando cada descriptor
+ * por separado ({@link Compiler#compileModuleDescriptor}), compilándolos todos en un lote
+ * ({@link Compiler#compileModuleDescriptors}) y escribiéndolos directamente ({@link ModuleInfoWriter}).
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompilerBenchmark {
+
+    private static final int ENTRIES_PER_JAR = 200;
+
+    @Param({"1", "10"})
+    int moduleCount;
+
+    File workDir;
+    String modulePath;
+    Compiler compiler;
+    List<Module> modules;
+    List<String> sources;
+    List<JarContent> jarContents;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workDir = Files.createTempDirectory("jar-modularizer-bench-").toFile();
+        File modulePathDir = new File(workDir, "mods");
+        Files.createDirectories(modulePathDir.toPath());
+        modulePath = modulePathDir.toString();
+        compiler = new Compiler();
+
+        modules = new ArrayList<>(moduleCount);
+        sources = new ArrayList<>(moduleCount);
+        jarContents = new ArrayList<>(moduleCount);
+        for (int i = 0; i < moduleCount; i++) {
+            String moduleName = SyntheticData.moduleName(i);
+            File jarFile = SyntheticData.generateJar(new File(workDir, moduleName + ".jar"), moduleName, ENTRIES_PER_JAR, SyntheticData.SEED + i);
+            Set<String> packages = SyntheticData.generatedPackages(moduleName, ENTRIES_PER_JAR);
+
+            StringBuilder source = new StringBuilder("module ").append(moduleName).append(" {\n");
+            packages.forEach(p -> source.append("    exports ").append(p).append(";\n"));
+            source.append("}");
+
+            modules.add(new Module(moduleName, null, null));
+            sources.add(source.toString());
+            jarContents.add(JarContent.scan(jarFile));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        compiler.close();
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void compileOneByOne(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < moduleCount; i++) {
+            ByteArrayOutputStream classOutput = new ByteArrayOutputStream();
+            blackhole.consume(compiler.compileModuleDescriptor(modules.get(i).getName(), sources.get(i), jarContents.get(i), modulePath, classOutput));
+            blackhole.consume(classOutput.toByteArray());
+        }
+    }
+
+    @Benchmark
+    public DescriptorBatch compileBatch() throws Exception {
+        DescriptorBatch batch = new DescriptorBatch();
+        for (int i = 0; i < moduleCount; i++) {
+            batch.add(modules.get(i).getName(), sources.get(i), jarContents.get(i));
+        }
+
+        if (!compiler.compileModuleDescriptors(batch, modulePath)) {
+            throw new IllegalStateException("Batch compilation failed");
+        }
+
+        return batch;
+    }
+
+    @Benchmark
+    public void writeBytecode(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < moduleCount; i++) {
+            blackhole.consume(ModuleInfoWriter.write(modules.get(i), jarContents.get(i).getNonEmptyPackages()));
+        }
+    }
+}
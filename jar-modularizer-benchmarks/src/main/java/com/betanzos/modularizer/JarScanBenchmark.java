@@ -0,0 +1,102 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Module;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda de los paquetes de un JAR ({@link JarContent#scan(File)}) y creación del JAR modularizado
+ * ({@link Modularizer#patchJar(File, byte[])}) para JARs de distintos tamaños.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JarScanBenchmark {
+
+    private static final String MODULE_NAME = "bench.scan";
+
+    @Param({"10", "1000", "100000"})
+    int entryCount;
+
+    File workDir;
+    File jarFile;
+    byte[] moduleDescriptor;
+    Modularizer modularizer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workDir = Files.createTempDirectory("jar-modularizer-bench-").toFile();
+        jarFile = SyntheticData.generateJar(new File(workDir, "scan-" + entryCount + ".jar"), MODULE_NAME, entryCount, SyntheticData.SEED);
+
+        Set<String> packages = SyntheticData.generatedPackages(MODULE_NAME, entryCount);
+        moduleDescriptor = ModuleInfoWriter.write(new Module(MODULE_NAME, null, null), packages);
+
+        // patchJar escribe en el directorio destino de los parámetros de la ejecución
+        Options options = new Options();
+        options.destDir = new File(workDir, "mods");
+        Files.createDirectories(options.destDir.toPath());
+        modularizer = new Modularizer(options, System.out);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public JarContent scanPackages() throws IOException {
+        return JarContent.scan(jarFile);
+    }
+
+    @Benchmark
+    public void patchJar() {
+        modularizer.patchJar(jarFile, moduleDescriptor);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Artifact;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordenación de los artefactos del descriptor por sus dependencias, tal y como la realiza
+ * {@code Modularizer.sortArtifacts()}: construcción del grafo de dependencias, detección de ciclos y orden
+ * topológico.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortArtifactsBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    int artifactCount;
+
+    Set<Artifact> artifacts;
+    DependencyGraph graph;
+
+    @Setup
+    public void setup() {
+        List<Artifact> generated = SyntheticData.generateArtifacts(artifactCount, 4, SyntheticData.SEED);
+        artifacts = new LinkedHashSet<>(generated);
+        graph = DependencyGraph.build(artifacts);
+    }
+
+    @Benchmark
+    public int[] sortArtifacts() {
+        DependencyGraph graph = DependencyGraph.build(artifacts);
+        graph.findCycles();
+        return graph.getTopologicalOrder();
+    }
+
+    @Benchmark
+    public DependencyGraph buildGraph() {
+        return DependencyGraph.build(artifacts);
+    }
+
+    @Benchmark
+    public int[] topologicalOrder() {
+        return graph.getTopologicalOrder();
+    }
+
+    @Benchmark
+    public Object findCycles() {
+        return graph.findCycles();
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Artifact;
+import com.betanzos.modularizer.pojo.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Generador de datos sintéticos para los benchmarks: descriptores de modularización cuyas dependencias forman un
+ * grafo acíclico y archivos JAR con la cantidad de entradas deseada. Todos los datos se generan a partir de una
+ * semilla, por lo que son los mismos en cada ejecución y no es necesario descargar nada.<br/>
+ * <br/>
+ * También puede ejecutarse para generar un directorio con JARs y su descriptor con el que probar el programa
+ * completo:
+ * <pre>
+ * java -cp benchmarks.jar com.betanzos.modularizer.SyntheticData &lt;dir&gt; &lt;artifacts&gt; &lt;entries-per-jar&gt;
+ * </pre>
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+public final class SyntheticData {
+
+    static final long SEED = 20190516L;
+
+    private static final int CLASSES_PER_PACKAGE = 20;
+
+    /**
+     * Private for avoid class instantiation
+     */
+    private SyntheticData() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("usage: java -cp benchmarks.jar com.betanzos.modularizer.SyntheticData <dir> <artifacts> <entries-per-jar>");
+            return;
+        }
+
+        File dir = new File(args[0]);
+        int artifactCount = Integer.parseInt(args[1]);
+        int entryCount = Integer.parseInt(args[2]);
+
+        List<Artifact> artifacts = generateArtifacts(artifactCount, 4, SEED);
+        Files.createDirectories(dir.toPath());
+        for (Artifact artifact : artifacts) {
+            generateJar(new File(dir, artifact.getName()), artifact.getModule().getName(), entryCount, SEED);
+        }
+
+        File descriptorFile = new File(dir, "descriptor.json");
+        writeDescriptor(descriptorFile, artifacts);
+        System.out.println("Generated " + artifacts.size() + " JAR files and " + descriptorFile);
+    }
+
+    /**
+     * Genera las entradas de un descriptor de modularización. El artefacto {@code i} solo puede depender de
+     * artefactos con un índice menor, de forma que no hay ciclos, y las entradas se devuelven desordenadas, como en
+     * un descriptor escrito a mano.
+     *
+     * @param count Cantidad de artefactos
+     * @param maxDependencies Cantidad máxima de módulos del descriptor que requiere cada artefacto
+     * @param seed Semilla del generador aleatorio
+     *
+     * @return Entradas del descriptor
+     */
+    public static List<Artifact> generateArtifacts(int count, int maxDependencies, long seed) {
+        Random random = new Random(seed);
+        List<Artifact> artifacts = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            Set<String> requiresModules = new TreeSet<>();
+            requiresModules.add("java.base");
+
+            int dependencyCount = i == 0 ? 0 : random.nextInt(Math.min(i, maxDependencies) + 1);
+            for (int d = 0; d < dependencyCount; d++) {
+                // Favorecer las dependencias cercanas produce cadenas largas, como en los proyectos reales
+                int dependency = Math.max(0, i - 1 - (int) Math.abs(random.nextGaussian() * 10));
+                requiresModules.add(moduleName(dependency));
+            }
+
+            artifacts.add(new Artifact(moduleName(i) + "-1.0.jar", new Module(moduleName(i), null, requiresModules)));
+        }
+
+        Collections.shuffle(artifacts, random);
+        return artifacts;
+    }
+
+    /**
+     * Genera un archivo JAR con un manifiesto y {@code entryCount} archivos .class repartidos en paquetes de
+     * {@value #CLASSES_PER_PACKAGE} clases. El contenido de las clases no es válido, ya que nunca se lee.
+     *
+     * @param file Archivo JAR a generar
+     * @param moduleName Nombre del módulo, usado como primer componente de los paquetes
+     * @param entryCount Cantidad de archivos .class
+     * @param seed Semilla del generador aleatorio
+     *
+     * @return {@code file}
+     *
+     * @throws IOException Si ocurre un error escribiendo el archivo
+     */
+    public static File generateJar(File file, String moduleName, int entryCount, long seed) throws IOException {
+        Random random = new Random(seed);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+        byte[] content = new byte[512];
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(file.toPath()), manifest)) {
+            for (int i = 0; i < entryCount; i++) {
+                String packagePath = moduleName.replace('.', '/') + "/p" + (i / CLASSES_PER_PACKAGE);
+                jar.putNextEntry(new JarEntry(packagePath + "/C" + i + ".class"));
+
+                // Contenido poco compresible, como el de las clases reales
+                random.nextBytes(content);
+                content[0] = (byte) 0xCA;
+                content[1] = (byte) 0xFE;
+                content[2] = (byte) 0xBA;
+                content[3] = (byte) 0xBE;
+                jar.write(content, 0, 64 + random.nextInt(content.length - 64));
+                jar.closeEntry();
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * @return Paquetes de un JAR generado por {@link #generateJar(File, String, int, long)}
+     */
+    public static Set<String> generatedPackages(String moduleName, int entryCount) {
+        Set<String> packages = new LinkedHashSet<>();
+        for (int i = 0; i < entryCount; i += CLASSES_PER_PACKAGE) {
+            packages.add(moduleName + ".p" + (i / CLASSES_PER_PACKAGE));
+        }
+
+        return packages;
+    }
+
+    /**
+     * Escribe el descriptor de modularización con las entradas {@code artifacts}.
+     *
+     * @throws IOException Si ocurre un error escribiendo el archivo
+     */
+    public static void writeDescriptor(File file, List<Artifact> artifacts) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(out, artifacts);
+        }
+    }
+
+    static String moduleName(int index) {
+        return "bench.m" + index;
+    }
+}
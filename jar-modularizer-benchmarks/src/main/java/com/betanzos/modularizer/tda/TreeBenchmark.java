@@ -0,0 +1,139 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer.tda;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operaciones de {@link Tree} sobre árboles aleatorios de {@code nodeCount} nodos, con y sin índice de claves.
+ * {@code findNodeByData} recorre el árbol sin índice, mientras que {@code findNodeByDataIndexed} usa el índice.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    int nodeCount;
+
+    Tree<String> tree;
+    Tree<String> indexedTree;
+    List<TreeNode<String>> nodes;
+    TreeNode<String> deepestNode;
+    String lastData;
+    int middleLevel;
+
+    @Setup
+    public void setup() {
+        tree = new Tree<>(new TreeNode<>("n0"));
+        indexedTree = new Tree<>(new TreeNode<>("n0"), data -> data);
+        nodes = new ArrayList<>(nodeCount);
+        nodes.add(tree.getRoot());
+
+        // Cada nodo se agrega como hijo de otro nodo ya existente elegido al azar
+        Random random = new Random(20190516L);
+        List<TreeNode<String>> indexedNodes = new ArrayList<>(nodeCount);
+        indexedNodes.add(indexedTree.getRoot());
+        for (int i = 1; i < nodeCount; i++) {
+            int parent = random.nextInt(i);
+            TreeNode<String> node = new TreeNode<>("n" + i);
+            nodes.get(parent).getChildren().add(node);
+            nodes.add(node);
+
+            TreeNode<String> indexedNode = new TreeNode<>("n" + i);
+            indexedNodes.get(parent).getChildren().add(indexedNode);
+            indexedNodes.add(indexedNode);
+        }
+
+        lastData = "n" + (nodeCount - 1);
+        deepestNode = nodes.stream().max((a, b) -> Integer.compare(a.getDepth(), b.getDepth())).get();
+        middleLevel = deepestNode.getDepth() / 2;
+    }
+
+    @Benchmark
+    public TreeNode<String> findNodeByDataPredicate() {
+        return tree.findNodeByData(lastData, String::equals);
+    }
+
+    @Benchmark
+    public TreeNode<String> findNodeByData() {
+        return tree.findNodeByData(lastData);
+    }
+
+    @Benchmark
+    public TreeNode<String> findNodeByDataIndexed() {
+        return indexedTree.findNodeByData(lastData);
+    }
+
+    @Benchmark
+    public TreeNode<String> findNodeByKey() {
+        return indexedTree.findNodeByKey(lastData);
+    }
+
+    @Benchmark
+    public TreeNode<String> getFather() {
+        return tree.getFather(deepestNode);
+    }
+
+    @Benchmark
+    public int getNodeLevel() {
+        return tree.getNodeLevel(deepestNode);
+    }
+
+    @Benchmark
+    public List<TreeNode<String>> getNodesAtLevel() {
+        return tree.getNodesAtLevel(middleLevel);
+    }
+
+    @Benchmark
+    public int getTreeLevel() {
+        return tree.getTreeLevel();
+    }
+
+    @Benchmark
+    public List<TreeNode<String>> getPreOrderNodeList() {
+        return tree.getPreOrderNodeList();
+    }
+}
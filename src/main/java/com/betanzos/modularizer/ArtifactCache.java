@@ -0,0 +1,478 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Artifact;
+import com.betanzos.modularizer.pojo.Module;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Caché en disco que permite omitir la modularización de los artefactos que no han cambiado desde la ejecución
+ * anterior. Se almacena en el archivo {@value #FILE_NAME} dentro de {@code destDir}. En una modularización repartida
+ * cada proceso guarda sus artefactos en un archivo propio (ver {@link #getFile(File, int, int)}) y el coordinador los
+ * une al terminar (ver {@link #merge(File)}).<br/>
+ * <br/>
+ * Un artefacto se considera actualizado si coinciden:
+ * <ul>
+ *     <li>El resumen SHA-256 del JAR original</li>
+ *     <li>El resumen de su entrada en el descriptor de modularización (y el mecanismo de generación usado, junto con
+ *     la versión del JDK que compila el descriptor)</li>
+ *     <li>El resumen de los JARs modularizados de los módulos del descriptor que requiere, y el de los módulos del
+ *     {@code --module-path} que requiere</li>
+ *     <li>El resumen del JAR modularizado, que además debe seguir existiendo</li>
+ * </ul>
+ * Para no leer completos todos los JARs en cada ejecución, si el tamaño y la fecha de modificación de un archivo
+ * coinciden con los registrados se reutiliza el resumen registrado.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ArtifactCache {
+
+    static final String FILE_NAME = ".jar-modularizer-cache.json";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File cacheFile;
+    private final DescriptorEngine engine;
+    private final CompressionLevel compression;
+    private final boolean reproducible;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entriesByModule = new ConcurrentHashMap<>();
+    // Resúmenes de los JARs modularizados por otros procesos de una modularización repartida
+    private final Map<String, String> dependencyDigests = new ConcurrentHashMap<>();
+
+    // JDK que compila los descriptores y resúmenes de los módulos del --module-path (ver setCompiler)
+    private volatile String compilerFingerprint;
+    private volatile Function<String, String> modulePathDigests;
+
+    private final AtomicInteger countHits = new AtomicInteger();
+    private final AtomicInteger countMisses = new AtomicInteger();
+
+    private ArtifactCache(File cacheFile, DescriptorEngine engine, CompressionLevel compression, boolean reproducible) {
+        this.cacheFile = cacheFile;
+        this.engine = engine;
+        this.compression = compression;
+        this.reproducible = reproducible;
+    }
+
+    /**
+     * @param destDir Directorio donde se depositan los JARs modularizados
+     * @param shardIndex Índice del proceso de una modularización repartida, a partir de 1, o {@code 0} si no lo es
+     * @param shardCount Cantidad de procesos de la modularización repartida
+     *
+     * @return Archivo de la caché. Cada proceso de una modularización repartida tiene el suyo, ya que solo registra
+     *         sus artefactos.
+     */
+    static File getFile(File destDir, int shardIndex, int shardCount) {
+        if (shardIndex > 0) {
+            return new File(destDir, FILE_NAME.replace(".json", ".shard-" + shardIndex + "-of-" + shardCount + ".json"));
+        }
+        return new File(destDir, FILE_NAME);
+    }
+
+    /**
+     * Carga la caché del archivo {@code cacheFile}. Si no existe, o no puede ser leído, se comienza con una caché
+     * vacía. Si es el de un proceso de una modularización repartida se carga antes la caché de {@code destDir}, que
+     * contiene los artefactos de las ejecuciones anteriores.
+     *
+     * @param cacheFile Archivo de la caché (ver {@link #getFile(File, int, int)})
+     * @param engine Mecanismo con el que se generan los descriptores, forma parte de la clave de cada artefacto
+     * @param compression Nivel con el que se vuelven a comprimir las entradas de los JARs, o {@code null} si se
+     *                    copian tal cual. Forma parte de la clave de cada artefacto.
+     * @param reproducible Si los JARs modularizados se escriben con --reproducible. Forma parte de la clave de cada
+     *                     artefacto.
+     * @param out Salida en la que se muestra la advertencia si la caché no puede ser leída
+     *
+     * @return La caché cargada
+     */
+    static ArtifactCache load(File cacheFile, DescriptorEngine engine, CompressionLevel compression, boolean reproducible, PrintStream out) {
+        ArtifactCache cache = new ArtifactCache(cacheFile, engine, compression, reproducible);
+        File mainFile = new File(cacheFile.getParentFile(), FILE_NAME);
+        for (File file : mainFile.equals(cacheFile) ? Collections.singletonList(cacheFile) : Arrays.asList(mainFile, cacheFile)) {
+            try {
+                read(file).forEach(cache::put);
+            } catch (IOException e) {
+                out.println("[WARN] Can not read cache file '" + file + "'. All JARs will be modularized. " + e.getMessage());
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Une las cachés de los procesos de una modularización repartida en la caché de {@code destDir} y las elimina,
+     * junto con las que quedaran de ejecuciones anteriores con otra cantidad de procesos. Las cachés se aplican de la
+     * más antigua a la más reciente, por lo que prevalece la entrada más reciente de cada artefacto.
+     *
+     * @param destDir Directorio donde se depositan los JARs modularizados
+     *
+     * @throws IOException Si ocurre un error leyendo o escribiendo las cachés
+     */
+    static void merge(File destDir) throws IOException {
+        String prefix = FILE_NAME.replace(".json", ".shard-");
+        File[] shardFiles = destDir.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".json"));
+        if (shardFiles == null || shardFiles.length == 0) {
+            return;
+        }
+        Arrays.sort(shardFiles, Comparator.comparingLong(File::lastModified));
+
+        File mainFile = getFile(destDir, 0, 0);
+        Map<String, Entry> merged = new TreeMap<>(read(mainFile));
+        for (File shardFile : shardFiles) {
+            merged.putAll(read(shardFile));
+        }
+
+        write(mainFile, merged);
+        for (File shardFile : shardFiles) {
+            Files.deleteIfExists(shardFile.toPath());
+        }
+    }
+
+    /**
+     * Guarda la caché en disco. Solo se conservan las entradas de los artefactos definidos en {@code artifacts}.
+     *
+     * @param artifacts Artefactos definidos en el descriptor de modularización
+     *
+     * @throws IOException Si ocurre un error escribiendo el archivo
+     */
+    void save(Collection<Artifact> artifacts) throws IOException {
+        Set<String> artifactNames = artifacts.stream().map(Artifact::getName).collect(Collectors.toSet());
+
+        Map<String, Entry> content = new TreeMap<>();
+        entries.forEach((name, entry) -> {
+            if (artifactNames.contains(name)) {
+                content.put(name, entry);
+            }
+        });
+
+        write(cacheFile, content);
+    }
+
+    /**
+     * Indica el JDK con el que se compilan los descriptores. Su versión forma parte de la clave de cada artefacto,
+     * junto con el resumen de cada módulo requerido que se encuentra en el {@code --module-path}. No se indica con el
+     * mecanismo BYTECODE, que no compila los descriptores.
+     *
+     * @param compilerFingerprint Huella que identifica la versión del JDK
+     * @param modulePathDigests Obtiene el resumen de un módulo del {@code --module-path}, o {@code null} si no se
+     *                          encuentra en él
+     */
+    void setCompiler(String compilerFingerprint, Function<String, String> modulePathDigests) {
+        this.compilerFingerprint = compilerFingerprint;
+        this.modulePathDigests = modulePathDigests;
+    }
+
+    /**
+     * Calcula la clave del artefacto para su JAR original {@code sourceJar}. Debe calcularse cuando ya se han
+     * procesado los artefactos de los que depende.
+     *
+     * @param sourceJar JAR original
+     * @param artifact Entrada del artefacto en el descriptor de modularización
+     *
+     * @return Entrada de la caché con todos los datos excepto los del JAR modularizado
+     *
+     * @throws IOException Si ocurre un error leyendo el JAR original
+     */
+    Entry computeKey(File sourceJar, Artifact artifact) throws IOException {
+        Entry key = new Entry();
+        key.moduleName = artifact.getModule().getName();
+        key.sourceSize = sourceJar.length();
+        key.sourceLastModified = sourceJar.lastModified();
+
+        Entry previous = entries.get(artifact.getName());
+        if (previous != null && previous.sourceSize == key.sourceSize && previous.sourceLastModified == key.sourceLastModified) {
+            key.sourceDigest = previous.sourceDigest;
+        } else {
+            key.sourceDigest = Digests.sha256(sourceJar);
+        }
+
+        key.descriptorDigest = descriptorDigest(artifact, engine, compression, reproducible, compilerFingerprint);
+
+        key.dependencyDigests = new TreeMap<>();
+        Set<String> requiresModules = artifact.getModule().getRequiresModules();
+        if (requiresModules != null) {
+            for (String moduleName : requiresModules) {
+                // Solo los módulos generados por este programa tienen entrada
+                Entry dependency = entriesByModule.get(moduleName);
+                if (dependency != null) {
+                    key.dependencyDigests.put(moduleName, dependency.outputDigest);
+                } else if (dependencyDigests.containsKey(moduleName)) {
+                    key.dependencyDigests.put(moduleName, dependencyDigests.get(moduleName));
+                } else if (modulePathDigests != null) {
+                    String digest = modulePathDigests.apply(moduleName);
+                    if (digest != null) {
+                        key.dependencyDigests.put(moduleName, digest);
+                    }
+                }
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Comprueba si el JAR modularizado {@code outputJar} del artefacto está actualizado respecto de su clave.
+     * Actualiza los contadores de aciertos y fallos.
+     *
+     * @param artifact Entrada del artefacto en el descriptor de modularización
+     * @param key Clave calculada con {@link #computeKey(File, Artifact)}
+     * @param outputJar JAR modularizado
+     *
+     * @return {@code true} si no es necesario volver a modularizar el artefacto
+     */
+    boolean isUpToDate(Artifact artifact, Entry key, File outputJar) {
+        Entry previous = entries.get(artifact.getName());
+        boolean upToDate = previous != null
+                && Objects.equals(previous.sourceDigest, key.sourceDigest)
+                && Objects.equals(previous.descriptorDigest, key.descriptorDigest)
+                && Objects.equals(previous.dependencyDigests, key.dependencyDigests)
+                && outputJar.isFile()
+                && matchesOutput(previous, outputJar);
+
+        (upToDate ? countHits : countMisses).incrementAndGet();
+        return upToDate;
+    }
+
+    private boolean matchesOutput(Entry entry, File outputJar) {
+        if (entry.outputSize == outputJar.length() && entry.outputLastModified == outputJar.lastModified()) {
+            return true;
+        }
+
+        try {
+            return Objects.equals(entry.outputDigest, Digests.sha256(outputJar));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Registra el resultado de la modularización del artefacto.
+     *
+     * @param artifact Entrada del artefacto en el descriptor de modularización
+     * @param key Clave calculada con {@link #computeKey(File, Artifact)} antes de la modularización
+     * @param outputJar JAR modularizado generado
+     * @param outputDigest Resumen SHA-256 del JAR modularizado, si ya se conoce, o {@code null} para calcularlo
+     *
+     * @throws IOException Si ocurre un error leyendo el JAR modularizado
+     */
+    void update(Artifact artifact, Entry key, File outputJar, String outputDigest) throws IOException {
+        key.outputSize = outputJar.length();
+        key.outputLastModified = outputJar.lastModified();
+        key.outputDigest = outputDigest != null ? outputDigest : Digests.sha256(outputJar);
+        put(artifact.getName(), key);
+    }
+
+    /**
+     * Registra el resultado de la modularización del artefacto cuando el descriptor se agregó al propio JAR original
+     * (--in-place). El JAR modificado pasa a ser también el JAR original de la clave, de forma que en la siguiente
+     * ejecución se considere actualizado mientras no vuelva a cambiar.
+     *
+     * @param artifact Entrada del artefacto en el descriptor de modularización
+     * @param key Clave calculada con {@link #computeKey(File, Artifact)} antes de la modularización
+     * @param jar JAR original, ya modularizado
+     * @param outputDigest Resumen SHA-256 del JAR modularizado, si ya se conoce, o {@code null} para calcularlo
+     *
+     * @throws IOException Si ocurre un error leyendo el JAR modularizado
+     */
+    void updateInPlace(Artifact artifact, Entry key, File jar, String outputDigest) throws IOException {
+        key.outputSize = jar.length();
+        key.outputLastModified = jar.lastModified();
+        key.outputDigest = outputDigest != null ? outputDigest : Digests.sha256(jar);
+        key.sourceSize = key.outputSize;
+        key.sourceLastModified = key.outputLastModified;
+        key.sourceDigest = key.outputDigest;
+        put(artifact.getName(), key);
+    }
+
+    /**
+     * Registra el resumen del JAR modularizado del módulo {@code moduleName} por otro proceso de una modularización
+     * repartida, que forma parte de la clave de los artefactos que lo requieren.
+     *
+     * @param moduleName Nombre del módulo
+     * @param outputDigest Resumen SHA-256 de su JAR modularizado
+     */
+    void putDependencyDigest(String moduleName, String outputDigest) {
+        dependencyDigests.put(moduleName, outputDigest);
+    }
+
+    /**
+     * @param artifact Entrada del artefacto en el descriptor de modularización
+     *
+     * @return Resumen SHA-256 del JAR modularizado del artefacto, o {@code null} si no tiene entrada
+     */
+    String getOutputDigest(Artifact artifact) {
+        Entry entry = entries.get(artifact.getName());
+        return entry != null ? entry.outputDigest : null;
+    }
+
+    /**
+     * Elimina la entrada del artefacto, por ejemplo porque no pudo ser modularizado.
+     *
+     * @param artifact Entrada del artefacto en el descriptor de modularización
+     */
+    void invalidate(Artifact artifact) {
+        Entry removed = entries.remove(artifact.getName());
+        if (removed != null && removed.moduleName != null) {
+            entriesByModule.remove(removed.moduleName, removed);
+        }
+    }
+
+    private void put(String artifactName, Entry entry) {
+        Entry previous = entries.put(artifactName, entry);
+        if (previous != null && previous.moduleName != null) {
+            entriesByModule.remove(previous.moduleName, previous);
+        }
+        if (entry.moduleName != null) {
+            entriesByModule.put(entry.moduleName, entry);
+        }
+    }
+
+    /**
+     * @return Cantidad de artefactos que no fue necesario volver a modularizar
+     */
+    int getCountHits() {
+        return countHits.get();
+    }
+
+    /**
+     * @return Cantidad de artefactos que tuvieron que ser modularizados
+     */
+    int getCountMisses() {
+        return countMisses.get();
+    }
+
+    /**
+     * Cuenta como fallo un artefacto que se modulariza sin comprobar si está actualizado, por ejemplo porque alguno de
+     * los módulos que requiere se modulariza en el mismo lote o porque no se pudo calcular su clave.
+     */
+    void recordMiss() {
+        countMisses.incrementAndGet();
+    }
+
+    /**
+     * Reinicia los contadores de aciertos y fallos. Se utiliza al comenzar cada modularización del modo --watch.
+     */
+    void resetCounts() {
+        countHits.set(0);
+        countMisses.set(0);
+    }
+
+    /**
+     * Resumen de la forma canónica de la entrada del artefacto en el descriptor. Los conjuntos se ordenan para que
+     * el resultado no dependa del orden en que fueron escritos. El nivel de compresión y --reproducible solo se
+     * incluyen si se indicaron, para que las claves de las cachés anteriores a esas opciones sigan siendo válidas.
+     */
+    static String descriptorDigest(Artifact artifact, DescriptorEngine engine, CompressionLevel compression, boolean reproducible,
+                                   String compilerFingerprint) {
+        Module module = artifact.getModule();
+        StringBuilder canonical = new StringBuilder()
+                .append("name=").append(artifact.getName()).append('\n')
+                .append("module=").append(module.getName()).append('\n')
+                .append("exports=").append(module.getExportsPackages() != null ? new TreeSet<>(module.getExportsPackages()) : "*").append('\n')
+                .append("requires=").append(module.getRequiresModules() != null ? new TreeSet<>(module.getRequiresModules()) : "[]").append('\n')
+                .append("engine=").append(engine).append('\n');
+        if (compression != null) {
+            canonical.append("compression=").append(compression).append('\n');
+        }
+        if (reproducible) {
+            canonical.append("reproducible=true\n");
+        }
+        if (compilerFingerprint != null) {
+            canonical.append("compiler=").append(compilerFingerprint).append('\n');
+        }
+
+        return Digests.sha256(canonical.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Entradas del archivo {@code cacheFile}, o ninguna si no existe o es de otra versión del formato
+     */
+    private static Map<String, Entry> read(File cacheFile) throws IOException {
+        if (!cacheFile.isFile()) {
+            return Collections.emptyMap();
+        }
+
+        CacheFile content = MAPPER.readValue(cacheFile, CacheFile.class);
+        if (content.version != FORMAT_VERSION || content.entries == null) {
+            return Collections.emptyMap();
+        }
+        return content.entries;
+    }
+
+    private static void write(File cacheFile, Map<String, Entry> entries) throws IOException {
+        CacheFile content = new CacheFile();
+        content.version = FORMAT_VERSION;
+        content.entries = entries;
+
+        File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".part");
+        MAPPER.writeValue(tempFile, content);
+        Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    private static final class CacheFile {
+        private int version;
+        private Map<String, Entry> entries;
+    }
+
+    /**
+     * Datos registrados para cada artefacto
+     */
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    static final class Entry {
+        private String moduleName;
+        private String sourceDigest;
+        private long sourceSize;
+        private long sourceLastModified;
+        private String descriptorDigest;
+        private Map<String, String> dependencyDigests;
+        private String outputDigest;
+        private long outputSize;
+        private long outputLastModified;
+    }
+}
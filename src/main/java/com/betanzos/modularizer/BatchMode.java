@@ -0,0 +1,60 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+/**
+ * Formas de agrupar los descriptores de módulo para compilarlos con una única invocación de {@code javac}.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+enum BatchMode {
+    /**
+     * Se compilan juntos los descriptores de cada nivel de dependencias (ver
+     * {@link DependencyGraph#getTopologicalLevels()}). Los módulos de un nivel se compilan contra los JARs ya
+     * modularizados de los niveles anteriores.
+     */
+    LEVEL,
+
+    /**
+     * Se compilan juntos los descriptores de todos los artefactos. Los módulos que dependen de otros del mismo lote se
+     * compilan contra el código fuente de estos.
+     */
+    ALL;
+
+    /**
+     * @param name Nombre del modo tal y como se especifica en la línea de comandos (sin importar mayúsculas)
+     *
+     * @return El modo correspondiente a {@code name} o {@code null} si no existe ninguno con ese nombre.
+     */
+    static BatchMode fromName(String name) {
+        for (BatchMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+
+        return null;
+    }
+}
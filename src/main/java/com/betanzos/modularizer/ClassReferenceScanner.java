@@ -0,0 +1,374 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Obtiene los paquetes a los que hacen referencia los archivos de clase de un JAR a partir de su constant pool, sin
+ * cargar las clases. Se tienen en cuenta las clases referenciadas ({@code CONSTANT_Class}), los tipos de los
+ * descriptores de los miembros referenciados ({@code CONSTANT_NameAndType}, {@code CONSTANT_MethodType}) y los de los
+ * campos y métodos declarados por la propia clase. Las firmas genéricas y las anotaciones no se analizan.<br/>
+ * <br/>
+ * Una instancia se utiliza para todos los archivos de clase de un JAR, desde un único hilo. Los nombres de los
+ * paquetes se comparan directamente sobre los bytes del archivo de clase, por lo que solo se crea un {@link String}
+ * la primera vez que aparece cada paquete.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ClassReferenceScanner {
+
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    // Posición de cada entrada del constant pool del archivo de clase actual. Se reutiliza entre archivos
+    private int[] offsets = new int[1024];
+    private int constantCount;
+
+    // Conjunto de paquetes con direccionamiento abierto, indexado por el hash de los bytes del nombre
+    private String[] packages = new String[256];
+    private int[] hashes = new int[256];
+    private int packageCount;
+
+    private byte[] classFile;
+
+    /**
+     * Agrega los paquetes referenciados por el archivo de clase {@code classFile}.
+     *
+     * @param classFile Contenido del archivo de clase
+     * @param length Cantidad de bytes válidos de {@code classFile}
+     *
+     * @throws IOException Si el contenido no es un archivo de clase válido
+     */
+    void scan(byte[] classFile, int length) throws IOException {
+        this.classFile = classFile;
+        try {
+            scanClassFile(length);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated class file");
+        } finally {
+            this.classFile = null;
+        }
+    }
+
+    private void scanClassFile(int length) throws IOException {
+        if (length < 10 || readInt(0) != CLASS_MAGIC) {
+            throw new IOException("Invalid class file");
+        }
+
+        int count = readUnsignedShort(8);
+        if (offsets.length < count) {
+            offsets = new int[Math.max(count, offsets.length * 2)];
+        }
+        constantCount = count;
+
+        // Primera pasada: posición de cada entrada
+        int pos = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = pos;
+            int tag = classFile[pos] & 0xFF;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    pos += 3 + readUnsignedShort(pos + 1);
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    pos += 3;
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    pos += 4;
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    pos += 5;
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    // Ocupan dos entradas. La segunda no es válida (la posición 0 no es una entrada CONSTANT_Utf8)
+                    pos += 9;
+                    offsets[++i] = 0;
+                    break;
+                default:
+                    throw new IOException("Invalid constant pool tag " + tag + " at offset " + pos);
+            }
+        }
+        if (pos > length) {
+            throw new IOException("Truncated class file");
+        }
+        int constantPoolEnd = pos;
+
+        // Segunda pasada: clases y descriptores referenciados
+        for (int i = 1; i < count; i++) {
+            int offset = offsets[i];
+            int tag = classFile[offset] & 0xFF;
+            if (tag == CONSTANT_CLASS) {
+                addClassName(readUnsignedShort(offset + 1));
+            } else if (tag == CONSTANT_NAME_AND_TYPE) {
+                addDescriptor(readUnsignedShort(offset + 3));
+            } else if (tag == CONSTANT_METHOD_TYPE) {
+                addDescriptor(readUnsignedShort(offset + 1));
+            } else if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                i++;
+            }
+        }
+
+        // Descriptores de los campos y métodos declarados
+        pos = constantPoolEnd + 6;
+        pos += 2 + 2 * readUnsignedShort(pos);
+        for (int member = 0; member < 2; member++) {
+            int memberCount = readUnsignedShort(pos);
+            pos += 2;
+            for (int i = 0; i < memberCount; i++) {
+                addDescriptor(readUnsignedShort(pos + 4));
+                int attributeCount = readUnsignedShort(pos + 6);
+                pos += 8;
+                for (int j = 0; j < attributeCount; j++) {
+                    pos += 6 + readInt(pos + 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Agrega el paquete de la clase cuyo nombre interno está en la entrada {@code index}. Los nombres de las clases de
+     * tipo arreglo son descriptores ({@code [Ljava/lang/String;}).
+     */
+    private void addClassName(int index) throws IOException {
+        int offset = getUtf8Offset(index);
+        int start = offset + 2;
+        int end = start + readUnsignedShort(offset);
+        if (start < end && classFile[start] == '[') {
+            addDescriptorTypes(start, end);
+        } else {
+            addPackageOf(start, end);
+        }
+    }
+
+    private void addDescriptor(int index) throws IOException {
+        int offset = getUtf8Offset(index);
+        int start = offset + 2;
+        addDescriptorTypes(start, start + readUnsignedShort(offset));
+    }
+
+    /**
+     * Agrega los paquetes de los tipos {@code L<nombre>;} del descriptor comprendido entre {@code start} y
+     * {@code end}.
+     */
+    private void addDescriptorTypes(int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            if (classFile[pos++] != 'L') {
+                continue;
+            }
+
+            int nameStart = pos;
+            while (pos < end && classFile[pos] != ';') {
+                pos++;
+            }
+            addPackageOf(nameStart, pos);
+            pos++;
+        }
+    }
+
+    private int getUtf8Offset(int index) throws IOException {
+        if (index == 0 || index >= constantCount || (classFile[offsets[index]] & 0xFF) != CONSTANT_UTF8) {
+            throw new IOException("Invalid constant pool reference " + index);
+        }
+
+        return offsets[index] + 1;
+    }
+
+    /**
+     * Agrega el paquete del nombre interno de clase comprendido entre {@code start} y {@code end}. Las clases del
+     * paquete sin nombre no se tienen en cuenta.
+     */
+    private void addPackageOf(int start, int end) {
+        int packageEnd = -1;
+        int hash = 0;
+        boolean ascii = true;
+        for (int pos = start; pos < end; pos++) {
+            byte b = classFile[pos];
+            if (b == '/') {
+                packageEnd = pos;
+            } else if (b < 0) {
+                ascii = false;
+            }
+        }
+        if (packageEnd < 0) {
+            return;
+        }
+
+        if (!ascii) {
+            // Poco habitual: se decodifica el nombre (UTF-8 modificado, equivalente a UTF-8 para nombres de paquete)
+            addPackage(new String(classFile, start, packageEnd - start, StandardCharsets.UTF_8).replace('/', '.'));
+            return;
+        }
+
+        for (int pos = start; pos < packageEnd; pos++) {
+            hash = 31 * hash + toPackageChar(classFile[pos]);
+        }
+
+        int mask = packages.length - 1;
+        int slot = mix(hash) & mask;
+        while (packages[slot] != null) {
+            if (hashes[slot] == hash && equalsPackage(packages[slot], start, packageEnd)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        char[] chars = new char[packageEnd - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = toPackageChar(classFile[start + i]);
+        }
+        insert(new String(chars), hash);
+    }
+
+    private void addPackage(String packageName) {
+        int hash = packageName.hashCode();
+        int mask = packages.length - 1;
+        int slot = mix(hash) & mask;
+        while (packages[slot] != null) {
+            if (hashes[slot] == hash && packages[slot].equals(packageName)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        insert(packageName, hash);
+    }
+
+    private void insert(String packageName, int hash) {
+        // Se mantiene el conjunto lleno como máximo a la mitad
+        if (packageCount * 2 >= packages.length) {
+            String[] oldPackages = packages;
+            int[] oldHashes = hashes;
+            packages = new String[oldPackages.length * 2];
+            hashes = new int[oldPackages.length * 2];
+            for (int i = 0; i < oldPackages.length; i++) {
+                if (oldPackages[i] != null) {
+                    put(oldPackages[i], oldHashes[i]);
+                }
+            }
+        }
+
+        put(packageName, hash);
+        packageCount++;
+    }
+
+    private void put(String packageName, int hash) {
+        int mask = packages.length - 1;
+        int slot = mix(hash) & mask;
+        while (packages[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        packages[slot] = packageName;
+        hashes[slot] = hash;
+    }
+
+    private boolean equalsPackage(String packageName, int start, int end) {
+        if (packageName.length() != end - start) {
+            return false;
+        }
+
+        for (int i = 0; i < packageName.length(); i++) {
+            if (packageName.charAt(i) != toPackageChar(classFile[start + i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static char toPackageChar(byte b) {
+        return b == '/' ? '.' : (char) b;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private int readUnsignedShort(int pos) {
+        return ((classFile[pos] & 0xFF) << 8) | (classFile[pos + 1] & 0xFF);
+    }
+
+    private int readInt(int pos) {
+        return ((classFile[pos] & 0xFF) << 24) | ((classFile[pos + 1] & 0xFF) << 16)
+                | ((classFile[pos + 2] & 0xFF) << 8) | (classFile[pos + 3] & 0xFF);
+    }
+
+    /**
+     * @return Los paquetes referenciados por todos los archivos de clase analizados, ordenados por nombre
+     */
+    Set<String> getPackages() {
+        Set<String> result = new TreeSet<>();
+        for (String packageName : packages) {
+            if (packageName != null) {
+                result.add(packageName);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Vacía el conjunto de paquetes para analizar los archivos de clase de otro JAR.
+     */
+    void reset() {
+        Arrays.fill(packages, null);
+        packageCount = 0;
+    }
+}
@@ -23,28 +23,58 @@
  */
 package com.betanzos.modularizer;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
 
 /**
  * @author Eduardo Betanzos
  * @since 1.0
  */
-final class Compiler {
-
-    private static Compiler compiler;
+final class Compiler implements Closeable {
 
     private String jdkHome;
     private String jdkBinDir;
     private static String javac = "javac";
 
+    // Línea de resumen con la que javac termina su salida, por ejemplo "2 errors"
+    private static final Pattern SUMMARY_LINE = Pattern.compile("\\d+ \\S+");
+
+    // Compilador del JDK sobre el que se ejecuta este programa. Se mantiene, junto con su administrador de archivos,
+    // durante toda la ejecución para no pagar el arranque de una nueva JVM por cada artefacto. El administrador de
+    // archivos no puede ser usado por varias compilaciones a la vez, por lo que cada hilo tiene el suyo
+    private final JavaCompiler systemCompiler;
+    private final ThreadLocal<StandardJavaFileManager> fileManager;
+    private final List<StandardJavaFileManager> fileManagers = new CopyOnWriteArrayList<>();
+
     static {
         // Definir el nombre el archivo javac en dependencia del sistema operativo
         if (System.getProperty("os.name").toLowerCase().startsWith("windows")) {
@@ -52,19 +82,22 @@ final class Compiler {
         }
     }
 
-    private Compiler() {
+    /**
+     * Crea un compilador que usa el JDK sobre el que se ejecuta este programa. Los administradores de archivos
+     * mantienen abiertos los archivos del {@code --module-path}, por lo que cada ejecución debe usar su propio
+     * compilador y cerrarlo al terminar (ver {@link #close()}).
+     */
+    Compiler() {
         jdkHome = System.getProperty("java.home");
+        systemCompiler = ToolProvider.getSystemJavaCompiler();
+        fileManager = ThreadLocal.withInitial(() -> {
+            StandardJavaFileManager threadFileManager = systemCompiler.getStandardFileManager(null, Locale.getDefault(), null);
+            fileManagers.add(threadFileManager);
+            return threadFileManager;
+        });
         buildJdkBinPath();
     }
 
-    public static Compiler getInstance() {
-        if (compiler == null) {
-            compiler = new Compiler();
-        }
-
-        return compiler;
-    }
-
     /**
      * Construye la ruta al directorio contenedor de los binarios del JDK
      */
@@ -75,6 +108,29 @@ final class Compiler {
                 .toString();
     }
 
+    /**
+     * Cierra los administradores de archivos creados por los hilos que han compilado con este compilador. El
+     * compilador no debe usarse después de cerrarlo.
+     *
+     * @throws IOException Si ocurre un error cerrando algún administrador de archivos
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (StandardJavaFileManager threadFileManager : fileManagers) {
+            try {
+                threadFileManager.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        fileManagers.clear();
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
     /**
      * Permite conocer si el {@code jdkHomePath} en un JAVA_HOME válido.<br/>
      * <br/>
@@ -107,11 +163,36 @@ final class Compiler {
     }
 
     /**
-     * Compila el descriptor del módulo (archivo module-info.java) cuyo directorio raíz es {@code tergetModuleDir}. Se
-     * asume que el descriptor del módulo se encuentra en la misma raíz.
+     * Permite conocer si la compilación se realizará dentro de la JVM actual. Esto solo es posible si el JDK sobre el
+     * cual se está ejecutando este programa provee un compilador y el JDK_HOME configurado es precisamente ese, en
+     * caso contrario se ejecutará el {@code javac} de {@code jdkHome} en un proceso externo.
+     *
+     * @return {@code true} si se usará el compilador del sistema, {@code false} si se ejecutará un proceso externo.
+     */
+    public boolean isInProcess() {
+        if (systemCompiler == null) {
+            return false;
+        }
+
+        try {
+            Path runningJdkHome = Paths.get(System.getProperty("java.home")).toRealPath();
+            return runningJdkHome.equals(Paths.get(jdkHome).toRealPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compila el descriptor del módulo {@code moduleName} cuyo código fuente (contenido del archivo module-info.java)
+     * es {@code moduleSource}. El contenido del módulo es el del archivo JAR descrito por {@code jarContent}, el cual
+     * no necesita ser extraído.
      *
-     * @param targetModuleDir Directorio raíz del modulo
+     * @param moduleName Nombre del módulo
+     * @param moduleSource Contenido del archivo module-info.java
+     * @param jarContent Contenido del archivo JAR que formará el módulo
      * @param modulePath Valor a usar como {@code --module-path}
+     * @param classOutput Flujo en el cual se escribirá el archivo module-info.class generado. No se escribe nada si
+     *                    la compilación falla.
      *
      * @return Descripción de los errores de compilación en caso de producirse alguno, {@link Optional#empty()} si no
      *         hubo errores.
@@ -119,33 +200,327 @@ final class Compiler {
      * @throws InterruptedException
      * @throws IOException
      */
-    public Optional<String> compileModuleDescriptor(String targetModuleDir, String modulePath) throws InterruptedException, IOException {
-        // Construir el comando de compilación
-        List<String> commandList = new ArrayList<>(6);
-        commandList.add(jdkBinDir + File.separator + javac);
-        commandList.add("-d");
-        commandList.add(targetModuleDir);
+    public Optional<String> compileModuleDescriptor(String moduleName, String moduleSource, JarContent jarContent,
+                                                    String modulePath, OutputStream classOutput) throws InterruptedException, IOException {
+        FlightEvents.Span compileEvent = FlightEvents.begin(FlightEvents.Type.COMPILE);
+        try {
+            if (isInProcess()) {
+                return compileInProcess(moduleName, moduleSource, jarContent, modulePath, classOutput);
+            }
 
+            return compileInExternalProcess(moduleName, moduleSource, jarContent, modulePath, classOutput);
+        } finally {
+            compileEvent.end(jarContent.getFile().getName(), moduleName, 1, moduleSource.length());
+        }
+    }
+
+    /**
+     * Compila el descriptor del módulo utilizando el compilador del sistema ({@link ToolProvider#getSystemJavaCompiler()}).
+     * El {@link StandardJavaFileManager} de cada hilo se reutiliza entre llamadas, de esta forma los archivos del
+     * {@code --module-path} ya abiertos no tienen que ser leídos nuevamente para cada artefacto.<br/>
+     * <br/>
+     * Tanto el código fuente como el archivo compilado se mantienen en memoria y el contenido del JAR se presenta al
+     * compilador mediante {@link PatchedModuleFileManager}, por lo que no se escribe nada en disco.
+     *
+     * @see #compileModuleDescriptor(String, String, JarContent, String, OutputStream)
+     */
+    private Optional<String> compileInProcess(String moduleName, String moduleSource, JarContent jarContent,
+                                              String modulePath, OutputStream classOutput) throws IOException {
+        List<String> options = new ArrayList<>(2);
         if (modulePath != null) {
-            commandList.add("--module-path");
-            commandList.add(modulePath);
+            options.add("--module-path");
+            options.add(modulePath);
+        }
+
+        JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///module-info.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return moduleSource;
+            }
+        };
+
+        // El archivo compilado se escribe primero en memoria para no dejar contenido parcial en classOutput
+        ByteArrayOutputStream compiledClass = new ByteArrayOutputStream();
+        JavaFileManager moduleFileManager = new PatchedModuleFileManager(fileManager.get(), moduleName, jarContent, compiledClass);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        boolean success;
+        try {
+            success = systemCompiler.getTask(null, moduleFileManager, diagnostics, options, null, Collections.singletonList(sourceFile)).call();
+        } catch (RuntimeException e) {
+            throw new IOException("Internal compiler error. " + e.getMessage(), e);
         }
 
-        commandList.add(targetModuleDir + File.separator + "module-info.java");
+        if (success) {
+            compiledClass.writeTo(classOutput);
+        }
+
+        // Igual que con el proceso externo, cualquier mensaje del compilador se devuelve como salida de la compilación
+        if (!diagnostics.getDiagnostics().isEmpty()) {
+            StringBuilder sb = new StringBuilder("Command: javac (in-process) ")
+                    .append(getFullCommandStr(options))
+                    .append(" --patch-module ")
+                    .append(moduleName)
+                    .append("=")
+                    .append(jarContent.getFile())
+                    .append(" module-info.java");
+
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                sb.append("\n").append(diagnostic);
+            }
+
+            return Optional.of(sb.toString());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Compila el descriptor del módulo ejecutando el archivo {@code javac} de {@code jdkHome} en un nuevo proceso.<br/>
+     * <br/>
+     * El JAR original se indica al compilador con {@code --patch-module}, por lo que tampoco es necesario extraerlo.
+     * Solo los archivos module-info.java y module-info.class se escriben en un directorio temporal que es eliminado al
+     * terminar.
+     *
+     * @see #compileModuleDescriptor(String, String, JarContent, String, OutputStream)
+     */
+    private Optional<String> compileInExternalProcess(String moduleName, String moduleSource, JarContent jarContent,
+                                                      String modulePath, OutputStream classOutput) throws InterruptedException, IOException {
+        Path workDir = Files.createTempDirectory("jar-modularizer-");
+        Path sourceFile = workDir.resolve("module-info.java");
+        Path classFile = workDir.resolve("module-info.class");
+
+        try {
+            Files.write(sourceFile, moduleSource.getBytes());
+
+            // Construir el comando de compilación
+            List<String> commandList = new ArrayList<>(8);
+            commandList.add(jdkBinDir + File.separator + javac);
+            commandList.add("-d");
+            commandList.add(workDir.toString());
 
-        // Ejecutar el comando de compilación
+            if (modulePath != null) {
+                commandList.add("--module-path");
+                commandList.add(modulePath);
+            }
+
+            commandList.add("--patch-module");
+            commandList.add(moduleName + "=" + jarContent.getFile());
+            commandList.add(sourceFile.toString());
+
+            // Ejecutar el comando de compilación
+            Process compilerProcess = new ProcessBuilder()
+                    .command(commandList)
+                    .start();
+            compilerProcess.waitFor(5, TimeUnit.SECONDS);
+
+            // Si hay error de compilación devuelvo la salida de la consola de compilación
+            byte[] compileErros = compilerProcess.getErrorStream().readAllBytes();
+
+            if (Files.exists(classFile)) {
+                Files.copy(classFile, classOutput);
+            }
+
+            if (compileErros.length > 0) {
+                return Optional.of("Command: " + getFullCommandStr(commandList) + "\n" + new String(compileErros));
+            }
+
+            return Optional.empty();
+        } finally {
+            Files.deleteIfExists(sourceFile);
+            Files.deleteIfExists(classFile);
+            Files.deleteIfExists(workDir);
+        }
+    }
+
+    /**
+     * Compila los descriptores de todos los módulos del lote {@code batch} con una única invocación del compilador,
+     * en modo multi-módulo. Los archivos module-info.java se escriben en un directorio temporal que se indica con
+     * {@code --module-source-path} y el JAR de cada módulo con un {@code --patch-module}. Los módulos del lote que
+     * dependen de otros del mismo lote se compilan contra el código fuente de estos.<br/>
+     * <br/>
+     * Si la compilación termina sin errores se asigna a cada módulo del lote su archivo module-info.class. En caso
+     * contrario el compilador no genera ningún archivo y se marcan como fallidos los módulos a los que se atribuyen
+     * los errores (ver {@link DescriptorBatch#getFailedModules()}). Los mensajes del compilador se asignan al módulo
+     * de cuyo module-info.java proceden.
+     *
+     * @param batch Lote de descriptores a compilar
+     * @param modulePath Valor a usar como {@code --module-path}
+     *
+     * @return {@code true} si todos los descriptores del lote fueron compilados, {@code false} en caso contrario
+     *
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public boolean compileModuleDescriptors(DescriptorBatch batch, String modulePath) throws InterruptedException, IOException {
+        // El evento de un lote no corresponde a ningún artefacto en particular
+        FlightEvents.Span compileEvent = FlightEvents.begin(FlightEvents.Type.COMPILE);
+        long sourceSize = 0;
+        Path workDir = Files.createTempDirectory("jar-modularizer-");
+        Path sourceDir = workDir.resolve("src");
+        Path outputDir = workDir.resolve("out");
+
+        try {
+            List<String> options = new ArrayList<>();
+            options.add("-encoding");
+            options.add("UTF-8");
+            options.add("-d");
+            options.add(outputDir.toString());
+            options.add("--module-source-path");
+            options.add(sourceDir.toString());
+
+            if (modulePath != null) {
+                options.add("--module-path");
+                options.add(modulePath);
+            }
+
+            List<File> sourceFiles = new ArrayList<>(batch.size());
+            for (String moduleName : batch.getModuleNames()) {
+                Path sourceFile = sourceDir.resolve(moduleName).resolve("module-info.java");
+                Files.createDirectories(sourceFile.getParent());
+                Files.write(sourceFile, batch.getSource(moduleName).getBytes(StandardCharsets.UTF_8));
+                sourceSize += batch.getSource(moduleName).length();
+                sourceFiles.add(sourceFile.toFile());
+
+                options.add("--patch-module");
+                options.add(moduleName + "=" + batch.getJarContent(moduleName).getFile());
+            }
+
+            Map<String, StringBuilder> messages = new LinkedHashMap<>();
+            boolean success = isInProcess()
+                    ? compileBatchInProcess(batch, options, sourceFiles, sourceDir, messages)
+                    : compileBatchInExternalProcess(batch, options, sourceFiles, sourceDir, messages);
+
+            // Cada módulo recibe sus mensajes precedidos del comando, del que solo se muestra su --patch-module
+            String command = (isInProcess() ? "javac (in-process) " : jdkBinDir + File.separator + javac + " ")
+                    + getFullCommandStr(options.subList(0, options.size() - 2 * batch.size()));
+            messages.forEach((moduleName, moduleMessages) -> batch.setMessages(moduleName,
+                    "Command: " + command + " --patch-module " + moduleName + "=" + batch.getJarContent(moduleName).getFile()
+                            + " " + sourceDir.resolve(moduleName).resolve("module-info.java")
+                            + " (batch of " + batch.size() + " modules)"
+                            + moduleMessages));
+
+            if (success) {
+                for (String moduleName : batch.getModuleNames()) {
+                    Path classFile = outputDir.resolve(moduleName).resolve("module-info.class");
+                    if (Files.exists(classFile)) {
+                        batch.setDescriptor(moduleName, Files.readAllBytes(classFile));
+                    }
+                }
+            }
+
+            return success;
+        } finally {
+            deleteRecursively(workDir);
+            compileEvent.end(null, null, batch.size(), sourceSize);
+        }
+    }
+
+    /**
+     * @see #compileModuleDescriptors(DescriptorBatch, String)
+     */
+    private boolean compileBatchInProcess(DescriptorBatch batch, List<String> options, List<File> sourceFiles, Path sourceDir,
+                                          Map<String, StringBuilder> messages) throws IOException {
+        // Las opciones --patch-module se aplican al administrador de archivos, por lo que no puede usarse el
+        // compartido por las compilaciones individuales
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        boolean success;
+        try (StandardJavaFileManager batchFileManager = systemCompiler.getStandardFileManager(null, Locale.getDefault(), null)) {
+            success = systemCompiler.getTask(null, batchFileManager, diagnostics, options, null, batchFileManager.getJavaFileObjectsFromFiles(sourceFiles)).call();
+        } catch (RuntimeException e) {
+            throw new IOException("Internal compiler error. " + e.getMessage(), e);
+        }
+
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            String moduleName = diagnostic.getSource() != null
+                    ? getBatchModuleName(batch, sourceDir, Paths.get(diagnostic.getSource().toUri()).toString())
+                    : null;
+            if (moduleName == null) {
+                continue;
+            }
+
+            messages.computeIfAbsent(moduleName, m -> new StringBuilder()).append("\n").append(diagnostic);
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                batch.setFailed(moduleName);
+            }
+        }
+
+        return success;
+    }
+
+    /**
+     * Los mensajes de {@code javac} se asignan a cada módulo a partir de la ruta de su module-info.java con la que
+     * comienza cada mensaje. Como el tipo de mensaje depende del idioma de {@code javac}, si la compilación falla se
+     * marcan como fallidos todos los módulos con algún mensaje.
+     *
+     * @see #compileModuleDescriptors(DescriptorBatch, String)
+     */
+    private boolean compileBatchInExternalProcess(DescriptorBatch batch, List<String> options, List<File> sourceFiles, Path sourceDir,
+                                                  Map<String, StringBuilder> messages) throws InterruptedException, IOException {
+        List<String> commandList = new ArrayList<>(options.size() + sourceFiles.size() + 1);
+        commandList.add(jdkBinDir + File.separator + javac);
+        commandList.addAll(options);
+        sourceFiles.forEach(file -> commandList.add(file.toString()));
+
+        // La salida se lee completa antes de esperar al proceso para que este nunca se bloquee escribiéndola
         Process compilerProcess = new ProcessBuilder()
                 .command(commandList)
+                .redirectErrorStream(true)
                 .start();
-        compilerProcess.waitFor(5, TimeUnit.SECONDS);
+        String output = new String(compilerProcess.getInputStream().readAllBytes());
+        boolean success = compilerProcess.waitFor() == 0;
+
+        String moduleName = null;
+        for (String line : output.split("\\R")) {
+            if (SUMMARY_LINE.matcher(line).matches()) {
+                moduleName = null;
+                continue;
+            }
+
+            String lineModuleName = getBatchModuleName(batch, sourceDir, line);
+            if (lineModuleName != null) {
+                moduleName = lineModuleName;
+            }
+
+            if (moduleName != null) {
+                messages.computeIfAbsent(moduleName, m -> new StringBuilder()).append("\n").append(line);
+            }
+        }
 
-        // Si hay error de compilación devuelvo la salida de la consola de compilación
-        byte[] compileErros = compilerProcess.getErrorStream().readAllBytes();
-        if (compileErros.length > 0) {
-            return Optional.of("Command: " + getFullCommandStr(commandList) + "\n" + new String(compileErros));
+        if (!success) {
+            messages.keySet().forEach(batch::setFailed);
         }
 
-        return Optional.empty();
+        return success;
+    }
+
+    /**
+     * @param path Ruta de un archivo, o línea de texto que comienza con ella
+     *
+     * @return Nombre del módulo del lote cuyo module-info.java es {@code path} o {@code null} si no corresponde a
+     *         ninguno
+     */
+    private static String getBatchModuleName(DescriptorBatch batch, Path sourceDir, String path) {
+        String prefix = sourceDir.toString() + File.separator;
+        if (!path.startsWith(prefix)) {
+            return null;
+        }
+
+        int end = path.indexOf(File.separatorChar, prefix.length());
+        if (end < 0) {
+            return null;
+        }
+
+        String moduleName = path.substring(prefix.length(), end);
+        return batch.getModuleNames().contains(moduleName) ? moduleName : null;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
     }
 
     private String getFullCommandStr(List<String> command) {
@@ -0,0 +1,83 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.util.zip.Deflater;
+
+/**
+ * Niveles de compresión con los que pueden volver a comprimirse las entradas de los JARs modularizados (ver
+ * {@link ZipRewriter#reencodeWithEntry}).
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+enum CompressionLevel {
+    /**
+     * Las entradas se almacenan sin comprimir.
+     */
+    STORE(Deflater.NO_COMPRESSION),
+
+    /**
+     * Compresión DEFLATE más rápida.
+     */
+    FASTEST(Deflater.BEST_SPEED),
+
+    /**
+     * Compresión DEFLATE con el nivel por defecto, el mismo que utiliza {@link java.util.jar.JarOutputStream}.
+     */
+    DEFAULT(Deflater.DEFAULT_COMPRESSION),
+
+    /**
+     * Compresión DEFLATE de máximo nivel.
+     */
+    MAX(Deflater.BEST_COMPRESSION);
+
+    private final int deflaterLevel;
+
+    CompressionLevel(int deflaterLevel) {
+        this.deflaterLevel = deflaterLevel;
+    }
+
+    /**
+     * @return Nivel de {@link Deflater} correspondiente
+     */
+    int getDeflaterLevel() {
+        return deflaterLevel;
+    }
+
+    /**
+     * @param name Nombre del nivel tal y como se especifica en la línea de comandos (sin importar mayúsculas)
+     *
+     * @return El nivel correspondiente a {@code name} o {@code null} si no existe ninguno con ese nombre.
+     */
+    static CompressionLevel fromName(String name) {
+        for (CompressionLevel level : values()) {
+            if (level.name().equalsIgnoreCase(name)) {
+                return level;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Modo demonio. Mantiene una JVM en ejecución, con el compilador y el resto de clases ya cargadas y optimizadas, que
+ * atiende los trabajos de modularización enviados por los clientes (ver {@link DaemonClient}) a través de un socket
+ * TCP en la interfaz de loopback.<br/>
+ * <br/>
+ * Cada trabajo se ejecuta en su propio hilo con sus propios parámetros ({@link Options}) y su salida se envía al
+ * cliente a medida que se produce. Los trabajos con el mismo directorio destino se ejecutan uno detrás de otro, ya
+ * que comparten la caché y los JARs modularizados; el resto se ejecutan a la vez.<br/>
+ * <br/>
+ * El puerto y un token aleatorio se escriben en el archivo {@value #INFO_FILE_PATH} del directorio del usuario, con
+ * permisos solo para el propietario cuando el sistema de archivos lo permite. Solo se atienden las peticiones que
+ * incluyen el token, de forma que otros usuarios del equipo no puedan enviar trabajos al demonio.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class Daemon {
+
+    static final String INFO_FILE_PATH = ".jar-modularizer/daemon.properties";
+
+    static final int PROTOCOL_VERSION = 1;
+    static final int REQUEST_RUN = 1;
+    static final int REQUEST_STOP = 2;
+
+    static final String PORT_PROPERTY = "port";
+    static final String TOKEN_PROPERTY = "token";
+
+    private static final int REQUEST_TIMEOUT_MILLIS = 10_000;
+    private static final int MAX_ARGS = 4096;
+
+    private final ServerSocket server;
+    private final String token;
+    private final PrintStream log;
+    private final Map<String, ReentrantLock> destDirLocks = new ConcurrentHashMap<>();
+    private final AtomicInteger jobCount = new AtomicInteger();
+    private volatile boolean stopped;
+
+    private Daemon(ServerSocket server, String token, PrintStream log) {
+        this.server = server;
+        this.token = token;
+        this.log = log;
+    }
+
+    /**
+     * @return Archivo en el que el demonio publica su puerto y su token
+     */
+    static File getInfoFile() {
+        return new File(System.getProperty("user.home"), INFO_FILE_PATH);
+    }
+
+    /**
+     * Inicia el demonio y atiende peticiones hasta que un cliente solicite detenerlo. Antes de terminar espera a que
+     * finalicen los trabajos en curso.
+     *
+     * @param port Puerto en el que escucha el demonio, o 0 para usar cualquier puerto libre
+     * @param log Salida en la que se muestra la actividad del demonio
+     *
+     * @throws IOException Si no se puede abrir el socket o publicar el archivo del demonio
+     */
+    static void run(int port, PrintStream log) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            byte[] tokenBytes = new byte[32];
+            new SecureRandom().nextBytes(tokenBytes);
+
+            Daemon daemon = new Daemon(server, Digests.toHex(tokenBytes), log);
+            File infoFile = getInfoFile();
+            daemon.writeInfoFile(infoFile);
+
+            log.println("[INFO] Daemon listening on " + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort());
+
+            ExecutorService executor = Executors.newCachedThreadPool();
+            try {
+                daemon.acceptRequests(executor);
+            } finally {
+                executor.shutdown();
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                Files.deleteIfExists(infoFile.toPath());
+            }
+
+            log.println("[INFO] Daemon stopped after " + daemon.jobCount.get() + " jobs");
+        }
+    }
+
+    private void acceptRequests(ExecutorService executor) throws IOException {
+        while (!stopped) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketException e) {
+                // El socket se cierra al detener el demonio
+                if (stopped) {
+                    return;
+                }
+                throw e;
+            }
+
+            executor.execute(() -> handleRequest(socket));
+        }
+    }
+
+    /**
+     * Atiende la petición de un cliente. La petición contiene, en el formato de {@link java.io.DataOutput}, la versión
+     * del protocolo, el token, el tipo de petición, el directorio de trabajo del cliente y los argumentos. La
+     * respuesta es la salida del trabajo en UTF-8, y termina al cerrarse la conexión.
+     */
+    private void handleRequest(Socket socket) {
+        try (Socket client = socket) {
+            client.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            PrintStream out = newPrintStream(client.getOutputStream());
+
+            if (in.readInt() != PROTOCOL_VERSION) {
+                out.println("[ERROR] Unsupported client version. Client and daemon must be the same version.");
+                return;
+            }
+            if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+                out.println("[ERROR] Invalid daemon token.");
+                return;
+            }
+
+            int requestType = in.readInt();
+            File workingDir = new File(in.readUTF());
+            int argCount = in.readInt();
+            if (argCount < 0 || argCount > MAX_ARGS) {
+                out.println("[ERROR] Invalid request.");
+                return;
+            }
+
+            String[] args = new String[argCount];
+            for (int i = 0; i < argCount; i++) {
+                args[i] = in.readUTF();
+            }
+            client.setSoTimeout(0);
+
+            if (requestType == REQUEST_STOP) {
+                stop();
+                out.println("[INFO] Daemon is stopping");
+            } else if (requestType == REQUEST_RUN) {
+                runJob(Options.parse(args, workingDir, out), out);
+            } else {
+                out.println("[ERROR] Invalid request.");
+            }
+        } catch (IOException e) {
+            log.println("[WARN] Error handling client request. " + e.getMessage());
+        } catch (RuntimeException e) {
+            log.println("[ERROR] Unexpected error running job. " + e);
+        }
+    }
+
+    private void runJob(Options options, PrintStream out) {
+        if (options.daemon) {
+            out.println("[ERROR] A daemon can not be started from a client.");
+            return;
+        }
+
+        if (options.watch) {
+            out.println("[ERROR] Watch mode can not be used from a client.");
+            return;
+        }
+
+        int jobNumber = jobCount.incrementAndGet();
+        File destDir = options.destDir != null ? options.destDir
+                : options.sourceDir != null ? new File(options.sourceDir, "mods") : null;
+        if (destDir == null) {
+            Main.run(options, out);
+            return;
+        }
+
+        ReentrantLock lock = destDirLocks.computeIfAbsent(getLockKey(destDir), k -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            out.println("[INFO] Waiting for another job using destination directory '" + destDir + "'");
+            lock.lock();
+        }
+
+        log.println("[INFO] Job " + jobNumber + " started (" + destDir + ")");
+        long startTime = System.currentTimeMillis();
+        try {
+            Main.run(options, out);
+        } finally {
+            lock.unlock();
+        }
+        log.println("[INFO] Job " + jobNumber + " finished in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private void stop() throws IOException {
+        stopped = true;
+        server.close();
+    }
+
+    private static String getLockKey(File destDir) {
+        try {
+            return destDir.getCanonicalPath();
+        } catch (IOException e) {
+            return destDir.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Publica el puerto y el token del demonio. El archivo se escribe con un nombre temporal y se renombra al
+     * terminar, para que los clientes nunca lean un archivo incompleto.
+     */
+    private void writeInfoFile(File infoFile) throws IOException {
+        Path directory = infoFile.getParentFile().toPath();
+        Files.createDirectories(directory);
+
+        Path tempFile = directory.resolve(infoFile.getName() + ".part");
+        Files.deleteIfExists(tempFile);
+        if (Files.getFileStore(directory).supportsFileAttributeView("posix")) {
+            Files.createFile(tempFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(PORT_PROPERTY, String.valueOf(server.getLocalPort()));
+        properties.setProperty(TOKEN_PROPERTY, token);
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            properties.store(out, "JarModularizer daemon");
+        }
+
+        Files.move(tempFile, infoFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static PrintStream newPrintStream(OutputStream out) {
+        try {
+            return new PrintStream(new BufferedOutputStream(out), true, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
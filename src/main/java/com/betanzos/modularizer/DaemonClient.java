@@ -0,0 +1,112 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Cliente del modo demonio (ver {@link Daemon}). Envía los argumentos de la línea de comandos al demonio en
+ * ejecución y muestra su salida a medida que la recibe. Solo carga las clases necesarias para ello, por lo que
+ * arranca mucho más rápido que una ejecución completa.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class DaemonClient {
+
+    /**
+     * Private for avoid class instantiation
+     */
+    private DaemonClient() {}
+
+    /**
+     * Envía un trabajo de modularización al demonio y muestra su salida.
+     *
+     * @param args Argumentos del trabajo. Las rutas relativas se resuelven respecto al directorio actual.
+     * @param out Salida en la que se muestra la salida del trabajo
+     */
+    static void run(String[] args, PrintStream out) {
+        send(Daemon.REQUEST_RUN, args, out);
+    }
+
+    /**
+     * Solicita al demonio que se detenga cuando terminen los trabajos en curso.
+     *
+     * @param out Salida en la que se muestra la respuesta del demonio
+     */
+    static void stop(PrintStream out) {
+        send(Daemon.REQUEST_STOP, new String[0], out);
+    }
+
+    private static void send(int requestType, String[] args, PrintStream out) {
+        File infoFile = Daemon.getInfoFile();
+        Properties info = new Properties();
+        try (InputStream in = Files.newInputStream(infoFile.toPath())) {
+            info.load(in);
+        } catch (IOException e) {
+            out.println("[ERROR] No daemon running. Start it with --daemon (" + infoFile + " not found).");
+            return;
+        }
+
+        int port;
+        try {
+            port = Integer.parseInt(info.getProperty(Daemon.PORT_PROPERTY, ""));
+        } catch (NumberFormatException e) {
+            out.println("[ERROR] Invalid daemon file '" + infoFile + "'.");
+            return;
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeInt(Daemon.PROTOCOL_VERSION);
+            request.writeUTF(info.getProperty(Daemon.TOKEN_PROPERTY, ""));
+            request.writeInt(requestType);
+            request.writeUTF(new File("").getAbsolutePath());
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            InputStream response = socket.getInputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = response.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                out.flush();
+            }
+        } catch (IOException e) {
+            out.println("[ERROR] Can not communicate with daemon on port " + port + ". " + e.getMessage());
+        }
+    }
+}
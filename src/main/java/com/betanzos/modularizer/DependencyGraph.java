@@ -0,0 +1,376 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Artifact;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Grafo de dependencias entre los artefactos definidos en el descriptor de modularización. Cada artefacto se
+ * identifica por un índice ({@code id}) y existe una arista de A hacia B si el módulo de A requiere el módulo de B.<br/>
+ * <br/>
+ * Solo se tienen en cuenta las dependencias hacia módulos definidos en el propio descriptor, nunca las que referencian
+ * a terceros módulos ya existentes.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class DependencyGraph {
+
+    private final List<Artifact> artifacts;
+    private final Map<String, Integer> idsByModuleName;
+    private final int[][] dependencies;
+    private final int[][] dependents;
+
+    private DependencyGraph(List<Artifact> artifacts, Map<String, Integer> idsByModuleName, int[][] dependencies, int[][] dependents) {
+        this.artifacts = artifacts;
+        this.idsByModuleName = idsByModuleName;
+        this.dependencies = dependencies;
+        this.dependents = dependents;
+    }
+
+    /**
+     * Construye el grafo de dependencias de los artefactos {@code artifactCollection}.
+     *
+     * @implNote Si varios artefactos definen el mismo módulo, al igual que en el árbol de dependencias, se consideran
+     *           el mismo artefacto y solo se tiene en cuenta el primero de ellos.
+     *
+     * @param artifactCollection Artefactos definidos en el descriptor de modularización
+     *
+     * @return El grafo de dependencias
+     */
+    static DependencyGraph build(Collection<Artifact> artifactCollection) {
+        List<Artifact> artifacts = new ArrayList<>(artifactCollection.size());
+        Map<String, Integer> idsByModuleName = new HashMap<>(artifactCollection.size() * 2);
+        for (Artifact artifact : artifactCollection) {
+            if (artifact.getModule() == null || idsByModuleName.containsKey(artifact.getModule().getName())) {
+                continue;
+            }
+
+            idsByModuleName.put(artifact.getModule().getName(), artifacts.size());
+            artifacts.add(artifact);
+        }
+
+        int size = artifacts.size();
+        int[][] dependencies = new int[size][];
+        int[] dependentsCount = new int[size];
+        for (int id = 0; id < size; id++) {
+            Set<String> requiresModules = artifacts.get(id).getModule().getRequiresModules();
+
+            Set<Integer> dependencyIds = new LinkedHashSet<>();
+            if (requiresModules != null) {
+                for (String moduleName : requiresModules) {
+                    Integer dependencyId = idsByModuleName.get(moduleName);
+                    if (dependencyId != null && dependencyId != id) {
+                        dependencyIds.add(dependencyId);
+                    }
+                }
+            }
+
+            dependencies[id] = toArray(dependencyIds);
+            for (int dependencyId : dependencies[id]) {
+                dependentsCount[dependencyId]++;
+            }
+        }
+
+        int[][] dependents = new int[size][];
+        for (int id = 0; id < size; id++) {
+            dependents[id] = new int[dependentsCount[id]];
+            dependentsCount[id] = 0;
+        }
+        for (int id = 0; id < size; id++) {
+            for (int dependencyId : dependencies[id]) {
+                dependents[dependencyId][dependentsCount[dependencyId]++] = id;
+            }
+        }
+
+        return new DependencyGraph(artifacts, idsByModuleName, dependencies, dependents);
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            array[i++] = value;
+        }
+
+        return array;
+    }
+
+    /**
+     * @return Cantidad de artefactos del grafo
+     */
+    int size() {
+        return artifacts.size();
+    }
+
+    Artifact getArtifact(int id) {
+        return artifacts.get(id);
+    }
+
+    /**
+     * @param moduleName Nombre de un módulo
+     *
+     * @return Identificador del artefacto que define el módulo {@code moduleName} o {@code -1} si ningún artefacto
+     *         lo define
+     */
+    int findByModuleName(String moduleName) {
+        Integer id = idsByModuleName.get(moduleName);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @return Identificadores de los artefactos cuyos módulos son requeridos por el artefacto {@code id}
+     */
+    int[] getDependencies(int id) {
+        return dependencies[id];
+    }
+
+    /**
+     * @return Identificadores de los artefactos cuyos módulos requieren el módulo del artefacto {@code id}
+     */
+    int[] getDependents(int id) {
+        return dependents[id];
+    }
+
+    /**
+     * Busca los artefactos que dependen, directa o indirectamente, de alguno de los artefactos {@code ids}.
+     *
+     * @param ids Identificadores de los artefactos de partida
+     *
+     * @return Indicador, por identificador de artefacto, de si el artefacto es uno de los de partida o depende de
+     *         alguno de ellos
+     */
+    boolean[] getDependentClosure(Collection<Integer> ids) {
+        boolean[] closure = new boolean[size()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int id : ids) {
+            if (!closure[id]) {
+                closure[id] = true;
+                queue.add(id);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            for (int dependentId : dependents[queue.poll()]) {
+                if (!closure[dependentId]) {
+                    closure[dependentId] = true;
+                    queue.add(dependentId);
+                }
+            }
+        }
+
+        return closure;
+    }
+
+    /**
+     * Calcula, para cada artefacto, la longitud de la cadena más larga de artefactos que dependen (directa o
+     * indirectamente) de él, incluyéndolo. Un artefacto del que nadie depende tiene longitud 1. Cuanto mayor es este
+     * valor más trabajo queda bloqueado hasta que el artefacto sea modularizado.
+     *
+     * @implNote Los artefactos que forman parte de un ciclo no pueden ordenarse y tienen longitud 0.
+     *
+     * @return Longitud de la cadena de dependientes indexada por identificador de artefacto
+     */
+    int[] getDependentChainLengths() {
+        int size = size();
+        int[] pendingDependents = new int[size];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int id = 0; id < size; id++) {
+            pendingDependents[id] = dependents[id].length;
+            if (pendingDependents[id] == 0) {
+                queue.add(id);
+            }
+        }
+
+        // Recorrido desde los artefactos de los que nadie depende hacia sus dependencias
+        int[] chainLengths = new int[size];
+        while (!queue.isEmpty()) {
+            int id = queue.poll();
+
+            int chainLength = 0;
+            for (int dependentId : dependents[id]) {
+                chainLength = Math.max(chainLength, chainLengths[dependentId]);
+            }
+            chainLengths[id] = chainLength + 1;
+
+            for (int dependencyId : dependencies[id]) {
+                if (--pendingDependents[dependencyId] == 0) {
+                    queue.add(dependencyId);
+                }
+            }
+        }
+
+        return chainLengths;
+    }
+
+    /**
+     * Ordena topológicamente los artefactos (algoritmo de Kahn) de forma que cada artefacto aparezca después de todos
+     * aquellos de los que depende. Los artefactos se agrupan por niveles: primero los que no dependen de ningún otro,
+     * luego los que solo dependen de los anteriores y así sucesivamente. Dentro de un mismo nivel se mantiene el orden
+     * del descriptor.
+     *
+     * @implNote Los artefactos que forman parte de un ciclo, o que dependen de alguno que lo hace, no pueden ordenarse
+     *           y no se incluyen en el resultado (ver {@link #findCycles()}).
+     *
+     * @return Identificadores de los artefactos ordenados
+     */
+    int[] getTopologicalOrder() {
+        List<int[]> levels = getTopologicalLevels();
+
+        int[] order = new int[levels.stream().mapToInt(level -> level.length).sum()];
+        int orderSize = 0;
+        for (int[] level : levels) {
+            System.arraycopy(level, 0, order, orderSize, level.length);
+            orderSize += level.length;
+        }
+
+        return order;
+    }
+
+    /**
+     * Agrupa los artefactos por niveles del orden topológico (ver {@link #getTopologicalOrder()}). Los artefactos de
+     * un mismo nivel no dependen entre sí, por lo que pueden procesarse juntos.
+     *
+     * @return Identificadores de los artefactos de cada nivel
+     */
+    List<int[]> getTopologicalLevels() {
+        int size = size();
+        int[] pendingDependencies = new int[size];
+        int[] order = new int[size];
+        int orderSize = 0;
+
+        for (int id = 0; id < size; id++) {
+            pendingDependencies[id] = dependencies[id].length;
+            if (pendingDependencies[id] == 0) {
+                order[orderSize++] = id;
+            }
+        }
+
+        // Cada nivel está formado por los artefactos cuyas dependencias se completaron en el nivel anterior
+        List<int[]> levels = new ArrayList<>();
+        int levelStart = 0;
+        while (levelStart < orderSize) {
+            int levelEnd = orderSize;
+            levels.add(Arrays.copyOfRange(order, levelStart, levelEnd));
+
+            for (int i = levelStart; i < levelEnd; i++) {
+                for (int dependentId : dependents[order[i]]) {
+                    if (--pendingDependencies[dependentId] == 0) {
+                        order[orderSize++] = dependentId;
+                    }
+                }
+            }
+
+            Arrays.sort(order, levelEnd, orderSize);
+            levelStart = levelEnd;
+        }
+
+        return levels;
+    }
+
+    /**
+     * Busca las dependencias cíclicas entre artefactos. Cada ciclo se corresponde con una componente fuertemente
+     * conexa del grafo de más de un artefacto (algoritmo de Tarjan).
+     *
+     * @return Identificadores de los artefactos de cada ciclo. Si no hay ciclos la lista estará vacía.
+     */
+    List<int[]> findCycles() {
+        int size = size();
+        int[] index = new int[size];
+        int[] lowLink = new int[size];
+        boolean[] onStack = new boolean[size];
+        Arrays.fill(index, -1);
+
+        Deque<Integer> stack = new ArrayDeque<>();
+        // Pila de llamadas explícita para no desbordar la pila del hilo con cadenas de dependencias muy largas.
+        // Cada elemento contiene el artefacto visitado y la posición de la siguiente dependencia a recorrer
+        Deque<int[]> callStack = new ArrayDeque<>();
+        List<int[]> cycles = new ArrayList<>();
+        int nextIndex = 0;
+
+        for (int root = 0; root < size; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+
+            index[root] = lowLink[root] = nextIndex++;
+            stack.push(root);
+            onStack[root] = true;
+            callStack.push(new int[] { root, 0 });
+
+            while (!callStack.isEmpty()) {
+                int[] frame = callStack.peek();
+                int id = frame[0];
+
+                if (frame[1] < dependencies[id].length) {
+                    int dependencyId = dependencies[id][frame[1]++];
+                    if (index[dependencyId] == -1) {
+                        index[dependencyId] = lowLink[dependencyId] = nextIndex++;
+                        stack.push(dependencyId);
+                        onStack[dependencyId] = true;
+                        callStack.push(new int[] { dependencyId, 0 });
+                    } else if (onStack[dependencyId]) {
+                        lowLink[id] = Math.min(lowLink[id], index[dependencyId]);
+                    }
+                    continue;
+                }
+
+                callStack.pop();
+                if (!callStack.isEmpty()) {
+                    int callerId = callStack.peek()[0];
+                    lowLink[callerId] = Math.min(lowLink[callerId], lowLink[id]);
+                }
+
+                if (lowLink[id] == index[id]) {
+                    List<Integer> component = new ArrayList<>();
+                    int memberId;
+                    do {
+                        memberId = stack.pop();
+                        onStack[memberId] = false;
+                        component.add(memberId);
+                    } while (memberId != id);
+
+                    if (component.size() > 1) {
+                        int[] cycle = toArray(component);
+                        Arrays.sort(cycle);
+                        cycles.add(cycle);
+                    }
+                }
+            }
+        }
+
+        return cycles;
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Artifact;
+import com.betanzos.modularizer.pojo.Module;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Descriptor de modularización. Puede estar en un único archivo JSON o dividido en varios archivos {@code *.json}
+ * dentro de un directorio, que se deserializan en paralelo y se unen en el orden de sus nombres.<br/>
+ * <br/>
+ * Los artefactos se indexan por el nombre de su archivo JAR y por el nombre de su módulo mientras se deserializan,
+ * por lo que las búsquedas no dependen de la cantidad de artefactos.
+ *
+ * @implNote Se utiliza el {@link JsonParser} de Jackson en lugar de {@code ObjectMapper} para no construir el árbol ni
+ *           la colección intermedia de cada archivo, lo que con descriptores de decenas de miles de artefactos supone
+ *           la mayor parte del tiempo de deserialización.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class Descriptor {
+
+    /** Extensión de los archivos del descriptor cuando está dividido en un directorio */
+    static final String PART_EXTENSION = ".json";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Map<String, Artifact> artifactsByName;
+    private final Map<String, Artifact> artifactsByModuleName;
+    private final long byteCount;
+
+    private Descriptor(Map<String, Artifact> artifactsByName, Map<String, Artifact> artifactsByModuleName, long byteCount) {
+        this.artifactsByName = artifactsByName;
+        this.artifactsByModuleName = artifactsByModuleName;
+        this.byteCount = byteCount;
+    }
+
+    /**
+     * Deserializa el descriptor de modularización. Si un artefacto aparece varias veces (mismo nombre de archivo JAR)
+     * solo se tiene en cuenta la primera de ellas.
+     *
+     * @param path Archivo del descriptor, o directorio con los archivos {@code *.json} en que está dividido
+     *
+     * @return El descriptor de modularización
+     *
+     * @throws ParseException Si alguno de los archivos no puede leerse o no tiene el formato correcto
+     */
+    static Descriptor parse(File path) throws ParseException {
+        List<File> files = getFiles(path);
+
+        List<List<Artifact>> parts = new ArrayList<>(files.size());
+        if (files.size() == 1) {
+            parts.add(parseFile(files.get(0)));
+        } else if (!files.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+            try {
+                List<Future<List<Artifact>>> futures = new ArrayList<>(files.size());
+                for (File file : files) {
+                    futures.add(executor.submit(() -> parseFile(file)));
+                }
+
+                for (Future<List<Artifact>> future : futures) {
+                    parts.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ParseException("[ERROR] Modularization descriptor parsing interrupted.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ParseException) {
+                    throw (ParseException) e.getCause();
+                }
+                throw new ParseException("[ERROR] Error parsing modularization descriptor. " + e.getCause(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        int count = parts.stream().mapToInt(List::size).sum();
+        Map<String, Artifact> artifactsByName = new LinkedHashMap<>(count * 2);
+        Map<String, Artifact> artifactsByModuleName = new HashMap<>(count * 2);
+        for (List<Artifact> part : parts) {
+            for (Artifact artifact : part) {
+                if (artifactsByName.putIfAbsent(artifact.getName(), artifact) == null && artifact.getModule() != null) {
+                    artifactsByModuleName.putIfAbsent(artifact.getModule().getName(), artifact);
+                }
+            }
+        }
+
+        long byteCount = files.stream().mapToLong(File::length).sum();
+        return new Descriptor(artifactsByName, artifactsByModuleName, byteCount);
+    }
+
+    /**
+     * @param path Archivo del descriptor, o directorio con los archivos en que está dividido
+     *
+     * @return Los archivos del descriptor, en el orden en que deben unirse
+     */
+    static List<File> getFiles(File path) {
+        if (!path.isDirectory()) {
+            return Collections.singletonList(path);
+        }
+
+        File[] files = path.listFiles((dir, name) -> name.endsWith(PART_EXTENSION));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static List<Artifact> parseFile(File file) throws ParseException {
+        List<Artifact> artifacts = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(file)) {
+            expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                artifacts.add(readArtifact(parser));
+            }
+        } catch (IOException e) {
+            throw new ParseException("[ERROR] Error parsing modularization descriptor file '" + file + "'. " + e.getMessage(), e);
+        }
+
+        return artifacts;
+    }
+
+    private static Artifact readArtifact(JsonParser parser) throws IOException {
+        Artifact artifact = new Artifact();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (field.equals("name")) {
+                artifact.setName(readString(parser, token));
+            } else if (field.equals("module")) {
+                if (token != JsonToken.VALUE_NULL) {
+                    expect(parser, token, JsonToken.START_OBJECT);
+                    artifact.setModule(readModule(parser));
+                }
+            } else {
+                throw new JsonParseException(parser, "Unrecognized field \"" + field + "\" in artifact");
+            }
+        }
+
+        if (artifact.getName() == null) {
+            throw new JsonParseException(parser, "Artifact without \"name\"");
+        }
+
+        return artifact;
+    }
+
+    private static Module readModule(JsonParser parser) throws IOException {
+        Module module = new Module();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (field.equals("name")) {
+                module.setName(readString(parser, token));
+            } else if (field.equals("exportsPackages")) {
+                module.setExportsPackages(readStringSet(parser, token));
+            } else if (field.equals("requiresModules")) {
+                module.setRequiresModules(readStringSet(parser, token));
+            } else {
+                throw new JsonParseException(parser, "Unrecognized field \"" + field + "\" in module");
+            }
+        }
+
+        return module;
+    }
+
+    private static String readString(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        expect(parser, token, JsonToken.VALUE_STRING);
+        return parser.getText();
+    }
+
+    private static Set<String> readStringSet(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        // Mismo tipo de conjunto que el utilizado por ObjectMapper para las propiedades de tipo Set
+        expect(parser, token, JsonToken.START_ARRAY);
+        Set<String> values = new HashSet<>();
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            values.add(readString(parser, token));
+        }
+
+        return values;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token, JsonToken expected) throws JsonParseException {
+        if (token != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + (token != null ? token : "end of file"));
+        }
+    }
+
+    /**
+     * @return Los artefactos, en el orden en que aparecen en el descriptor
+     */
+    Collection<Artifact> getArtifacts() {
+        return artifactsByName.values();
+    }
+
+    /**
+     * @param name Nombre del archivo JAR
+     *
+     * @return El artefacto del archivo JAR {@code name}, o {@code null} si no está en el descriptor
+     */
+    Artifact findByName(String name) {
+        return artifactsByName.get(name);
+    }
+
+    /**
+     * @param moduleName Nombre del módulo
+     *
+     * @return El primer artefacto que define el módulo {@code moduleName}, o {@code null} si ninguno lo define
+     */
+    Artifact findByModuleName(String moduleName) {
+        return artifactsByModuleName.get(moduleName);
+    }
+
+    int size() {
+        return artifactsByName.size();
+    }
+
+    boolean isEmpty() {
+        return artifactsByName.isEmpty();
+    }
+
+    /**
+     * @return Tamaño en bytes de los archivos del descriptor
+     */
+    long getByteCount() {
+        return byteCount;
+    }
+}
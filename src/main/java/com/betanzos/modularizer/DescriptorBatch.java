@@ -0,0 +1,120 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Lote de descriptores de módulo que se compilan con una única invocación de {@code javac} (ver
+ * {@link Compiler#compileModuleDescriptors(DescriptorBatch, String)}). Contiene, por cada módulo, el código fuente
+ * de su descriptor y el contenido del JAR que lo forma y, tras la compilación, el archivo module-info.class generado
+ * y los mensajes del compilador que le corresponden.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class DescriptorBatch {
+
+    private final Map<String, String> sources = new LinkedHashMap<>();
+    private final Map<String, JarContent> jarContents = new HashMap<>();
+    private final Map<String, byte[]> descriptors = new HashMap<>();
+    private final Map<String, String> messages = new HashMap<>();
+    private final Set<String> failedModules = new HashSet<>();
+
+    /**
+     * Agrega un módulo al lote
+     *
+     * @param moduleName Nombre del módulo
+     * @param moduleSource Contenido del archivo module-info.java
+     * @param jarContent Contenido del archivo JAR que formará el módulo
+     */
+    void add(String moduleName, String moduleSource, JarContent jarContent) {
+        sources.put(moduleName, moduleSource);
+        jarContents.put(moduleName, jarContent);
+    }
+
+    /**
+     * @return Nombres de los módulos del lote, en el orden en que fueron agregados
+     */
+    Set<String> getModuleNames() {
+        return Collections.unmodifiableSet(sources.keySet());
+    }
+
+    String getSource(String moduleName) {
+        return sources.get(moduleName);
+    }
+
+    JarContent getJarContent(String moduleName) {
+        return jarContents.get(moduleName);
+    }
+
+    int size() {
+        return sources.size();
+    }
+
+    void setDescriptor(String moduleName, byte[] descriptorData) {
+        descriptors.put(moduleName, descriptorData);
+    }
+
+    /**
+     * @return Contenido del archivo module-info.class del módulo o {@code null} si no fue compilado
+     */
+    byte[] getDescriptor(String moduleName) {
+        return descriptors.get(moduleName);
+    }
+
+    void setMessages(String moduleName, String moduleMessages) {
+        messages.put(moduleName, moduleMessages);
+    }
+
+    /**
+     * @return Mensajes del compilador relativos al módulo, {@link Optional#empty()} si no hubo ninguno
+     */
+    Optional<String> getMessages(String moduleName) {
+        return Optional.ofNullable(messages.get(moduleName));
+    }
+
+    /**
+     * Marca el módulo como causa del fallo de la compilación del lote
+     */
+    void setFailed(String moduleName) {
+        failedModules.add(moduleName);
+    }
+
+    /**
+     * Si la compilación del lote falla no se genera ningún descriptor. Estos son los módulos a los que se atribuyen
+     * los errores y que deben excluirse del lote para que el resto pueda compilarse.
+     *
+     * @return Módulos con errores de compilación. Si está vacío no fue posible atribuir los errores a ningún módulo
+     */
+    Set<String> getFailedModules() {
+        return Collections.unmodifiableSet(failedModules);
+    }
+}
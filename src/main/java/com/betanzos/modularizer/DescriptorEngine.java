@@ -0,0 +1,59 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+/**
+ * Mecanismos disponibles para generar el archivo module-info.class de cada artefacto.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+enum DescriptorEngine {
+    /**
+     * Se genera el archivo module-info.java y se compila con {@code javac}. El compilador valida que los módulos
+     * requeridos sean visibles en el {@code --module-path}.
+     */
+    JAVAC,
+
+    /**
+     * El archivo module-info.class se escribe directamente a partir de la definición del módulo, sin compilar. Los
+     * módulos requeridos no son validados.
+     */
+    BYTECODE;
+
+    /**
+     * @param name Nombre del mecanismo tal y como se especifica en la línea de comandos (sin importar mayúsculas)
+     *
+     * @return El mecanismo correspondiente a {@code name} o {@code null} si no existe ninguno con ese nombre.
+     */
+    static DescriptorEngine fromName(String name) {
+        for (DescriptorEngine engine : values()) {
+            if (engine.name().equalsIgnoreCase(name)) {
+                return engine;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.module.InvalidModuleDescriptorException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Almacén en disco de archivos module-info.class compilados, direccionado por contenido. La clave de cada archivo es
+ * un resumen SHA-256 de todo lo que determina el resultado de la compilación (ver
+ * {@link Modularizer#generateModuleDescriptor}), por lo que el almacén puede compartirse entre ejecuciones y entre
+ * proyectos distintos.<br/>
+ * <br/>
+ * Cada archivo se guarda como {@code <dir>/<2 primeros caracteres de la clave>/<clave>.class}. Los archivos se
+ * escriben con un nombre temporal y se renombran al terminar, de modo que varios procesos pueden usar el mismo
+ * directorio a la vez. Al leer un archivo se actualiza su fecha de modificación, la cual se utiliza para eliminar
+ * los archivos usados hace más tiempo cuando el almacén supera su tamaño máximo (ver {@link #trim()}).
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class DescriptorStore {
+
+    static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final String FILE_EXTENSION = ".class";
+
+    private final Path directory;
+    private final long maxSize;
+
+    private final AtomicInteger countHits = new AtomicInteger();
+    private final AtomicInteger countMisses = new AtomicInteger();
+
+    /**
+     * @param directory Directorio del almacén. Será creado si no existe
+     * @param maxSize Tamaño máximo, en bytes, que puede ocupar el almacén
+     *
+     * @throws IOException Si el directorio no existe y no puede ser creado
+     */
+    DescriptorStore(File directory, long maxSize) throws IOException {
+        this.directory = directory.toPath();
+        this.maxSize = maxSize;
+
+        Files.createDirectories(this.directory);
+    }
+
+    /**
+     * Busca en el almacén el descriptor compilado correspondiente a {@code key}. Si el archivo almacenado no es un
+     * descriptor válido del módulo {@code moduleName} es eliminado.
+     *
+     * @param key Clave del descriptor
+     * @param moduleName Nombre del módulo del descriptor
+     *
+     * @return Contenido del archivo module-info.class o {@code null} si no está en el almacén
+     */
+    byte[] get(String key, String moduleName) {
+        Path file = getPath(key);
+
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (IOException e) {
+            countMisses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            if (!ModuleDescriptor.read(ByteBuffer.wrap(data)).name().equals(moduleName)) {
+                throw new InvalidModuleDescriptorException("Unexpected module name");
+            }
+        } catch (InvalidModuleDescriptorException e) {
+            deleteQuietly(file);
+            countMisses.incrementAndGet();
+            return null;
+        }
+
+        // La fecha de modificación indica cuándo se usó por última vez
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // No es un error, solo afecta al orden en que se eliminan los archivos
+        }
+
+        countHits.incrementAndGet();
+        return data;
+    }
+
+    /**
+     * Agrega al almacén el descriptor compilado correspondiente a {@code key}.
+     *
+     * @param key Clave del descriptor
+     * @param data Contenido del archivo module-info.class
+     *
+     * @throws IOException Si ocurre un error escribiendo el archivo
+     */
+    void put(String key, byte[] data) throws IOException {
+        Path file = getPath(key);
+        Files.createDirectories(file.getParent());
+
+        Path tempFile = file.resolveSibling(key + "." + UUID.randomUUID() + ".part");
+        try {
+            Files.write(tempFile, data);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Elimina los archivos usados hace más tiempo hasta que el tamaño del almacén no supere el máximo.
+     *
+     * @return Cantidad de archivos eliminados
+     *
+     * @throws IOException Si ocurre un error recorriendo el directorio del almacén
+     */
+    int trim() throws IOException {
+        List<StoredFile> files = new ArrayList<>();
+        long totalSize = 0;
+
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!path.getFileName().toString().endsWith(FILE_EXTENSION)) {
+                    continue;
+                }
+
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        files.add(new StoredFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                        totalSize += attributes.size();
+                    }
+                } catch (NoSuchFileException e) {
+                    // Eliminado por otro proceso
+                }
+            }
+        }
+
+        if (totalSize <= maxSize) {
+            return 0;
+        }
+
+        files.sort(Comparator.comparingLong((StoredFile f) -> f.lastModified).thenComparing(f -> f.path));
+
+        int countDeleted = 0;
+        for (StoredFile file : files) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+
+            deleteQuietly(file.path);
+            totalSize -= file.size;
+            countDeleted++;
+        }
+
+        return countDeleted;
+    }
+
+    /**
+     * @return Cantidad de descriptores encontrados en el almacén
+     */
+    int getCountHits() {
+        return countHits.get();
+    }
+
+    /**
+     * @return Cantidad de descriptores que no estaban en el almacén y tuvieron que ser compilados
+     */
+    int getCountMisses() {
+        return countMisses.get();
+    }
+
+    /**
+     * Reinicia los contadores de aciertos y fallos. Se utiliza al comenzar cada modularización del modo --watch.
+     */
+    void resetCounts() {
+        countHits.set(0);
+        countMisses.set(0);
+    }
+
+    private Path getPath(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + FILE_EXTENSION);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Se intentará de nuevo en la siguiente ejecución
+        }
+    }
+
+    private static final class StoredFile {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+        private StoredFile(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
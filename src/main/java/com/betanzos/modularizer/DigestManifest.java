@@ -0,0 +1,210 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manifiesto con el resumen SHA-256 de cada JAR modularizado, que se escribe en {@code destDir} con --reproducible.<br/>
+ * <br/>
+ * Tiene el formato de la herramienta {@code sha256sum}: una línea por JAR con su resumen, dos espacios y su ruta
+ * respecto a {@code destDir}, ordenadas por ruta, de forma que pueda comprobarse con {@code sha256sum -c} desde
+ * {@code destDir} y que dos modularizaciones de los mismos JARs produzcan el mismo manifiesto.<br/>
+ * <br/>
+ * En una modularización repartida cada proceso escribe un manifiesto propio con sus JARs, y el coordinador los une al
+ * terminar (ver {@link #merge(File, int)}).
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class DigestManifest {
+
+    static final String FILE_NAME = "modular-jars.sha256";
+
+    private final File destDir;
+    private final Map<String, String> digests = new ConcurrentHashMap<>();
+
+    private DigestManifest(File destDir) {
+        this.destDir = destDir;
+    }
+
+    /**
+     * @param destDir Directorio donde se depositan los JARs modularizados
+     * @param shardIndex Índice del proceso de una modularización repartida, a partir de 1, o {@code 0} si no lo es
+     * @param shardCount Cantidad de procesos de la modularización repartida
+     *
+     * @return Archivo del manifiesto
+     */
+    static File getFile(File destDir, int shardIndex, int shardCount) {
+        if (shardIndex > 0) {
+            return new File(destDir, FILE_NAME.replace(".sha256", ".shard-" + shardIndex + "-of-" + shardCount + ".sha256"));
+        }
+        return new File(destDir, FILE_NAME);
+    }
+
+    /**
+     * Carga el manifiesto de la ejecución anterior en {@code destDir}. Si no existe, o no puede ser leído, se comienza
+     * con un manifiesto vacío.
+     *
+     * @param destDir Directorio donde se depositan los JARs modularizados
+     * @param out Salida en la que se muestra la advertencia si el manifiesto no puede ser leído
+     *
+     * @return El manifiesto cargado
+     */
+    static DigestManifest load(File destDir, PrintStream out) {
+        DigestManifest manifest = new DigestManifest(destDir);
+        File manifestFile = getFile(destDir, 0, 0);
+        if (manifestFile.isFile()) {
+            try {
+                manifest.digests.putAll(read(manifestFile));
+            } catch (IOException e) {
+                out.println("[WARN] Can not read digest manifest '" + manifestFile + "'. " + e.getMessage());
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Une los manifiestos de los procesos de una modularización repartida en el manifiesto de {@code destDir} y los
+     * elimina. Si falta el de alguno de los procesos el manifiesto de {@code destDir} no se modifica.
+     *
+     * @param destDir Directorio donde se depositan los JARs modularizados
+     * @param shardCount Cantidad de procesos de la modularización repartida
+     *
+     * @return {@code true} si se unieron los manifiestos, {@code false} si falta el de alguno de los procesos
+     *
+     * @throws IOException Si ocurre un error leyendo o escribiendo los manifiestos
+     */
+    static boolean merge(File destDir, int shardCount) throws IOException {
+        Map<String, String> merged = new TreeMap<>();
+        for (int i = 1; i <= shardCount; i++) {
+            File shardFile = getFile(destDir, i, shardCount);
+            if (!shardFile.isFile()) {
+                return false;
+            }
+            merged.putAll(read(shardFile));
+        }
+
+        write(getFile(destDir, 0, 0), merged);
+        for (int i = 1; i <= shardCount; i++) {
+            Files.deleteIfExists(getFile(destDir, i, shardCount).toPath());
+        }
+        return true;
+    }
+
+    /**
+     * @param jar JAR modularizado
+     *
+     * @return Resumen SHA-256 registrado del JAR, o {@code null} si no tiene
+     */
+    String get(File jar) {
+        return digests.get(getPath(jar));
+    }
+
+    /**
+     * Registra el resumen SHA-256 del JAR modularizado {@code jar}.
+     */
+    void put(File jar, String digest) {
+        digests.put(getPath(jar), digest);
+    }
+
+    /**
+     * Guarda el manifiesto en el archivo {@code manifestFile}. Solo se conservan los JARs {@code jars} que existen; los
+     * que no tienen resumen registrado, por ejemplo porque se modularizaron sin --reproducible, se leen para
+     * calcularlo.
+     *
+     * @param manifestFile Archivo del manifiesto (ver {@link #getFile(File, int, int)})
+     * @param jars JARs modularizados de los artefactos definidos en el descriptor de modularización
+     *
+     * @throws IOException Si ocurre un error leyendo algún JAR o escribiendo el archivo
+     */
+    void save(File manifestFile, Collection<File> jars) throws IOException {
+        Map<String, String> content = new TreeMap<>();
+        for (File jar : jars) {
+            if (!jar.isFile()) {
+                continue;
+            }
+
+            String path = getPath(jar);
+            String digest = digests.get(path);
+            if (digest == null) {
+                digest = Digests.sha256(jar);
+                digests.put(path, digest);
+            }
+            content.put(path, digest);
+        }
+
+        write(manifestFile, content);
+    }
+
+    /**
+     * @return Ruta del JAR respecto a {@code destDir}, con {@code /} como separador. Con --in-place los JARs están
+     *         fuera de {@code destDir}.
+     */
+    private String getPath(File jar) {
+        return destDir.getAbsoluteFile().toPath().normalize()
+                .relativize(jar.getAbsoluteFile().toPath().normalize())
+                .toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    private static Map<String, String> read(File manifestFile) throws IOException {
+        Map<String, String> content = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf("  ");
+                if (separator <= 0) {
+                    throw new IOException("Invalid line '" + line + "'");
+                }
+                content.put(line.substring(separator + 2), line.substring(0, separator));
+            }
+        }
+
+        return content;
+    }
+
+    private static void write(File manifestFile, Map<String, String> content) throws IOException {
+        File tempFile = new File(manifestFile.getParentFile(), manifestFile.getName() + ".part");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : content.entrySet()) {
+                // Siempre con '\n', como sha256sum, para que el manifiesto sea el mismo en todos los sistemas
+                writer.write(entry.getValue() + "  " + entry.getKey() + "\n");
+            }
+        }
+        Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
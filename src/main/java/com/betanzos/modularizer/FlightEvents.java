@@ -0,0 +1,128 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Eventos de Java Flight Recorder (JFR) de las fases de la modularización, para analizar una ejecución en JDK Mission
+ * Control junto a la actividad del recolector de basura, de entrada/salida, etc. Cada evento registra el artefacto, el
+ * módulo, una cantidad de entradas y una cantidad de bytes, cuyo significado depende de la fase (ver {@link Type}).<br/>
+ * <br/>
+ * Los eventos se crean en {@link JfrEvents}, que solo se carga si el módulo {@code jdk.jfr} está disponible, ya que no
+ * forma parte de todos los JDK 9 y 10. Si no lo está, o si no hay ninguna grabación que registre los eventos,
+ * {@link #begin(Type)} devuelve siempre la misma instancia de {@link Span}, que no hace nada.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class FlightEvents {
+
+    private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    private static final Span DISABLED = new Span(null);
+
+    /**
+     * Fases de la modularización que generan eventos
+     */
+    enum Type {
+        /** Deserialización del descriptor de modularización. Entradas: artefactos; bytes: tamaño del descriptor */
+        DESCRIPTOR_PARSE,
+        /** Ordenamiento de los artefactos. Entradas: artefactos */
+        ARTIFACT_SORT,
+        /** Análisis de un JAR. Entradas: entradas del JAR; bytes: tamaño de su directorio central */
+        JAR_SCAN,
+        /** Generación de un descriptor de módulo. Entradas: paquetes exportados; bytes: tamaño del descriptor */
+        DESCRIPTOR_GENERATE,
+        /** Compilación de uno o varios descriptores. Entradas: descriptores compilados; bytes: código fuente compilado */
+        COMPILE,
+        /** Creación de un JAR modularizado. Entradas: entradas del JAR; bytes: tamaño del JAR */
+        PATCH
+    }
+
+    /**
+     * Private for avoid class instantiation
+     */
+    private FlightEvents() {}
+
+    /**
+     * Inicia el evento de la fase {@code type}.
+     *
+     * @param type Fase
+     *
+     * @return El evento iniciado, que debe terminarse con {@link Span#end(String, String, long, long)}
+     */
+    static Span begin(Type type) {
+        if (!AVAILABLE) {
+            return DISABLED;
+        }
+
+        Object event = JfrEvents.begin(type);
+        return event != null ? new Span(event) : DISABLED;
+    }
+
+    /**
+     * Inicia una grabación de JFR con la configuración {@code default} que se escribirá en el archivo {@code file}
+     * al cerrarla.
+     *
+     * @param file Archivo de la grabación
+     *
+     * @return La grabación iniciada
+     *
+     * @throws IOException Si JFR no está disponible o no se puede iniciar la grabación
+     */
+    static AutoCloseable startRecording(Path file) throws IOException {
+        if (!AVAILABLE) {
+            throw new IOException("Java Flight Recorder is not available in this JVM");
+        }
+
+        return JfrEvents.startRecording(file);
+    }
+
+    /**
+     * Evento de JFR en curso
+     */
+    static final class Span {
+        private final Object event;
+
+        private Span(Object event) {
+            this.event = event;
+        }
+
+        /**
+         * Termina el evento y lo registra en las grabaciones activas.
+         *
+         * @param artifactName Nombre del archivo JAR, o {@code null} si la fase no corresponde a un artefacto
+         * @param moduleName Nombre del módulo, o {@code null} si la fase no corresponde a un artefacto
+         * @param entryCount Cantidad de entradas procesadas
+         * @param bytes Cantidad de bytes procesados
+         */
+        void end(String artifactName, String moduleName, long entryCount, long bytes) {
+            if (event != null) {
+                JfrEvents.end(event, artifactName, moduleName, entryCount, bytes);
+            }
+        }
+    }
+}
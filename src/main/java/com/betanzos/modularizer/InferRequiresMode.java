@@ -0,0 +1,58 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+/**
+ * Uso de los módulos requeridos que se infieren del bytecode de los JARs (ver {@link RequiresInference}).
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+enum InferRequiresMode {
+    /**
+     * Los módulos inferidos se agregan a los {@code requiresModules} del descriptor de modularización.
+     */
+    FILL,
+
+    /**
+     * Los {@code requiresModules} del descriptor no se modifican. Se advierte de los módulos inferidos que no están
+     * declarados y de los declarados que no se han inferido.
+     */
+    CHECK;
+
+    /**
+     * @param name Nombre del modo tal y como se especifica en la línea de comandos (sin importar mayúsculas)
+     *
+     * @return El modo correspondiente a {@code name} o {@code null} si no existe ninguno con ese nombre.
+     */
+    static InferRequiresMode fromName(String name) {
+        for (InferRequiresMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Contenido relevante de un archivo JAR para su modularización: los paquetes que contienen archivos de clase y si el
+ * JAR ya contiene algún descriptor de módulo. Se obtiene únicamente a partir de los nombres de las entradas, sin
+ * extraer ni descomprimir su contenido.<br/>
+ * <br/>
+ * Los nombres se leen directamente del directorio central del archivo, el cual se mapea en memoria, por lo que el
+ * tiempo de análisis solo depende de la cantidad de entradas y no del tamaño del JAR. Soporta archivos ZIP64.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class JarContent {
+
+    private static final String MODULE_DESCRIPTOR_NAME = "module-info.class";
+    private static final byte[] CLASS_EXTENSION = ".class".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MODULE_DESCRIPTOR_BYTES = MODULE_DESCRIPTOR_NAME.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] META_INF_PREFIX = "META-INF/".getBytes(StandardCharsets.US_ASCII);
+
+    // Tamaño máximo de cada región mapeada del directorio central. Un registro del directorio central ocupa como
+    // máximo CENTRAL_HEADER_SIZE + 3 * 0xFFFF bytes, por lo que siempre cabe completo en una región
+    private static final int MAX_MAPPED_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+    private final Map<String, List<String>> classesByPackage;
+    private boolean containsModuleDescriptor;
+    private long centralDirectorySize;
+    private long entryCount;
+
+    // Las entradas de un mismo paquete suelen estar juntas, por lo que se recuerda la lista del último paquete
+    private String lastPackageName;
+    private List<String> lastPackageClasses;
+
+    private JarContent(File file) {
+        this.file = file;
+        this.classesByPackage = new HashMap<>();
+    }
+
+    /**
+     * Analiza las entradas del archivo JAR {@code file} leyendo únicamente su directorio central.
+     *
+     * @param file Ruta al archivo JAR
+     *
+     * @return El contenido del JAR
+     *
+     * @throws IOException Si ocurre un error leyendo el archivo o no es un archivo ZIP válido
+     */
+    static JarContent scan(File file) throws IOException {
+        JarContent content = new JarContent(file);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ZipCentralDirectory centralDirectory = ZipCentralDirectory.read(channel);
+            content.centralDirectorySize = centralDirectory.getSize();
+            content.entryCount = centralDirectory.getEntryCount();
+            long position = centralDirectory.getOffset();
+            long end = position + centralDirectory.getSize();
+
+            ByteBuffer region = null;
+            long regionOffset = 0;
+            byte[] name = new byte[256];
+
+            for (long i = 0; i < centralDirectory.getEntryCount(); i++) {
+                if (position + ZipCentralDirectory.CENTRAL_HEADER_SIZE > end) {
+                    throw new IOException("Truncated central directory");
+                }
+                if (region == null || position + ZipCentralDirectory.CENTRAL_HEADER_SIZE > regionOffset + region.limit()) {
+                    region = map(channel, position, end);
+                    regionOffset = position;
+                }
+
+                int pos = (int) (position - regionOffset);
+                if (region.getInt(pos) != ZipCentralDirectory.CENTRAL_HEADER_SIGNATURE) {
+                    throw new IOException("Invalid central directory header at offset " + position);
+                }
+
+                int nameLength = region.getShort(pos + 28) & 0xFFFF;
+                int extraLength = region.getShort(pos + 30) & 0xFFFF;
+                int commentLength = region.getShort(pos + 32) & 0xFFFF;
+                long recordSize = ZipCentralDirectory.CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+                if (position + recordSize > end) {
+                    throw new IOException("Truncated central directory");
+                }
+                if (position + recordSize > regionOffset + region.limit()) {
+                    region = map(channel, position, end);
+                    regionOffset = position;
+                    pos = 0;
+                }
+
+                if (nameLength > name.length) {
+                    name = new byte[nameLength];
+                }
+                region.position(pos + ZipCentralDirectory.CENTRAL_HEADER_SIZE);
+                region.get(name, 0, nameLength);
+                content.addEntry(name, nameLength);
+
+                position += recordSize;
+            }
+        }
+
+        return content;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long end) throws IOException {
+        long size = Math.min(end - position, MAX_MAPPED_SIZE);
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Registra una entrada del JAR a partir de su nombre tal como se almacena en el directorio central (los JARs
+     * siempre codifican los nombres en UTF-8). Solo se decodifican los nombres de los archivos .class que pertenecen
+     * a algún paquete.
+     *
+     * @param name Buffer con el nombre de la entrada. Su contenido es modificado
+     * @param length Longitud del nombre
+     */
+    private void addEntry(byte[] name, int length) {
+        if (!endsWith(name, length, CLASS_EXTENSION)) {
+            return;
+        }
+
+        if (endsWith(name, length, MODULE_DESCRIPTOR_BYTES)) {
+            containsModuleDescriptor = true;
+            return;
+        }
+
+        // '/' y '.' son caracteres ASCII, por lo que pueden reemplazarse antes de decodificar el nombre
+        int classNameLength = length - CLASS_EXTENSION.length;
+        int lastSlashIndex = -1;
+        for (int i = 0; i < classNameLength; i++) {
+            if (name[i] == '/') {
+                name[i] = '.';
+                lastSlashIndex = i;
+            }
+        }
+
+        // Las clases del paquete sin nombre y las de META-INF (por ejemplo las de META-INF/versions) no forman parte
+        // de ningún paquete del módulo
+        if (lastSlashIndex < 0 || startsWith(name, length, META_INF_PREFIX)) {
+            return;
+        }
+
+        String className = new String(name, 0, classNameLength, StandardCharsets.UTF_8);
+
+        // La posición del último '.' se toma del nombre ya decodificado, ya que con caracteres que no son ASCII no
+        // coincide con la posición en bytes de la última '/'
+        int lastDotIndex = className.lastIndexOf('.');
+        if (lastPackageName == null
+                || lastPackageName.length() != lastDotIndex
+                || !className.startsWith(lastPackageName)) {
+            lastPackageName = className.substring(0, lastDotIndex);
+            lastPackageClasses = classesByPackage.computeIfAbsent(lastPackageName, p -> new ArrayList<>());
+        }
+        lastPackageClasses.add(className);
+    }
+
+    private static boolean endsWith(byte[] name, int length, byte[] suffix) {
+        if (length < suffix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < suffix.length; i++) {
+            if (name[length - suffix.length + i] != suffix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Compara el prefijo teniendo en cuenta que en {@code name} ya se reemplazó '/' por '.'
+     */
+    private static boolean startsWith(byte[] name, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            byte expected = prefix[i] == '/' ? (byte) '.' : prefix[i];
+            if (name[i] != expected) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Ruta al archivo JAR
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Tamaño del directorio central, es decir, la cantidad de bytes del JAR leídos para analizarlo
+     */
+    long getCentralDirectorySize() {
+        return centralDirectorySize;
+    }
+
+    /**
+     * @return Cantidad de entradas del JAR
+     */
+    long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return {@code true} si el JAR contiene al menos una entrada module-info.class
+     */
+    boolean containsModuleDescriptor() {
+        return containsModuleDescriptor;
+    }
+
+    /**
+     * @return Paquetes del JAR que contienen al menos un archivo .class
+     */
+    Set<String> getNonEmptyPackages() {
+        return Collections.unmodifiableSet(classesByPackage.keySet());
+    }
+
+    /**
+     * @param packageName Nombre del paquete
+     *
+     * @return Nombres binarios de las clases contenidas en el paquete {@code packageName}
+     */
+    List<String> getClasses(String packageName) {
+        return classesByPackage.getOrDefault(packageName, Collections.emptyList());
+    }
+}
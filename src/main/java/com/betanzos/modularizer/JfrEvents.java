@@ -0,0 +1,180 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Tipos de eventos de JFR de las fases de la modularización (ver {@link FlightEvents}). Esta clase solo debe usarse
+ * si el módulo {@code jdk.jfr} está disponible.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class JfrEvents {
+
+    /**
+     * Private for avoid class instantiation
+     */
+    private JfrEvents() {}
+
+    /**
+     * @return El evento de la fase {@code type} iniciado, o {@code null} si no hay ninguna grabación que lo registre
+     */
+    static Object begin(FlightEvents.Type type) {
+        ModularizerEvent event;
+        switch (type) {
+            case DESCRIPTOR_PARSE:
+                event = new DescriptorParseEvent();
+                break;
+            case ARTIFACT_SORT:
+                event = new ArtifactSortEvent();
+                break;
+            case JAR_SCAN:
+                event = new JarScanEvent();
+                break;
+            case DESCRIPTOR_GENERATE:
+                event = new DescriptorGenerateEvent();
+                break;
+            case COMPILE:
+                event = new CompileEvent();
+                break;
+            default:
+                event = new PatchEvent();
+                break;
+        }
+
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    static void end(Object event, String artifactName, String moduleName, long entryCount, long bytes) {
+        ModularizerEvent modularizerEvent = (ModularizerEvent) event;
+        modularizerEvent.end();
+        if (modularizerEvent.shouldCommit()) {
+            modularizerEvent.artifactName = artifactName;
+            modularizerEvent.moduleName = moduleName;
+            modularizerEvent.entryCount = entryCount;
+            modularizerEvent.bytes = bytes;
+            modularizerEvent.commit();
+        }
+    }
+
+    /**
+     * @see FlightEvents#startRecording(Path)
+     */
+    static AutoCloseable startRecording(Path file) throws IOException {
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (java.text.ParseException e) {
+            throw new IOException("Invalid JFR configuration. " + e.getMessage(), e);
+        }
+
+        recording.setName("JarModularizer");
+        recording.setToDisk(true);
+        recording.setDestination(file);
+        // En el modo --watch el proceso termina con Ctrl+C, sin que se cierre la grabación
+        recording.setDumpOnExit(true);
+        recording.start();
+
+        // Al detener la grabación se escribe en su destino
+        return () -> {
+            try {
+                recording.stop();
+            } finally {
+                recording.close();
+            }
+        };
+    }
+
+    @Category("JarModularizer")
+    private abstract static class ModularizerEvent extends Event {
+        @Label("Artifact")
+        @Description("JAR file name")
+        String artifactName;
+
+        @Label("Module")
+        String moduleName;
+
+        @Label("Entries")
+        @Description("Number of entries processed. Its meaning depends on the phase")
+        long entryCount;
+
+        @Label("Bytes")
+        @Description("Number of bytes processed. Its meaning depends on the phase")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.betanzos.modularizer.DescriptorParse")
+    @Label("Descriptor Parse")
+    @Description("Modularization descriptor parsing. Entries: artifacts; bytes: descriptor file size")
+    private static final class DescriptorParseEvent extends ModularizerEvent {
+    }
+
+    @Name("com.betanzos.modularizer.ArtifactSort")
+    @Label("Artifact Sort")
+    @Description("Dependency sort of the artifacts. Entries: artifacts")
+    private static final class ArtifactSortEvent extends ModularizerEvent {
+    }
+
+    @Name("com.betanzos.modularizer.JarScan")
+    @Label("JAR Scan")
+    @Description("Central directory scan of a JAR file. Entries: JAR entries; bytes: central directory size")
+    private static final class JarScanEvent extends ModularizerEvent {
+    }
+
+    @Name("com.betanzos.modularizer.DescriptorGenerate")
+    @Label("Descriptor Generation")
+    @Description("Generation of a module descriptor. Entries: exported packages; bytes: descriptor size")
+    private static final class DescriptorGenerateEvent extends ModularizerEvent {
+    }
+
+    @Name("com.betanzos.modularizer.Compile")
+    @Label("Descriptor Compile")
+    @Description("Compilation of one or more module descriptors. Entries: descriptors; bytes: source size")
+    private static final class CompileEvent extends ModularizerEvent {
+    }
+
+    @Name("com.betanzos.modularizer.Patch")
+    @Label("JAR Patch")
+    @Description("Creation of a modular JAR file. Entries: JAR entries; bytes: modular JAR size")
+    private static final class PatchEvent extends ModularizerEvent {
+    }
+}
@@ -24,8 +24,13 @@
 package com.betanzos.modularizer;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Access point to the application.
@@ -39,16 +44,6 @@ public final class Main {
     private static final String version = "1.0.1";
     private static final String helpText;
 
-    // TODO Mover a un archivo aparte
-    static File descriptorFile;
-    static File sourceDir;
-    static File destDir;
-    static String modulePath;
-    static String jdkHome;
-
-    private static boolean showHelp;
-    private static boolean showVersion;
-
     /**
      * Private for avoid class instantiation
      */
@@ -58,23 +53,64 @@ public final class Main {
         helpText = new StringBuilder()
                 .append("usage: java -jar jar-modularizer.jar --descriptor <path> --source <path>\n")
                 .append("                                     [--dest <path>] [--module-path <path-group>] [--jdk-home <path>]\n")
+                .append("                                     [--recursive] [--include <glob>] [--exclude <glob>]\n")
+                .append("                                     [--engine <javac|bytecode>] [--threads <n>] [--batch <level|all>]\n")
+                .append("                                     [--infer-requires <fill|check>]\n")
+                .append("                                     [--compression <store|fastest|default|max>] [--compression-threads <n>]\n")
+                .append("                                     [--in-place] [--reproducible] [--shards <n>]\n")
+                .append("                                     [--no-cache] [--descriptor-store <path>] [--descriptor-store-size <MB>]\n")
+                .append("                                     [--report <file>] [--slowest <n>] [--jfr <file>]\n")
+                .append("                                     [--watch] [--watch-delay <ms>]\n")
                 .append("                                     [--version] [--help, -h]\n")
+                .append("       java -jar jar-modularizer.jar --daemon [--daemon-port <n>]\n")
+                .append("       java -jar jar-modularizer.jar --client <arguments>\n")
+                .append("       java -jar jar-modularizer.jar --stop-daemon\n")
                 .append("\n")
                 .append("Wellcome to ").append(prodName).append("!\n")
                 .append("------------------------------------------\n")
                 .append("Version: ").append(version).append("\n")
                 .append("\n")
                 .append("mandatory arguments:\n")
-                .append(getParamHelpLine("--descriptor <path>", "Path to modularization descriptor file."))
+                .append(getParamHelpLine("--descriptor <path>", "Path to modularization descriptor file, or to a directory with the descriptor split in several *.json files (parsed in parallel and merged in file name order)."))
                 .append(getParamHelpLine("--source <path>", "Path to directory containing source JAR files."))
                 .append("\n")
                 .append("optional arguments:\n")
                 .append(getParamHelpLine("--dest <path>", "Path to modularized JAR files destination directory. Will be created is not exist. Default is --source/mods."))
+                .append(getParamHelpLine("--recursive", "Look for the JAR files in all the subdirectories of --source too (e.g. a Maven local repository), walking them in parallel. Symbolic links are followed unless they point to a parent directory, and --dest is skipped. JAR file names found at several paths are reported and the first path in alphabetical order is used."))
+                .append(getParamHelpLine("--include <glob>", "Only use the JAR files whose path relative to --source matches the glob pattern, e.g. 'org/apache/**'. Can be repeated. By default all *.jar files are used."))
+                .append(getParamHelpLine("--exclude <glob>", "Skip the JAR files and directories whose path relative to --source matches the glob pattern, e.g. '**/*-sources.jar'. Can be repeated."))
                 .append(getParamHelpLine("--module-path <path-group>", "Path group of directories and/or files containing depending modules."))
                 .append(getParamHelpLine("--jdk-home <path>", "Path to JDK root directory. Default is the result of call System.getProperty(\"java.home\")"))
+                .append(getParamHelpLine("--engine <javac|bytecode>", "How module-info.class is generated. 'javac' compiles a module-info.java, 'bytecode' writes the class file directly (faster, but required modules are not validated). Default is javac."))
+                .append(getParamHelpLine("--threads <n>", "Number of JAR files modularized at the same time. A JAR is modularized as soon as all the JARs it depends on are. Default is 1."))
+                .append(getParamHelpLine("--batch <level|all>", "Compile the module descriptors of each dependency level ('level'), or of all the JAR files ('all'), with a single javac invocation. Only used with the javac engine."))
+                .append(getParamHelpLine("--infer-requires <fill|check>", "Infer the modules required by each JAR file from the classes it references, resolved against the JDK, the other JAR files of the descriptor and --module-path. 'fill' adds them to requiresModules, 'check' only warns about the differences."))
+                .append(getParamHelpLine("--compression <level>", "Compress again all the entries of the modularized JAR files with level 'store' (no compression), 'fastest', 'default' or 'max'. Entries are compressed in parallel. By default entries are copied as they are."))
+                .append(getParamHelpLine("--compression-threads <n>", "Number of threads compressing the entries of a JAR file with --compression. The output does not depend on it. Default is the number of processors."))
+                .append(getParamHelpLine("--in-place", "Add module-info.class to the source JAR files themselves instead of writing a copy to --dest. Only the entry and a new central directory are written, and the original is restored if the process is interrupted. Can not be combined with --compression."))
+                .append(getParamHelpLine("--reproducible", "Write the same bytes for the same source JAR and descriptor: module-info.class gets a fixed timestamp and is always the last entry. Modular JARs identical to the existing ones are left untouched, and the SHA-256 of every modular JAR is written to " + DigestManifest.FILE_NAME + " in --dest."))
+                .append(getParamHelpLine("--no-cache", "Modularize all JAR files, even those not changed since the last run (see " + ArtifactCache.FILE_NAME + " in --dest)."))
+                .append(getParamHelpLine("--descriptor-store <path>", "Directory where compiled module descriptors are stored for reuse. Can be shared between runs and projects. Only used with the javac engine."))
+                .append(getParamHelpLine("--descriptor-store-size <MB>", "Maximum size of the descriptor store. Least recently used descriptors are removed first. Default is " + DescriptorStore.DEFAULT_MAX_SIZE / (1024 * 1024) + "."))
+                .append(getParamHelpLine("--report <file>", "Write the time spent in each phase and the bytes read and written for every JAR file, with p50/p95/p99 and totals per phase. With --batch the compile time of each batch is recorded once for the run (batch-compile), not per JAR file. CSV if the file name ends with .csv, JSON otherwise."))
+                .append(getParamHelpLine("--slowest <n>", "Number of slowest JAR files shown at the end of the process. Default is 5."))
+                .append(getParamHelpLine("--jfr <file>", "Record the process with Java Flight Recorder, including the events of each modularization phase, and write the recording to <file>."))
+                .append(getParamHelpLine("--watch", "Keep running and modularize again the JAR files added to or changed in --source, and those depending on them, as well as all of them when the descriptor changes."))
+                .append(getParamHelpLine("--watch-delay <ms>", "Time without changes waited before modularizing in watch mode, so that JAR files still being copied are complete. Default is " + Options.DEFAULT_WATCH_DELAY + "."))
                 .append(getParamHelpLine("--version", "Display program version and exit."))
                 .append(getParamHelpLine("--help, -h", "Display this help and exit."))
                 .append("\n")
+                .append("sharded mode:\n")
+                .append(getParamHelpLine("--shards <n>", "Split the JAR files between <n> worker processes, keeping connected modules together when possible. Workers wait for the modules of other workers they depend on. --threads, --batch, --watch, --report and --jfr are not used."))
+                .append(getParamHelpLine("--shard <i>/<n>", "Run only worker <i> of <n>, e.g. on another machine sharing --source and --dest. All the workers must get the same arguments."))
+                .append(getParamHelpLine("--shard-run <id>", "Identifier shared by the workers of a run started with --shard. Their manifests are exchanged in --dest/" + ShardManifests.DIR_NAME + "/<id>."))
+                .append("\n")
+                .append("daemon mode:\n")
+                .append(getParamHelpLine("--daemon", "Keep running and modularize the jobs sent by clients, in a JVM that is already warm. Jobs run concurrently, except those with the same destination directory."))
+                .append(getParamHelpLine("--daemon-port <n>", "Loopback TCP port the daemon listens on. Default is a free port (see " + Daemon.INFO_FILE_PATH + " in the user home)."))
+                .append(getParamHelpLine("--client", "Send the rest of the arguments to the running daemon and show its output. Relative paths are resolved against the current directory."))
+                .append(getParamHelpLine("--stop-daemon", "Stop the running daemon once its current jobs are finished."))
+                .append("\n")
                 .append("Copyright (c) 2019 Eduardo E. Betanzos Morales")
                 .toString();
     }
@@ -92,126 +128,260 @@ public final class Main {
             return;
         }
 
-        parseArgs(args);
+        // En modo cliente los argumentos no se interpretan, se envían al demonio
+        List<String> argsList = Arrays.asList(args);
+        if (argsList.contains("--stop-daemon")) {
+            DaemonClient.stop(System.out);
+            return;
+        }
+        if (argsList.contains("--client")) {
+            List<String> forwardedArgs = new ArrayList<>(argsList);
+            forwardedArgs.remove("--client");
+            DaemonClient.run(forwardedArgs.toArray(new String[0]), System.out);
+            return;
+        }
+
+        Options options = Options.parse(args, null, System.out);
 
+        if (options.daemon && !options.showHelp && !options.showVersion) {
+            try {
+                Daemon.run(options.daemonPort, System.out);
+            } catch (IOException e) {
+                System.out.println("[ERROR] Daemon stopped. " + e.getMessage());
+            }
+            return;
+        }
+
+        run(options, System.out);
+    }
+
+    /**
+     * Ejecuta el programa con los parámetros {@code options}, ya sea en su propio proceso o como un trabajo del
+     * demonio (ver {@link Daemon}).
+     *
+     * @param options Parámetros de la ejecución
+     * @param out Salida en la que se muestran los mensajes
+     */
+    static void run(Options options, PrintStream out) {
         // Mostrar la ayuda y terminar
-        if (showHelp) {
-            showHelp();
+        if (options.showHelp) {
+            out.println(helpText);
             return;
         }
 
         // Mostrar la versión y terminar
-        if (showVersion) {
-            showVersion();
+        if (options.showVersion) {
+            out.println("Version: " + version);
             return;
         }
 
         // Si se han pasado todos los parámetros obligatorios se inicia el proceso
-        if (descriptorFile != null && sourceDir != null) {
-            if (destDir == null) {
-                destDir = new File(sourceDir, "mods");
+        if (options.descriptorFile != null && options.sourceDir != null) {
+            if (options.destDir == null) {
+                options.destDir = new File(options.sourceDir, "mods");
+            }
+
+            if (options.shards > 1) {
+                runShards(options, out);
+                return;
             }
 
-            Modularizer modularizer = new Modularizer();
+            Modularizer modularizer = new Modularizer(options, out);
+
+            AutoCloseable recording = null;
+            if (options.jfrFile != null) {
+                try {
+                    recording = FlightEvents.startRecording(options.jfrFile.toPath());
+                } catch (IOException e) {
+                    out.println("[WARN] Can not start flight recording. " + e.getMessage());
+                }
+            }
 
             long startTime = System.currentTimeMillis();
 
             try {
-                if (!modularizer.start()) {
-                    // Si entra aquí significa que hubo errores durante el proceso, pero quizás algunos
-                    // jars pudieron ser modularizados
-                    System.out.println("--------------------------------------------------------------------");
-                    System.out.println("  Process finish with some non fatal erros. Maybe some JAR files were modularized.");
-                } else {
-                    System.out.println();
-                    System.out.println("--------------------------------------------------------------------");
-                    System.out.println("  SUCCESSFUL!!");
-                }
+                printResult(modularizer.start(), out);
             } catch (Exception e) {
-                System.out.println(e.getMessage());
-                System.out.println();
-                System.out.println("--------------------------------------------------------------------");
-                System.out.println("  Process finish with ERROR :(");
+                out.println(e.getMessage());
+                out.println();
+                out.println("--------------------------------------------------------------------");
+                out.println("  Process finish with ERROR :(");
             }
 
             long endTime = System.currentTimeMillis();
 
-            System.out.println();
-            System.out.printf("  %d JARs modularized in %s%n", modularizer.getCountModularized(), getDuration(endTime, startTime));
-            System.out.printf("  %d errors found%n%n", modularizer.getCountErrorFounds());
+            // En el modo --watch la grabación se escribe al terminar el proceso
+            if (recording != null && !options.watch) {
+                try {
+                    recording.close();
+                } catch (Exception e) {
+                    out.println("[WARN] Can not write flight recording '" + options.jfrFile + "'. " + e.getMessage());
+                    recording = null;
+                }
+            }
+
+            printSummary(modularizer, options, startTime, endTime, out);
+
+            if (recording != null) {
+                out.println("  Flight recording " + (options.watch ? "will be written on exit to " : "written to ") + options.jfrFile);
+                out.println();
+            }
+
+            if (options.watch) {
+                watch(modularizer, options, out);
+            }
         } else {
-            System.out.println();
-            System.out.println("Invalid execution. Mandatory params must be passed.");
-            System.out.println();
-            System.out.println("Run with --help or -h");
-            return;
+            out.println();
+            out.println("Invalid execution. Mandatory params must be passed.");
+            out.println();
+            out.println("Run with --help or -h");
         }
     }
 
-    private static void parseArgs(String[] args) {
-        for (int i = 0; i < args.length; i++) {
-            String item = args[i];
-
-            if (item.equals("--help") || item.equals("-h")) {
-                showHelp = true;
-                break;
-            } else if (item.equals("--version")) {
-                showVersion = true;
-            } else if (item.equals("--descriptor")) {
-                descriptorFile = new File(args[++i]);
-
-                if (!descriptorFile.exists()) {
-                    System.out.println("[ERROR] Descriptor file not exist (" + descriptorFile + ")");
-                    descriptorFile = null;
-                    return;
-                }
+    /**
+     * Modulariza de nuevo los JARs afectados cada vez que cambian los JARs del directorio {@code sourceDir} o el
+     * descriptor de modularización (ver {@link SourceWatcher}). No termina hasta que se detiene el proceso.
+     */
+    private static void watch(Modularizer modularizer, Options options, PrintStream out) {
+        try (SourceWatcher watcher = new SourceWatcher(options.sourceDir, options.descriptorFile, options.watchDelay)) {
+            out.println("[INFO] Watching '" + options.sourceDir + "' and '" + options.descriptorFile + "' for changes. Press Ctrl+C to stop.");
+            out.println();
 
-                if (!descriptorFile.isFile()) {
-                    System.out.println("[ERROR] Descriptor is not a file (" + descriptorFile + ")");
-                    descriptorFile = null;
+            while (true) {
+                SourceWatcher.Changes changes = watcher.take();
+                if (changes == null) {
+                    out.println("[ERROR] Source directory or descriptor file directory is no longer accessible. Watch mode finished.");
                     return;
                 }
-            } else if (item.equals("--source")) {
-                sourceDir = new File(args[++i]);
-
-                if (!sourceDir.exists()) {
-                    System.out.println("[ERROR] Source directory not exist (" + sourceDir + ")");
-                    sourceDir = null;
-                    return;
+                if (changes.isEmpty()) {
+                    continue;
                 }
 
-                if (!sourceDir.isDirectory()) {
-                    System.out.println("[ERROR] Source is not a directory (" + sourceDir + ")");
-                    sourceDir = null;
-                    return;
+                out.println("====================================================================");
+                if (changes.overflow) {
+                    out.println("[INFO] Too many changes. All JAR files will be checked.");
+                } else if (changes.descriptorChanged) {
+                    out.println("[INFO] Modularization descriptor changed.");
+                } else {
+                    out.println("[INFO] Changed JAR files: " + String.join(", ", changes.jarNames));
                 }
-            } else if (item.equals("--dest")) {
-                destDir = new File(args[++i]);
+                out.println();
 
-                if (!sourceDir.isDirectory()) {
-                    System.out.println("[ERROR] Destination is not a directory (" + destDir + ")");
-                    destDir = null;
-                    return;
+                long startTime = System.currentTimeMillis();
+                try {
+                    printResult(modularizer.update(changes.jarNames, changes.descriptorChanged || changes.overflow), out);
+                } catch (Exception e) {
+                    out.println(e.getMessage());
+                    out.println();
+                    out.println("--------------------------------------------------------------------");
+                    out.println("  Process finish with ERROR :(");
                 }
-            } else if (item.equals("--module-path")) {
-                modulePath = args[++i];
-            } else if (item.equals("--jdk-home")) {
-                jdkHome = args[++i];
-
-                if (!Compiler.validateJdkHome(jdkHome)) {
-                    System.out.println("[WARN] Invalid JDK_HOME '" + jdkHome + "'. Default will be used.");
-                    jdkHome = null;
+
+                printSummary(modularizer, options, startTime, System.currentTimeMillis(), out);
+            }
+        } catch (IOException e) {
+            out.println("[ERROR] Can not watch source directory. " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reparte la modularización entre {@code options.shards} procesos (ver {@link ShardCoordinator}) y muestra el
+     * resumen conjunto.
+     */
+    private static void runShards(Options options, PrintStream out) {
+        long startTime = System.currentTimeMillis();
+
+        // Los JARs con --in-place se restauran antes de que los procesos empiecen a modificarlos
+        int recoveryErrors = Modularizer.recoverInPlaceUpdates(options.destDir, out);
+        if (!options.destDir.isDirectory() && !options.destDir.mkdirs()) {
+            out.println("[ERROR] Can not create destination dir '" + options.destDir + "'.");
+            return;
+        }
+
+        ShardCoordinator coordinator = new ShardCoordinator(options, out);
+        boolean successful;
+        try {
+            successful = coordinator.run() && recoveryErrors == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println("[ERROR] Modularization process interrupted.");
+            successful = false;
+        }
+
+        // Cada proceso guarda sus artefactos en una caché propia
+        if (options.useCache) {
+            try {
+                ArtifactCache.merge(options.destDir);
+            } catch (IOException e) {
+                out.println("[WARN] Can not merge worker cache files. " + e.getMessage());
+            }
+        }
+
+        // Cada proceso escribe los resúmenes de sus JARs con --reproducible en un manifiesto propio
+        if (options.reproducible) {
+            try {
+                if (!DigestManifest.merge(options.destDir, options.shards)) {
+                    out.println("[WARN] Some workers did not write their digest manifest. " + DigestManifest.FILE_NAME + " was not updated.");
                 }
+            } catch (IOException e) {
+                out.println("[WARN] Can not write digest manifest. " + e.getMessage());
             }
         }
+        long endTime = System.currentTimeMillis();
+
+        printResult(successful, out);
+        out.println();
+        out.printf("  %d JARs modularized in %s by %d worker processes%n", coordinator.getCountModularized(), getDuration(endTime, startTime), options.shards);
+        out.printf("  %d errors found%n", coordinator.getCountErrorFounds() + recoveryErrors);
+        if (coordinator.getCountCacheHits() >= 0) {
+            out.printf("  %d cache hits, %d cache misses%n", coordinator.getCountCacheHits(), coordinator.getCountCacheMisses());
+        }
+        out.println();
+
+        if (!coordinator.getErrors().isEmpty()) {
+            out.println("  Errors:");
+            coordinator.getErrors().forEach(error -> out.println("    " + error));
+            out.println();
+        }
     }
 
-    private static void showHelp() {
-        System.out.println(helpText);
+    private static void printResult(boolean successful, PrintStream out) {
+        if (!successful) {
+            // Si entra aquí significa que hubo errores durante el proceso, pero quizás algunos
+            // jars pudieron ser modularizados
+            out.println("--------------------------------------------------------------------");
+            out.println("  Process finish with some non fatal erros. Maybe some JAR files were modularized.");
+        } else {
+            out.println();
+            out.println("--------------------------------------------------------------------");
+            out.println("  SUCCESSFUL!!");
+        }
     }
 
-    private static void showVersion() {
-        System.out.println("Version: " + version);
+    private static void printSummary(Modularizer modularizer, Options options, long startTime, long endTime, PrintStream out) {
+        out.println();
+        out.printf("  %d JARs modularized in %s%n", modularizer.getCountModularized(), getDuration(endTime, startTime));
+        out.printf("  %d errors found%n", modularizer.getCountErrorFounds());
+        if (modularizer.getCountStoredDescriptors() >= 0) {
+            out.printf("  %d module descriptors reused from store%n", modularizer.getCountStoredDescriptors());
+        }
+        if (modularizer.getCountCacheHits() >= 0) {
+            out.printf("  %d cache hits, %d cache misses%n", modularizer.getCountCacheHits(), modularizer.getCountCacheMisses());
+        }
+        out.println();
+
+        modularizer.getReport().printSlowest(out, options.slowest);
+        if (options.reportFile != null) {
+            try {
+                modularizer.getReport().write(options.reportFile, endTime - startTime);
+                out.println("  Report written to " + options.reportFile);
+            } catch (IOException e) {
+                out.println("[WARN] Can not write report file '" + options.reportFile + "'. " + e.getMessage());
+            }
+            out.println();
+        }
     }
 
     private static String getDuration(long startMillis, long endMillis) {
@@ -25,367 +25,1411 @@ package com.betanzos.modularizer;
 
 import com.betanzos.modularizer.pojo.Artifact;
 import com.betanzos.modularizer.pojo.Module;
-import com.betanzos.modularizer.tda.Tree;
-import com.betanzos.modularizer.tda.TreeNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.*;
-import java.lang.reflect.Type;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReader;
+import java.lang.module.ModuleReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.BiPredicate;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
+import java.util.function.Consumer;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
 
 /**
  * @author Eduardo Betanzos
  * @since 1.0
  */
 class Modularizer {
-    private Set<Artifact> artifactSet;
-    private List<Artifact> artifactList;
-    private List<File> jarFilesList;
-    private int countModularized = 0;
-    private int countErrorFounds = 0;
+
+    // Artefactos que pueden esperar entre dos etapas de la modularización (ver processJarsInPipeline)
+    private static final int PIPELINE_QUEUE_CAPACITY = 4;
+    // Cada cuánto comprueba una etapa que espera por otra si esta sigue en ejecución
+    private static final long PIPELINE_POLL_MILLIS = 100;
+    // Sufijo de los diarios de las modificaciones de JARs con --in-place, que se guardan en destDir
+    private static final String JOURNAL_SUFFIX = ".in-place-journal";
+    // Fecha de la entrada module-info.class con --reproducible, la mínima que admite el formato ZIP
+    private static final LocalDateTime REPRODUCIBLE_ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    private Descriptor descriptor;
+    private Map<String, File> jarFilesByName;
+
+    // Orden de los artefactos. Se mantiene entre las modularizaciones del modo --watch mientras no cambie el
+    // descriptor de modularización
+    private DependencyGraph graph;
+    private boolean[] unsortable;
+    private List<int[]> levels;
+    private Map<String, Integer> idsByArtifactName;
+    private int passCount;
+
+    // Proceso al que se asigna cada artefacto y manifiestos de los procesos en una modularización repartida (--shard)
+    private int[] shardOf;
+    private ShardManifests shardManifests;
+    private final AtomicInteger countModularized = new AtomicInteger();
+    private final AtomicInteger countErrorFounds = new AtomicInteger();
 
     private Compiler compiler;
+    // Hilos en los que se comprimen las entradas de los JARs si se indicó --compression (ver patchJar)
+    private ExecutorService compressionExecutor;
+    private ArtifactCache cache;
+    // Resúmenes de los JARs modularizados con --reproducible
+    private DigestManifest digestManifest;
+
+    private DescriptorStore descriptorStore;
+    private String compilerFingerprint;
+    private ModuleFinder modulePathFinder;
+    // Módulos que necesita el compilador para cada artefacto. Se calcula en cada modularización, tras buscar los JARs
+    private ModulePathClosure modulePathClosure;
+    private final Map<String, String> moduleFingerprints = new ConcurrentHashMap<>();
+    private final Map<String, Optional<String>> modulePathFingerprints = new ConcurrentHashMap<>();
+
+    private RunReport report = new RunReport();
+
+    private final Options options;
+    private final PrintStream out;
+
+    /**
+     * @param options Parámetros de la ejecución
+     * @param out Salida en la que se muestran los mensajes de la modularización
+     */
+    public Modularizer(Options options, PrintStream out) {
+        this.options = options;
+        this.out = out;
+    }
+
+    /**
+     * Inicia el proceso de modularización.
+     *
+     * @return {@code true} si el proceso terminó sin errores, {@code false} en caso contrario.
+     *
+     * @throws ParseException Si ocurrió algún error deserializando el archivo descriptor de modularización
+     */
+    public boolean start() throws ParseException {
+        out.println();
+        out.println("Starting modularization process...");
+        out.println("--------------------------------------------------------------------");
+        out.println();
+
+        long parseStart = System.nanoTime();
+        FlightEvents.Span parseEvent = FlightEvents.begin(FlightEvents.Type.DESCRIPTOR_PARSE);
+        parseDescriptor();
+        parseEvent.end(null, null, descriptor.size(), descriptor.getByteCount());
+        report.addRunTime("parse", parseStart);
+
+        if (descriptor.isEmpty()) {
+            out.println("Empty descriptor.");
+            return false;
+        }
+
+        // Un JAR cuya modificación con --in-place se interrumpió se restaura antes de leerlo. En una modularización
+        // repartida lo hace el coordinador antes de lanzar los procesos, ya que estos modifican los JARs a la vez.
+        if (options.shardIndex == 0) {
+            countErrorFounds.addAndGet(recoverInPlaceUpdates(options.destDir, out));
+        }
+
+        if (!listJarFiles()) {
+            return false;
+        }
+
+        inferRequires();
+
+        // Antes de modularizar los JARs es necesario primero ordenar los artefactos de acuerdo a sus dependencias para
+        // asegurarnos de que antes de modularizar un artefacto ya han sido modularizados todos aquellos de los que este
+        // depende
+        sortArtifacts();
+
+        if (options.shardIndex > 0) {
+            processShard();
+        } else {
+            processJars(null);
+        }
+
+        return countErrorFounds.get() == 0;
+    }
+
+    /**
+     * Modulariza solo los JARs de los artefactos asignados a este proceso de una modularización repartida (ver
+     * {@link ShardCoordinator}). Cada artefacto terminado se agrega al manifiesto de este proceso y, antes de compilar
+     * un descriptor, se espera a que los módulos requeridos asignados a otros procesos aparezcan en sus manifiestos
+     * (ver {@link #awaitShardDependency(int)}).
+     */
+    private void processShard() {
+        shardOf = ShardPartition.partition(graph, levels, options.shardCount);
+
+        boolean[] selected = new boolean[graph.size()];
+        int selectedCount = 0;
+        for (int id = 0; id < graph.size(); id++) {
+            selected[id] = shardOf[id] == options.shardIndex - 1;
+            if (selected[id] && !unsortable[id] && findJarFile(graph.getArtifact(id)).isPresent()) {
+                selectedCount++;
+            }
+        }
+        out.println("[INFO] Worker " + options.shardIndex + "/" + options.shardCount + " modularizes " + selectedCount + " JAR files");
+
+        File runDir = ShardManifests.getRunDir(options.destDir, options.shardRun);
+        try (ShardManifests manifests = new ShardManifests(runDir, options.shardIndex, options.shardCount)) {
+            shardManifests = manifests;
+            try {
+                processJars(selected);
+            } finally {
+                manifests.finish(new ShardManifests.Summary(countModularized.get(), countErrorFounds.get(), getCountCacheHits(), getCountCacheMisses()));
+            }
+        } catch (IOException e) {
+            out.println("[ERROR] Can not write worker manifest in '" + runDir + "'. " + e.getMessage());
+            countErrorFounds.incrementAndGet();
+        } finally {
+            shardManifests = null;
+        }
+    }
+
+    /**
+     * Espera, en una modularización repartida, a que el proceso al que se asignó el artefacto {@code dependencyId}
+     * lo termine, de forma que su JAR modularizado ya esté en {@code destDir}. Los artefactos de este proceso, o sin
+     * JAR, no se esperan.
+     */
+    private void awaitShardDependency(int dependencyId) throws InterruptedException {
+        Artifact dependency = graph.getArtifact(dependencyId);
+        if (shardOf[dependencyId] == options.shardIndex - 1 || unsortable[dependencyId] || !findJarFile(dependency).isPresent()) {
+            return;
+        }
+
+        try {
+            ShardManifests.Entry entry = shardManifests.await(dependency.getName(), shardOf[dependencyId] + 1);
+            if (entry != null && entry.outputDigest != null && cache != null) {
+                cache.putDependencyDigest(dependency.getModule().getName(), entry.outputDigest);
+            }
+        } catch (IOException e) {
+            out.println("[WARN] Can not read manifest of worker " + (shardOf[dependencyId] + 1) + "/" + options.shardCount + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return Artefactos cuyas entradas se guardan en la caché. En una modularización repartida cada proceso guarda
+     *         solo los suyos, ya que el coordinador une al terminar las cachés de todos.
+     */
+    private Collection<Artifact> getCachedArtifacts() {
+        if (shardOf == null) {
+            return descriptor.getArtifacts();
+        }
+
+        List<Artifact> artifacts = new ArrayList<>();
+        for (int id = 0; id < graph.size(); id++) {
+            if (shardOf[id] == options.shardIndex - 1) {
+                artifacts.add(graph.getArtifact(id));
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Agrega el artefacto {@code job} al manifiesto de este proceso en una modularización repartida.
+     */
+    private void recordShardJob(ArtifactJob job) {
+        try {
+            shardManifests.record(job.artifact.getName(), job.status, cache != null ? cache.getOutputDigest(job.artifact) : null);
+        } catch (IOException e) {
+            out.println("[ERROR] Can not write worker manifest. " + e.getMessage());
+            countErrorFounds.incrementAndGet();
+        }
+    }
+
+    /**
+     * Modulariza de nuevo los JARs afectados por cambios en el directorio {@code sourceDir} o en el descriptor de
+     * modularización (ver {@link SourceWatcher}). Se modularizan los JARs {@code changedJarNames} y los de todos los
+     * artefactos que dependen, directa o indirectamente, de ellos. El orden de los artefactos se reutiliza de la
+     * modularización anterior salvo que haya cambiado el descriptor, en cuyo caso se vuelve a deserializar y se
+     * procesan todos los artefactos (la caché omite los que no han cambiado).<br/>
+     * <br/>
+     * Los contadores y el informe de tiempos ({@link #getReport()}) se reinician en cada llamada.
+     *
+     * @param changedJarNames Nombres de los archivos JAR nuevos o modificados
+     * @param descriptorChanged Si ha cambiado el descriptor de modularización
+     *
+     * @return {@code true} si la modularización terminó sin errores, {@code false} en caso contrario.
+     *
+     * @throws ParseException Si ocurrió algún error deserializando el archivo descriptor de modularización. En ese
+     *                        caso se mantiene el descriptor anterior.
+     */
+    public boolean update(Collection<String> changedJarNames, boolean descriptorChanged) throws ParseException {
+        countModularized.set(0);
+        countErrorFounds.set(0);
+        report = new RunReport();
+        if (cache != null) {
+            cache.resetCounts();
+        }
+        if (descriptorStore != null) {
+            descriptorStore.resetCounts();
+        }
+
+        // Los módulos requeridos inferidos de un JAR modificado pueden cambiar el orden de los artefactos
+        if (descriptorChanged || graph == null || options.inferRequires != null) {
+            long parseStart = System.nanoTime();
+            FlightEvents.Span parseEvent = FlightEvents.begin(FlightEvents.Type.DESCRIPTOR_PARSE);
+            parseDescriptor();
+            parseEvent.end(null, null, descriptor.size(), descriptor.getByteCount());
+            report.addRunTime("parse", parseStart);
+
+            if (descriptor.isEmpty()) {
+                out.println("Empty descriptor.");
+                return false;
+            }
+
+            if (!listJarFiles()) {
+                return false;
+            }
+
+            inferRequires();
+            sortArtifacts();
+            processJars(null);
+        } else {
+            List<Integer> changedIds = new ArrayList<>(changedJarNames.size());
+            for (String jarName : changedJarNames) {
+                Integer id = idsByArtifactName.get(jarName);
+                if (id != null) {
+                    changedIds.add(id);
+                }
+            }
+            if (changedIds.isEmpty()) {
+                return true;
+            }
+
+            if (!listJarFiles()) {
+                return false;
+            }
+
+            processJars(graph.getDependentClosure(changedIds));
+        }
+
+        return countErrorFounds.get() == 0;
+    }
+
+    /**
+     * Infiere los módulos requeridos por cada artefacto a partir del bytecode de su JAR (ver
+     * {@link RequiresInference}), si se ha indicado la opción --infer-requires. Debe hacerse antes de ordenar los
+     * artefactos, ya que en el modo {@link InferRequiresMode#FILL} cambian sus dependencias.
+     */
+    private void inferRequires() {
+        if (options.inferRequires == null) {
+            return;
+        }
+
+        // En una modularización repartida todos los procesos infieren los módulos requeridos, para obtener el mismo
+        // reparto, pero solo el primero muestra el resultado
+        boolean reported = reportsDescriptorErrors();
+        PrintStream inferenceOut = reported ? out : new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        });
+
+        long inferStart = System.nanoTime();
+        RequiresInference inference = new RequiresInference(getModulePathFinder(), inferenceOut);
+        try {
+            int errors = inference.infer(descriptor, jarFilesByName, options.inferRequires, Runtime.getRuntime().availableProcessors());
+            if (reported) {
+                countErrorFounds.addAndGet(errors);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println("[ERROR] Required modules inference interrupted.");
+            countErrorFounds.incrementAndGet();
+        }
+        report.addRunTime("infer", inferStart);
+        out.println();
+    }
+
+    /**
+     * Restaura los JARs cuya modificación con --in-place fue interrumpida, a partir de los diarios que quedaron en
+     * {@code destDir} (ver {@link ZipRewriter#appendEntry(File, String, byte[], LocalDateTime, File)}).
+     *
+     * @return Cantidad de JARs que no pudieron restaurarse
+     */
+    static int recoverInPlaceUpdates(File destDir, PrintStream out) {
+        File[] journalFiles = destDir.listFiles((dir, name) -> name.endsWith(JOURNAL_SUFFIX));
+        if (journalFiles == null) {
+            return 0;
+        }
+
+        int errors = 0;
+        for (File journalFile : journalFiles) {
+            try {
+                File jarFile = ZipRewriter.recover(journalFile);
+                if (jarFile != null) {
+                    out.println("[WARN] '" + jarFile.getName() + "' restored after an interrupted in-place modularization");
+                }
+            } catch (IOException e) {
+                out.println("[ERROR] Can not restore JAR file from journal '" + journalFile + "'. " + e.getMessage());
+                errors++;
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Busca los archivos JAR del directorio {@code sourceDir}, y con --recursive los de todos sus subdirectorios, y
+     * los indexa por nombre (ver {@link SourceJarIndex}).
+     *
+     * @return {@code false} si no hay ningún archivo JAR
+     */
+    private boolean listJarFiles() {
+        long listStart = System.nanoTime();
+        SourceJarIndex index;
+        try {
+            index = SourceJarIndex.build(options.sourceDir, options.recursive, options.includes, options.excludes,
+                    options.destDir, Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
+            out.println("[ERROR] Can not read source directory '" + options.sourceDir + "'. " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println("[ERROR] Interrupted while looking for JAR files in source directory");
+            return false;
+        }
+        report.addRunTime("list-jars", listStart);
+
+        // En una modularización repartida todos los procesos encuentran los mismos JARs, solo uno lo informa
+        if (reportsDescriptorErrors()) {
+            index.getWarnings().forEach(warning -> out.println("[WARN] " + warning));
+            index.getDuplicates().forEach((name, files) -> out.println("[WARN] JAR file '" + name + "' found at "
+                    + files.size() + " paths, using '" + files.get(0) + "'. Ignored: "
+                    + files.subList(1, files.size()).stream().map(file -> "'" + file + "'").collect(Collectors.joining(", "))));
+            if (options.recursive) {
+                out.println("[INFO] Found " + index.getJarFilesByName().size() + " JAR files in " + index.getDirectoryCount() + " directories");
+            }
+        }
+
+        if (index.getJarFilesByName().isEmpty()) {
+            out.println("There are no JAR files in source directory");
+            return false;
+        }
+
+        jarFilesByName = index.getJarFilesByName();
+        return true;
+    }
+
+    /**
+     * @return Permite obtener la cantidad de archivos modularizados
+     */
+    public int getCountModularized() {
+        return countModularized.get();
+    }
+
+    /**
+     * @return Permite obtener la cantidad de errores no fatales encontrados durante el proceso de modularización.
+     *         Estos errores son aquellos relacionados con la modularización de algún archivo JAR en particular pero
+     *         que no impiden que se continúe el proceso con el resto de archivos.
+     */
+    public int getCountErrorFounds() {
+        return countErrorFounds.get();
+    }
+
+    /**
+     * @return Permite obtener la cantidad de descriptores reutilizados del almacén de descriptores, o {@code -1} si no
+     *         se usó el almacén.
+     */
+    public int getCountStoredDescriptors() {
+        return descriptorStore != null ? descriptorStore.getCountHits() : -1;
+    }
+
+    /**
+     * @return Permite obtener la cantidad de archivos que no fue necesario modularizar por estar actualizados, o
+     *         {@code -1} si no se usó la caché.
+     */
+    public int getCountCacheHits() {
+        return cache != null ? cache.getCountHits() : -1;
+    }
+
+    /**
+     * @return Permite obtener la cantidad de archivos que tuvieron que ser modularizados por no estar actualizados, o
+     *         {@code -1} si no se usó la caché.
+     */
+    public int getCountCacheMisses() {
+        return cache != null ? cache.getCountMisses() : -1;
+    }
+
+    /**
+     * @return Permite obtener los tiempos de la ejecución y de cada uno de los artefactos procesados
+     */
+    public RunReport getReport() {
+        return report;
+    }
+
+    /**
+     * Deserializa el descriptor de modularización (ver {@link Descriptor}). Si ocurre algún error se mantiene el
+     * descriptor anterior.
+     *
+     * @implNote Si un artefacto es definido múltiples veces solo se cargará el primero de ellos. Un artefacto se
+     *           considera duplicado si se repite el {@code name}.
+     *
+     * @throws ParseException Si ocurre algún error que impida la deserialización.
+     */
+    private void parseDescriptor() throws ParseException {
+        descriptor = Descriptor.parse(options.descriptorFile);
+    }
+
+    /**
+     * Procesa los archivos JAR encontrados en el directorio {@code sourceDir} para generar su correspondiente JAR
+     * modularizado. La modularización solo se lleva a cabo con aquellos archivos para los cuales exista un entrada
+     * correspondiente en el descriptor de modularización.<br/>
+     * <br/>
+     * Las entradas en descriptor de modularización serán analizadas para determinar el orden en el cual deben ser
+     * procesados los JARs, teniendo en cuenta las dependencias entre ellos. Aquellos que menos niveles de dependencias
+     * tengan serán procesados primero y los que más niveles dependencias tengan de último. Cuando hablamos de niveles de
+     * dependencias nos referimos a que si el artefacto A depende de B y este a su vez depende de C, el primero en ser
+     * modularizado será C, luego B y por último A.<br/>
+     * <br/>
+     * Es importante aclarar que las únicas dependencias que cuentan para los fines explicados arriba son aquellas que
+     * hacen referncia a los módulos que deseamos crear (aquellos cuya definición está declarada en el descriptor de
+     * modularización), nunca las que referencian a terceros módulos ya existentes.
+     *
+     * @param selected Indicador, por identificador de artefacto, de si el artefacto debe modularizarse. Si es
+     *                 {@code null} se modularizan todos.
+     */
+    private void processJars(boolean[] selected) {
+        // Crear la instancia del compilador. Se crea de nuevo en cada modularización del modo --watch para que no
+        // conserve abiertas versiones anteriores de los JARs modularizados
+        long setupStart = System.nanoTime();
+        try {
+            compiler = new Compiler();
+            if (options.jdkHome != null) {
+                compiler.setJdkHome(options.jdkHome);
+            }
+        } catch (Exception e) {
+            out.println("[ERROR] " + e.getMessage());
+        }
+        report.addRunTime("setup", setupStart);
+        if (++passCount == 1) {
+            if (options.engine == DescriptorEngine.BYTECODE) {
+                out.println("[INFO] Using bytecode engine. Module descriptors will not be compiled");
+            } else {
+                out.println("[INFO] Using JDK_HOME: " + compiler.getJdkHome() + (compiler.isInProcess() ? " (in-process compiler)" : ""));
+            }
+            out.println();
+        }
+
+        // Crear el directorio destino, único lugar donde se escribe durante la modularización. Otro proceso de una
+        // modularización repartida puede crearlo a la vez.
+        if (!options.destDir.isDirectory() && !options.destDir.mkdirs() && !options.destDir.isDirectory()) {
+            out.println("[ERROR] Can not create destination dir '" + options.destDir + "'.");
+            countErrorFounds.incrementAndGet();
+            return;
+        }
+
+        if (options.compression != null && options.compressionThreads > 1) {
+            compressionExecutor = Executors.newFixedThreadPool(options.compressionThreads);
+        }
+
+        // Los JARs de los artefactos pueden cambiar entre las modularizaciones del modo --watch
+        if (options.engine == DescriptorEngine.JAVAC) {
+            long closureStart = System.nanoTime();
+            boolean[] hasJar = new boolean[graph.size()];
+            for (int id = 0; id < graph.size(); id++) {
+                hasJar[id] = findJarFile(graph.getArtifact(id)).isPresent();
+            }
+            modulePathClosure = ModulePathClosure.build(graph, levels, hasJar, getModulePathFinder());
+            report.addRunTime("module-path", closureStart);
+        }
+
+        // La caché y el almacén se mantienen en memoria entre las modularizaciones del modo --watch
+        if (options.useCache && cache == null) {
+            cache = ArtifactCache.load(ArtifactCache.getFile(options.destDir, options.shardIndex, options.shardCount), options.engine, options.compression, options.reproducible, out);
+        }
+
+        if (options.reproducible && digestManifest == null) {
+            digestManifest = DigestManifest.load(options.destDir, out);
+        }
+
+        // La versión del JDK que compila los descriptores forma parte de las claves de la caché y del almacén
+        if (options.engine == DescriptorEngine.JAVAC && compiler != null && compilerFingerprint == null) {
+            try {
+                compilerFingerprint = getCompilerFingerprint();
+            } catch (IOException e) {
+                compilerFingerprint = "unknown:" + compiler.getJdkHome();
+            }
+        }
+
+        if (cache != null && compilerFingerprint != null) {
+            cache.setCompiler(compilerFingerprint, this::getModulePathFingerprint);
+        }
+
+        // El almacén solo contiene descriptores compilados, por lo que no se usa con el mecanismo BYTECODE
+        if (options.descriptorStoreDir != null && compilerFingerprint != null && descriptorStore == null) {
+            try {
+                descriptorStore = new DescriptorStore(options.descriptorStoreDir, options.descriptorStoreMaxSize);
+            } catch (IOException e) {
+                out.println("[WARN] Can not use descriptor store '" + options.descriptorStoreDir + "'. " + e.getMessage());
+            }
+        }
+
+        try {
+            if (options.batch != null && options.engine == DescriptorEngine.JAVAC) {
+                processJarsInBatches(selected);
+            } else if (options.threads > 1) {
+                processJarsInParallel(selected);
+            } else {
+                processJarsInPipeline(selected);
+            }
+        } finally {
+            if (cache != null) {
+                long saveStart = System.nanoTime();
+                try {
+                    cache.save(getCachedArtifacts());
+                } catch (IOException e) {
+                    out.println("[WARN] Can not write cache file. " + e.getMessage());
+                }
+                report.addRunTime("cache-save", saveStart);
+            }
+
+            if (digestManifest != null) {
+                long saveStart = System.nanoTime();
+                try {
+                    digestManifest.save(DigestManifest.getFile(options.destDir, options.shardIndex, options.shardCount), getModularJarFiles());
+                } catch (IOException e) {
+                    out.println("[WARN] Can not write digest manifest. " + e.getMessage());
+                }
+                report.addRunTime("digests-save", saveStart);
+            }
+
+            if (compressionExecutor != null) {
+                compressionExecutor.shutdownNow();
+                compressionExecutor = null;
+            }
+
+            if (compiler != null) {
+                try {
+                    compiler.close();
+                } catch (IOException e) {
+                    out.println("[WARN] Can not close compiler. " + e.getMessage());
+                }
+            }
+
+            if (descriptorStore != null) {
+                long trimStart = System.nanoTime();
+                try {
+                    descriptorStore.trim();
+                } catch (IOException e) {
+                    out.println("[WARN] Can not trim descriptor store. " + e.getMessage());
+                }
+                report.addRunTime("store-trim", trimStart);
+            }
+        }
+    }
+
+    /**
+     * @return JARs modularizados de los artefactos del descriptor de modularización, o solo de los asignados a este
+     *         proceso en una modularización repartida. Pueden no existir todavía.
+     */
+    private List<File> getModularJarFiles() {
+        List<File> modularJarFiles = new ArrayList<>();
+        for (int id = 0; id < graph.size(); id++) {
+            if (shardOf == null || shardOf[id] == options.shardIndex - 1) {
+                findJarFile(graph.getArtifact(id)).map(this::getModularJarFile).ifPresent(modularJarFiles::add);
+            }
+        }
+
+        return modularJarFiles;
+    }
+
+    /**
+     * Modulariza los JARs utilizando {@code options.threads} hilos. En lugar de ordenar previamente los artefactos, cada
+     * uno es modularizado tan pronto como lo han sido todos aquellos de los que depende (ver
+     * {@link WavefrontScheduler}), dando prioridad a los que más artefactos tienen esperando por ellos y a los JARs
+     * más grandes.<br/>
+     * <br/>
+     * La salida de cada artefacto se acumula y se muestra completa al terminar su modularización para que no se
+     * mezcle con la de los que se procesan al mismo tiempo.
+     *
+     * @param selected Artefactos que deben modularizarse ({@code null} para todos)
+     */
+    private void processJarsInParallel(boolean[] selected) {
+        File[] jarFiles = new File[graph.size()];
+        for (int id = 0; id < graph.size(); id++) {
+            if (!unsortable[id] && (selected == null || selected[id])) {
+                jarFiles[id] = findJarFile(graph.getArtifact(id)).orElse(null);
+            }
+        }
+
+        WavefrontScheduler scheduler = new WavefrontScheduler(graph, options.threads, id -> jarFiles[id] != null ? jarFiles[id].length() : 0);
+        try {
+            scheduler.run(id -> {
+                if (jarFiles[id] == null) {
+                    return;
+                }
+
+                ByteArrayOutputStream artifactOutput = new ByteArrayOutputStream();
+                if (!processArtifact(jarFiles[id], graph.getArtifact(id), new PrintStream(artifactOutput, true))) {
+                    countErrorFounds.incrementAndGet();
+                }
+
+                synchronized (out) {
+                    out.print(artifactOutput.toString());
+                    out.flush();
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println("[ERROR] Modularization process interrupted.");
+            countErrorFounds.incrementAndGet();
+        }
+    }
+
+    /**
+     * Modulariza los JARs en el orden de sus dependencias, uno detrás de otro, pero separando el trabajo de cada
+     * artefacto en tres etapas que se ejecutan al mismo tiempo, cada una en su propio hilo, y que se comunican a
+     * través de colas de capacidad limitada:
+     * <ol>
+     *     <li>Análisis: lectura del JAR y generación de su descriptor (ver {@link #scanArtifact(ArtifactJob)}), que
+     *     solo dependen del propio artefacto.</li>
+     *     <li>Compilación: comprobación de la caché, búsqueda en el almacén y compilación del descriptor. Antes espera
+     *     a que se hayan escrito los JARs modularizados de los artefactos de los que depende.</li>
+     *     <li>Escritura: creación del JAR modularizado y actualización del almacén y la caché (ver
+     *     {@link #writeArtifact(ArtifactJob)}).</li>
+     * </ol>
+     * De esta forma se puede analizar un artefacto mientras se compila el descriptor del anterior y se escribe el JAR
+     * del anterior a este. Cuando una cola se llena la etapa que la alimenta espera, por lo que solo se mantienen en
+     * memoria unos pocos artefactos.<br/>
+     * <br/>
+     * La salida de cada artefacto se acumula y se muestra, en el orden de los artefactos, al terminar su escritura.
+     * Si una de las etapas termina de forma inesperada, por ejemplo por falta de memoria, las demás lo detectan en
+     * lugar de esperar por ella indefinidamente, y los artefactos que no llegaron a escribirse se dan por fallidos.
+     *
+     * @param selected Artefactos que deben modularizarse ({@code null} para todos)
+     */
+    private void processJarsInPipeline(boolean[] selected) {
+        List<ArtifactJob> jobs = new ArrayList<>();
+        List<Integer> jobIds = new ArrayList<>();
+        for (int[] level : levels) {
+            for (int id : level) {
+                if (selected == null || selected[id]) {
+                    Artifact artifact = graph.getArtifact(id);
+                    findJarFile(artifact).ifPresent(file -> {
+                        jobs.add(ArtifactJob.buffered(file, artifact, report.addArtifact(file.getName(), artifact.getModule().getName())));
+                        jobIds.add(id);
+                    });
+                }
+            }
+        }
+
+        // Los artefactos que no se modularizan en esta ejecución no tienen indicador, no hay que esperar por ellos
+        CountDownLatch[] written = new CountDownLatch[graph.size()];
+        for (int id : jobIds) {
+            written[id] = new CountDownLatch(1);
+        }
+
+        BlockingQueue<ArtifactJob> scannedJobs = new ArrayBlockingQueue<>(PIPELINE_QUEUE_CAPACITY);
+        BlockingQueue<ArtifactJob> compiledJobs = new ArrayBlockingQueue<>(PIPELINE_QUEUE_CAPACITY);
+
+        ExecutorService stages = Executors.newFixedThreadPool(2);
+        try {
+            // El análisis se adelanta a la comprobación de la caché, por lo que sus errores solo se tienen en cuenta si
+            // el artefacto no está actualizado (con --in-place su JAR ya contiene el descriptor)
+            Future<?> scanStage = stages.submit(() -> {
+                for (ArtifactJob job : jobs) {
+                    try {
+                        scanJar(job);
+                    } catch (Exception e) {
+                        job.scanError = e;
+                    }
+                    scannedJobs.put(job);
+                }
+                return null;
+            });
+
+            Future<?> writeStage = stages.submit(() -> {
+                for (int id : jobIds) {
+                    ArtifactJob job = compiledJobs.take();
+                    try {
+                        if (!job.finished) {
+                            runStage(job, this::writeArtifact);
+                        }
+                        printJobs(Collections.singletonList(job));
+                        if (shardManifests != null) {
+                            recordShardJob(job);
+                        }
+                    } finally {
+                        written[id].countDown();
+                    }
+                }
+                return null;
+            });
+
+            for (int id : jobIds) {
+                ArtifactJob job = takeFromStage(scannedJobs, scanStage);
+                for (int dependencyId : graph.getDependencies(id)) {
+                    if (written[dependencyId] != null) {
+                        awaitStage(written[dependencyId], writeStage);
+                    } else if (shardManifests != null) {
+                        awaitShardDependency(dependencyId);
+                    }
+                }
+
+                if (!job.finished) {
+                    runStage(job, this::checkCache);
+                }
+                if (!job.finished && job.scanError != null) {
+                    failArtifact(job, job.scanError);
+                }
+                if (!job.finished) {
+                    runStage(job, this::findStoredDescriptor);
+                    runStage(job, this::compileArtifact);
+                }
+                putToStage(compiledJobs, job, writeStage);
+            }
+
+            scanStage.get();
+            writeStage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println("[ERROR] Modularization process interrupted.");
+            countErrorFounds.incrementAndGet();
+        } catch (ExecutionException e) {
+            out.println("[ERROR] Modularization process interrupted. " + e.getCause());
+            countErrorFounds.incrementAndGet();
+            failUnwrittenJobs(stages, jobs, jobIds, written, e.getCause());
+        } finally {
+            stages.shutdownNow();
+        }
+    }
+
+    /**
+     * Toma el siguiente artefacto de la cola {@code queue}, comprobando mientras espera que la etapa
+     * {@code producer} que la alimenta siga en ejecución.
+     *
+     * @throws ExecutionException Si la etapa {@code producer} terminó sin agregar el artefacto a la cola
+     */
+    private static <T> T takeFromStage(BlockingQueue<T> queue, Future<?> producer) throws InterruptedException, ExecutionException {
+        while (true) {
+            T item = queue.poll(PIPELINE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (item != null) {
+                return item;
+            }
+
+            if (producer.isDone()) {
+                // Pudo agregarlo justo antes de terminar
+                item = queue.poll();
+                if (item != null) {
+                    return item;
+                }
+                throw stageFinished(producer);
+            }
+        }
+    }
+
+    /**
+     * Agrega el artefacto {@code item} a la cola {@code queue}, comprobando mientras espera que haya espacio que la
+     * etapa {@code consumer} que la vacía siga en ejecución.
+     *
+     * @throws ExecutionException Si la etapa {@code consumer} terminó
+     */
+    private static <T> void putToStage(BlockingQueue<T> queue, T item, Future<?> consumer) throws InterruptedException, ExecutionException {
+        while (!queue.offer(item, PIPELINE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (consumer.isDone()) {
+                throw stageFinished(consumer);
+            }
+        }
+    }
+
+    /**
+     * Espera a que la etapa {@code stage} indique en {@code latch} que terminó un artefacto, comprobando mientras
+     * espera que siga en ejecución.
+     *
+     * @throws ExecutionException Si la etapa {@code stage} terminó sin indicarlo
+     */
+    private static void awaitStage(CountDownLatch latch, Future<?> stage) throws InterruptedException, ExecutionException {
+        while (!latch.await(PIPELINE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (stage.isDone() && latch.getCount() > 0) {
+                throw stageFinished(stage);
+            }
+        }
+    }
+
+    /**
+     * @return Excepción con la causa por la que terminó la etapa {@code stage} antes de procesar todos los artefactos
+     */
+    private static ExecutionException stageFinished(Future<?> stage) throws InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            return e;
+        } catch (CancellationException e) {
+            return new ExecutionException("Pipeline stage cancelled", e);
+        }
+        return new ExecutionException("Pipeline stage finished before processing all the JAR files", null);
+    }
+
+    /**
+     * Da por fallidos, y muestra su salida, los artefactos que no llegaron a escribirse porque una de las etapas de
+     * {@link #processJarsInPipeline(boolean[])} terminó de forma inesperada. Antes se detienen las demás etapas para
+     * que no sigan mostrando la salida de otros artefactos.
+     */
+    private void failUnwrittenJobs(ExecutorService stages, List<ArtifactJob> jobs, List<Integer> jobIds, CountDownLatch[] written,
+                                   Throwable cause) {
+        stages.shutdownNow();
+        try {
+            stages.awaitTermination(PIPELINE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int i = 0; i < jobs.size(); i++) {
+            ArtifactJob job = jobs.get(i);
+            // Los que no terminaron no se mostraron, salvo que la etapa de escritura terminara mientras lo escribía
+            if (!job.finished || written[jobIds.get(i)].getCount() > 0) {
+                if (!job.finished) {
+                    failArtifact(job, new RuntimeException("Modularization pipeline stopped. " + cause));
+                }
+                printJobs(Collections.singletonList(job));
+            }
+        }
+    }
+
+    /**
+     * Ejecuta una etapa de la modularización del artefacto {@code job}. Un error inesperado termina la modularización
+     * del artefacto, pero no la etapa, para que el resto de artefactos sigan avanzando.
+     */
+    private void runStage(ArtifactJob job, Consumer<ArtifactJob> stage) {
+        try {
+            stage.accept(job);
+        } catch (RuntimeException e) {
+            if (!job.finished) {
+                failArtifact(job, e);
+            }
+        }
+    }
+
+    /**
+     * @param artifact Artefacto definido en el descriptor de modularización
+     *
+     * @return El archivo JAR del directorio {@code sourceDir} correspondiente al artefacto {@code artifact}
+     */
+    private Optional<File> findJarFile(Artifact artifact) {
+        return Optional.ofNullable(jarFilesByName.get(artifact.getName()));
+    }
+
+    /**
+     * Ordena artefactos definidos en el descriptor de modularización teniendo en cuenta las dependencias entre ellos.
+     * Aquellos artefactos que menos niveles de dependencias tengan terminarán siendo primeros que aquellos que más niveles
+     * dependencias tengan.<br/>
+     * <br/>
+     * Cuando hablamos de niveles de dependencias nos referimos a que si el artefacto A depende de B y este a su vez
+     * depende de C, primero irá C, luego B y por último A.<br/>
+     * <br/>
+     * Es importante aclarar que las únicas dependencias que cuentan para los fines explicados arriba son aquellas que
+     * hacen referncia a los módulos que deseamos crear (aquellos cuya definición está declarada en el descriptor de
+     * modularización), nunca las que referencian a terceros módulos ya existentes.<br/>
+     * <br/>
+     * El grafo de dependencias y los niveles del orden se guardan en {@link Modularizer#graph} y
+     * {@link Modularizer#levels} para que puedan reutilizarse en el modo --watch mientras no cambie el descriptor. Los
+     * artefactos con dependencias cíclicas no pueden ordenarse, por lo que se reportan como error y no forman parte de
+     * ningún nivel.
+     *
+     * @implNote El orden se obtiene con el algoritmo de Kahn sobre el grafo de dependencias ({@link DependencyGraph}),
+     *           en tiempo lineal respecto a la cantidad de artefactos y dependencias.
+     */
+    private void sortArtifacts() {
+        long sortStart = System.nanoTime();
+        FlightEvents.Span sortEvent = FlightEvents.begin(FlightEvents.Type.ARTIFACT_SORT);
+        graph = DependencyGraph.build(descriptor.getArtifacts());
+        unsortable = findUnsortableArtifacts(graph);
+        levels = graph.getTopologicalLevels();
+
+        idsByArtifactName = new HashMap<>(graph.size() * 2);
+        for (int id = 0; id < graph.size(); id++) {
+            idsByArtifactName.put(graph.getArtifact(id).getName(), id);
+        }
+        sortEvent.end(null, null, graph.size(), 0);
+        report.addRunTime("sort", sortStart);
+    }
+
+    /**
+     * @return Si este proceso muestra los errores del descriptor de modularización. En una modularización repartida
+     *         todos los procesos analizan el descriptor completo, pero solo el primero muestra sus errores.
+     */
+    private boolean reportsDescriptorErrors() {
+        return options.shardIndex <= 1;
+    }
+
+    /**
+     * Busca los artefactos que no pueden ser ordenados por formar parte de un ciclo de dependencias o por depender de
+     * algún artefacto que lo hace. El sistema de módulos no permite dependencias cíclicas, por lo que estos artefactos
+     * no pueden ser modularizados. Cada ciclo encontrado y cada artefacto que depende de alguno de ellos se reporta
+     * como un error.
+     *
+     * @param graph Grafo de dependencias de los artefactos
+     *
+     * @return Indicador, por identificador de artefacto, de si el artefacto no puede ser ordenado
+     */
+    private boolean[] findUnsortableArtifacts(DependencyGraph graph) {
+        boolean[] unsortable = new boolean[graph.size()];
+        Arrays.fill(unsortable, true);
+        for (int id : graph.getTopologicalOrder()) {
+            unsortable[id] = false;
+        }
+
+        boolean[] inCycle = new boolean[graph.size()];
+        for (int[] cycle : graph.findCycles()) {
+            StringBuilder moduleNames = new StringBuilder();
+            for (int id : cycle) {
+                inCycle[id] = true;
+                if (moduleNames.length() > 0) {
+                    moduleNames.append(", ");
+                }
+                moduleNames.append(graph.getArtifact(id).getModule().getName());
+            }
+
+            if (reportsDescriptorErrors()) {
+                out.println("[ERROR] Cyclic dependency between modules [" + moduleNames + "]. Their JAR files will not be modularized.");
+                countErrorFounds.incrementAndGet();
+            }
+        }
+
+        for (int id = 0; id < graph.size(); id++) {
+            if (unsortable[id] && !inCycle[id] && reportsDescriptorErrors()) {
+                out.println("[ERROR] Module '" + graph.getArtifact(id).getModule().getName() + "' depends on modules with cyclic dependencies. Its JAR file will not be modularized.");
+                countErrorFounds.incrementAndGet();
+            }
+        }
+
+        return unsortable;
+    }
+
+    /**
+     * Modulariza el archivo JAR {@code file} de acuerdo con la definición de módulo especificada en el descriptor de
+     * modularización, salvo que, según la caché, el JAR modularizado esté actualizado.
+     *
+     * @param file Ruta al archivo JAR a modularizar.
+     * @param artifact Objeto que contiene los datos de la entrada correspondiente al archivo JAR en el descriptor de
+     *                 modularización.
+     * @param out Salida en la que se muestran los mensajes relativos a la modularización del archivo.
+     *
+     * @return {@code true} si la modularización se completó satisfactoriamente o no era necesaria, {@code false} en
+     *         caso contrario.
+     */
+    private boolean processArtifact(File file, Artifact artifact, PrintStream out) {
+        ArtifactJob job = new ArtifactJob(file, artifact, out, null, report.addArtifact(file.getName(), artifact.getModule().getName()));
+
+        prepareArtifact(job);
+        if (!job.finished) {
+            completeArtifact(job);
+        }
+
+        return job.success;
+    }
+
+    /**
+     * Modulariza los JARs compilando con una única invocación del compilador los descriptores de todos los artefactos
+     * de cada nivel de dependencias, o de todos los artefactos (ver {@link BatchMode}). Cada artefacto pasa por las
+     * mismas fases que en {@link #processArtifact(File, Artifact, PrintStream)}, pero la compilación de su descriptor
+     * se hace en lote (ver {@link #compileModuleDescriptors(List)}). Si {@code options.threads} es mayor que 1 las fases
+     * que no son la compilación en lote se ejecutan en paralelo para los artefactos de un mismo nivel.<br/>
+     * <br/>
+     * La salida de cada artefacto se acumula y se muestra, en el orden de los niveles, al terminar cada nivel.
+     *
+     * @param selected Artefactos que deben modularizarse ({@code null} para todos)
+     */
+    private void processJarsInBatches(boolean[] selected) {
+        List<List<ArtifactJob>> levels = new ArrayList<>();
+        for (int[] levelIds : this.levels) {
+            List<ArtifactJob> level = new ArrayList<>(levelIds.length);
+            for (int id : levelIds) {
+                if (selected == null || selected[id]) {
+                    Artifact artifact = graph.getArtifact(id);
+                    findJarFile(artifact).ifPresent(file -> level.add(ArtifactJob.buffered(file, artifact, report.addArtifact(file.getName(), artifact.getModule().getName()))));
+                }
+            }
+            levels.add(level);
+        }
+
+        ExecutorService executor = options.threads > 1 ? Executors.newFixedThreadPool(options.threads) : null;
+        try {
+            if (options.batch == BatchMode.ALL) {
+                // Los módulos que se van a modularizar cambiarán, por lo que los artefactos que dependen de ellos no
+                // pueden considerarse actualizados ni conocer aún la huella de sus dependencias
+                Set<String> pendingModules = new HashSet<>();
+                List<ArtifactJob> pendingJobs = new ArrayList<>();
+                for (List<ArtifactJob> level : levels) {
+                    for (ArtifactJob job : level) {
+                        Set<String> requiresModules = job.artifact.getModule().getRequiresModules();
+                        job.dependsOnPendingModules = requiresModules != null && requiresModules.stream().anyMatch(pendingModules::contains);
+                    }
+
+                    runJobs(executor, level, this::prepareArtifact);
+
+                    for (ArtifactJob job : level) {
+                        if (!job.finished) {
+                            pendingModules.add(job.artifact.getModule().getName());
+                            pendingJobs.add(job);
+                        }
+                    }
+                }
+
+                compileModuleDescriptors(pendingJobs);
+
+                for (List<ArtifactJob> level : levels) {
+                    runJobs(executor, getUnfinishedJobs(level), this::completeArtifact);
+                    printJobs(level);
+                }
+            } else {
+                for (List<ArtifactJob> level : levels) {
+                    runJobs(executor, level, this::prepareArtifact);
+                    compileModuleDescriptors(getUnfinishedJobs(level));
+                    runJobs(executor, getUnfinishedJobs(level), this::completeArtifact);
+                    printJobs(level);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println("[ERROR] Modularization process interrupted.");
+            countErrorFounds.incrementAndGet();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Ejecuta {@code action} para cada uno de los artefactos {@code jobs}, en paralelo si se indica un
+     * {@code executor}, y espera a que terminen todos.
+     */
+    private static void runJobs(ExecutorService executor, List<ArtifactJob> jobs, Consumer<ArtifactJob> action) throws InterruptedException {
+        if (executor == null || jobs.size() < 2) {
+            jobs.forEach(action);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(jobs.size());
+        for (ArtifactJob job : jobs) {
+            futures.add(executor.submit(() -> action.accept(job)));
+        }
 
-    public Modularizer() {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private static List<ArtifactJob> getUnfinishedJobs(List<ArtifactJob> jobs) {
+        List<ArtifactJob> unfinishedJobs = new ArrayList<>(jobs.size());
+        for (ArtifactJob job : jobs) {
+            if (!job.finished) {
+                unfinishedJobs.add(job);
+            }
+        }
+
+        return unfinishedJobs;
+    }
 
+    private void printJobs(List<ArtifactJob> jobs) {
+        for (ArtifactJob job : jobs) {
+            out.print(job.output.toString());
+            if (!job.success) {
+                countErrorFounds.incrementAndGet();
+            }
+        }
+        out.flush();
     }
 
     /**
-     * Inicia el proceso de modularización.
-     *
-     * @return {@code true} si el proceso terminó sin errores, {@code false} en caso contrario.
-     *
-     * @throws ParseException Si ocurrió algún error deserializando el archivo descriptor de modularización
+     * Compila en lote (ver {@link Compiler#compileModuleDescriptors(DescriptorBatch, String)}) los descriptores de
+     * los artefactos {@code jobs} que no fueron obtenidos del almacén de descriptores.<br/>
+     * <br/>
+     * Si la compilación falla no se genera ningún descriptor, por lo que se excluyen del lote los módulos a los que
+     * se atribuyen los errores y se compila de nuevo el resto. El tiempo de las compilaciones en lote se registra
+     * una sola vez, en la fase {@code batch-compile} de la ejecución, y no en la de cada artefacto del lote. Los
+     * descriptores que no pudieron compilarse en lote se compilan por separado al completar cada artefacto, lo cual
+     * muestra los errores de compilación de cada JAR.
      */
-    public boolean start() throws ParseException {
-        System.out.println();
-        System.out.println("Starting modularization process...");
-        System.out.println("--------------------------------------------------------------------");
-        System.out.println();
+    private void compileModuleDescriptors(List<ArtifactJob> jobs) throws InterruptedException {
+        Map<String, ArtifactJob> pendingJobs = new LinkedHashMap<>();
+        for (ArtifactJob job : jobs) {
+            if (job.descriptorData == null && job.moduleSource != null) {
+                pendingJobs.put(job.artifact.getModule().getName(), job);
+            }
+        }
 
-        parseDescriptor();
+        // Un único descriptor se compila más rápido por separado, con el administrador de archivos compartido
+        while (pendingJobs.size() > 1) {
+            DescriptorBatch batch = new DescriptorBatch();
+            pendingJobs.forEach((moduleName, job) -> batch.add(moduleName, job.moduleSource, job.jarContent));
 
-        if (artifactSet.isEmpty()) {
-            System.out.println("Empty descriptor.");
-            return false;
+            long compileStart = System.nanoTime();
+            boolean success;
+            try {
+                success = compiler.compileModuleDescriptors(batch, getCompilerModulePath(pendingJobs.values()));
+            } catch (IOException e) {
+                out.println("[WARN] Can not compile module descriptors in batch, they will be compiled one by one. " + e.getMessage());
+                return;
+            } finally {
+                report.addRunTime("batch-compile", compileStart);
+            }
+
+            if (success) {
+                pendingJobs.forEach((moduleName, job) -> {
+                    job.descriptorData = batch.getDescriptor(moduleName);
+                    batch.getMessages(moduleName).ifPresent(job.out::println);
+                });
+                return;
+            }
+
+            if (batch.getFailedModules().isEmpty()) {
+                return;
+            }
+
+            batch.getFailedModules().forEach(pendingJobs::remove);
         }
+    }
 
-        File[] sourceJarFiles = Main.sourceDir.listFiles((dir, name) -> name.endsWith(".jar"));
-        if (sourceJarFiles.length == 0) {
-            System.out.println("There are no JAR files in source directory");
-            return false;
+    /**
+     * @param jarFile JAR original
+     *
+     * @return Ruta del JAR modularizado correspondiente a {@code jarFile}
+     */
+    private File getModularJarFile(File jarFile) {
+        return options.inPlace ? jarFile : new File(options.destDir, jarFile.getName() + "-mod.jar");
+    }
+
+    /**
+     * @return Valor del {@code --module-path} con el que se compilan los descriptores de los artefactos {@code jobs}:
+     *         solo los JARs modularizados y los módulos del {@code --module-path} de este programa que requieren,
+     *         directa o indirectamente (ver {@link ModulePathClosure}), sin incluir los de los artefactos que se
+     *         compilan junto con ellos. Con --in-place los JARs modularizados están en {@code sourceDir} junto a los
+     *         que aún no lo están, que el compilador tomaría como módulos automáticos si se indicara el directorio.
+     *         {@code null} si no requieren ningún módulo que no sea del JDK.
+     */
+    private String getCompilerModulePath(Collection<ArtifactJob> jobs) {
+        List<Integer> ids = new ArrayList<>(jobs.size());
+        for (ArtifactJob job : jobs) {
+            int id = graph.findByModuleName(job.artifact.getModule().getName());
+            if (id >= 0) {
+                ids.add(id);
+            }
         }
 
-        jarFilesList = Arrays.asList(sourceJarFiles);
+        StringBuilder modulePath = new StringBuilder();
+        BitSet closure = modulePathClosure.getClosure(ids);
+        for (int index = closure.nextSetBit(0); index >= 0; index = closure.nextSetBit(index + 1)) {
+            File moduleFile;
+            if (modulePathClosure.isArtifact(index)) {
+                // Si el artefacto no pudo modularizarse el compilador mostrará que no encuentra su módulo
+                moduleFile = findJarFile(graph.getArtifact(index)).map(this::getModularJarFile).filter(File::isFile).orElse(null);
+            } else {
+                moduleFile = modulePathClosure.getExternalFile(index);
+            }
 
-        processJars();
+            if (moduleFile != null) {
+                modulePath.append(modulePath.length() > 0 ? File.pathSeparator : "").append(moduleFile);
+            }
+        }
 
-        return countErrorFounds == 0;
+        return modulePath.length() > 0 ? modulePath.toString() : null;
     }
 
     /**
-     * @return Permite obtener la cantidad de archivos modularizados
+     * @return Archivo de diario utilizado mientras se agrega el descriptor a {@code jarFile} con --in-place
      */
-    public int getCountModularized() {
-        return countModularized;
+    private File getJournalFile(File jarFile) {
+        return new File(options.destDir, jarFile.getName() + JOURNAL_SUFFIX);
     }
 
     /**
-     * @return Permite obtener la cantidad de errores no fatales encontrados durante el proceso de modularización.
-     *         Estos errores son aquellos relacionados con la modularización de algún archivo JAR en particular pero
-     *         que no impiden que se continúe el proceso con el resto de archivos.
+     * Primera fase de la modularización de un artefacto: comprueba si está actualizado según la caché, analiza el
+     * contenido de su JAR y genera su descriptor sin compilarlo (ver {@link #generateModuleDescriptor(ArtifactJob)}).
+     * Si el artefacto está actualizado, o se produce algún error, la modularización termina en esta fase.
      */
-    public int getCountErrorFounds() {
-        return countErrorFounds;
+    private void prepareArtifact(ArtifactJob job) {
+        checkCache(job);
+        if (!job.finished) {
+            scanArtifact(job);
+        }
+        if (!job.finished) {
+            findStoredDescriptor(job);
+        }
     }
 
     /**
-     * Deserializa el archivo JSON descriptor de modularización.
-     *
-     * @implNote Para cargar los artefactos definidos en el descriptor se utiliza un {@link HashSet} para evitar los
-     *           duplicados. Esto provoca que si un artefacto es definido múltiples veces solo se cargará el primero
-     *           de ellos. Un artefacto se considera duplicado si se repite el {@code name}.
-     *
-     * @throws ParseException Si ocurre algún error que impida la deserialización.
+     * Comprueba, según la caché, si el JAR modularizado del artefacto {@code job} está actualizado, en cuyo caso su
+     * modularización termina. Debe hacerse cuando ya se han procesado los artefactos de los que depende.
      */
-    private void parseDescriptor() throws ParseException {
+    private void checkCache(ArtifactJob job) {
+        if (cache == null) {
+            return;
+        }
+
+        long cacheStart = System.nanoTime();
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            // Se utiliza un LinkedHashSet para garantizar que
-            Type type = mapper.getTypeFactory().constructCollectionType(LinkedHashSet.class, Artifact.class);
-            artifactSet = mapper.readValue(Main.descriptorFile, mapper.getTypeFactory().constructType(type));
+            job.cacheKey = cache.computeKey(job.file, job.artifact);
+            if (job.dependsOnPendingModules) {
+                // Alguno de los módulos que requiere se modulariza en el mismo lote, por lo que no puede estar
+                // actualizado
+                cache.recordMiss();
+            } else if (cache.isUpToDate(job.artifact, job.cacheKey, getModularJarFile(job.file))) {
+                job.out.println("[INFO] '" + job.file.getName() + "' is up to date, skipped");
+                job.record.addTime(RunReport.Phase.CACHE, cacheStart);
+                job.finish(RunReport.Status.UP_TO_DATE);
+                return;
+            }
         } catch (IOException e) {
-            throw new ParseException("[ERROR] Error parsing modularization descriptor file. " + e.getMessage(), e);
+            job.out.println("[WARN] Can not compute cache key for '" + job.file.getName() + "'. " + e.getMessage());
+            job.cacheKey = null;
+            cache.recordMiss();
         }
+
+        // El JAR modularizado cambiará, por lo que tampoco estarán actualizados los que dependen de él
+        cache.invalidate(job.artifact);
+        job.record.addTime(RunReport.Phase.CACHE, cacheStart);
     }
 
     /**
-     * Procesa los archivos JAR encontrados en el directorio {@code sourceDir} para generar su correspondiente JAR
-     * modularizado. La modularización solo se lleva a cabo con aquellos archivos para los cuales exista un entrada
-     * correspondiente en el descriptor de modularización.<br/>
-     * <br/>
-     * Las entradas en descriptor de modularización serán analizadas para determinar el orden en el cual deben ser
-     * procesados los JARs, teniendo en cuenta las dependencias entre ellos. Aquellos que menos niveles de dependencias
-     * tengan serán procesados primero y los que más niveles dependencias tengan de último. Cuando hablamos de niveles de
-     * dependencias nos referimos a que si el artefacto A depende de B y este a su vez depende de C, el primero en ser
-     * modularizado será C, luego B y por último A.<br/>
-     * <br/>
-     * Es importante aclarar que las únicas dependencias que cuentan para los fines explicados arriba son aquellas que
-     * hacen referncia a los módulos que deseamos crear (aquellos cuya definición está declarada en el descriptor de
-     * modularización), nunca las que referencian a terceros módulos ya existentes.
+     * Analiza el contenido del JAR del artefacto {@code job} y genera su descriptor sin compilarlo. Solo depende del
+     * propio artefacto, por lo que puede hacerse antes de que se hayan procesado los artefactos de los que depende.
      */
-    private void processJars() {
-        // Crear la instancia del compilador
+    private void scanArtifact(ArtifactJob job) {
         try {
-            compiler = Compiler.getInstance();
-            if (Main.jdkHome != null) {
-                compiler.setJdkHome(Main.jdkHome);
-            }
+            scanJar(job);
         } catch (Exception e) {
-            System.out.println("[ERROR] " + e.getMessage());
+            failArtifact(job, e);
         }
-        System.out.println("[INFO] Using JDK_HOME: " + compiler.getJdkHome());
-        System.out.println();
+    }
 
-        // Antes de modularizar el JAR es necesario primero ordenar los artefactos de acuerdo a sus dependencias para
-        // asegurarnos de que antes de modularizar un artefacto ya han sido modularizados todos aquellos de los que este
-        // depende
-        sortArtifacts();
+    private void scanJar(ArtifactJob job) throws IOException {
+        // Solo se necesitan los nombres de las entradas, el contenido del JAR no se extrae
+        long scanStart = System.nanoTime();
+        FlightEvents.Span scanEvent = FlightEvents.begin(FlightEvents.Type.JAR_SCAN);
+        job.jarContent = JarContent.scan(job.file);
+        scanEvent.end(job.file.getName(), job.artifact.getModule().getName(), job.jarContent.getEntryCount(), job.jarContent.getCentralDirectorySize());
+        job.record.addTime(RunReport.Phase.SCAN, scanStart);
+        job.record.addBytesRead(job.jarContent.getCentralDirectorySize());
 
-        // Modularizar cada uno de los JARs
-        artifactList.forEach(a ->
-             jarFilesList.stream()
-                    .filter(file -> a.getName().equals(file.getName()))
-                    .findFirst()
-                    .ifPresent(file -> {
-                        if (!modularizeJar(file, a)) {
-                            countErrorFounds++;
-                        }
-                    })
-        );
+        // Validar que el jar no tenga al menos una definición de módulo
+        if (job.jarContent.containsModuleDescriptor()) {
+            throw new RuntimeException("JAR file contains al least one module definition.");
+        }
+
+        // Generar el archivo module-info.class, o el module-info.java si debe ser compilado
+        try {
+            generateModuleDescriptor(job);
+        } catch (IOException e) {
+            throw new IOException("Error generating module descriptor. " + e.getMessage());
+        }
     }
 
     /**
-     * Ordena artefactos definidos en el descriptor de modularización teniendo en cuenta las dependencias entre ellos.
-     * Aquellos artefactos que menos niveles de dependencias tengan terminarán siendo primeros que aquellos que más niveles
-     * dependencias tengan.<br/>
-     * <br/>
-     * Cuando hablamos de niveles de dependencias nos referimos a que si el artefacto A depende de B y este a su vez
-     * depende de C, primero irá C, luego B y por último A.<br/>
-     * <br/>
-     * Es importante aclarar que las únicas dependencias que cuentan para los fines explicados arriba son aquellas que
-     * hacen referncia a los módulos que deseamos crear (aquellos cuya definición está declarada en el descriptor de
-     * modularización), nunca las que referencian a terceros módulos ya existentes.<br/>
-     * <br/>
-     * Los artefectos ordenados serán agregados a {@link Modularizer#artifactList}.
-     *
-     * @implNote Para lograr este orden se agregan cada unos de los artefactos contenidos en {@link Modularizer#artifactSet}
-     *           en un árbol de dependencias, quedando en los niveles superiores aquellos que más niveles de dependencias
-     *           tengan.
+     * Última fase de la modularización de un artefacto: compila su descriptor si aún no se tiene el archivo
+     * module-info.class y lo agrega al JAR (ver {@link #patchJar(File, byte[])}).
      */
-    private void sortArtifacts() {
-        BiPredicate<Artifact, Artifact> equalsArtifacByModuleNamePredicate = (a1, a2) -> {
-            if (a1.getModule() != null && a2.getModule() != null) {
-                return a1.getModule().getName().equals(a2.getModule().getName());
-            }
-
-            return false;
-        };
-
-        // Crear el árbol de dependencias con una raíz ficticia ya que no contiene datos. Esto
-        // se hace para que todos los nodos con la misma profundidad en su decendencia se encuentren
-        // al mismo nivel
-        Tree<Artifact> dependenciesTree = new Tree(new TreeNode(new Artifact()));
-        for (Artifact artifact : artifactSet) {
-            // Busco si en el árbol ya existe un artefacto que defina el mismo módulo que el
-            // artefacto analizado. Si esto ocurre es porque se trata del mismo artefacto.
-            TreeNode<Artifact> artifactNode = dependenciesTree.findNodeByData(artifact, equalsArtifacByModuleNamePredicate);
-
-            // Si no es parte del árbol de dependencias creo un nuevo nodo
-            if (artifactNode == null) {
-                artifactNode = new TreeNode(artifact);
-
-                // Lo agrego como hijo de la raíz
-                dependenciesTree.getRoot().getChildren().add(artifactNode);
-            }
-
-            // Esto es un truco para poder utilizar la referencia artifactNode dentro de expresiones lambda
-            // puesto que al no ser final o efectivamente final me lanza error
-            AtomicReference<TreeNode<Artifact>> artifactNodeReference = new AtomicReference<>(artifactNode);
-
-            // Agregar como hijos los módulos de los que depende el artefacto actual y
-            // que se encuentran definidos cómo módulos por otros artefactos
-            Set<String> requiresModules = artifact.getModule().getRequiresModules();
-            if (requiresModules != null) {
-                for (String moduleName : requiresModules) {
-                    artifactSet.stream()
-                            // Busco si el módulo requerido es definido por alguno de los artefactos
-                            .filter(a -> a.getModule().getName().equals(moduleName))
-                            .findFirst()
-                            // Si encuentro el artefacto que lo define...
-                            .ifPresent(a -> {
-                                // Busco si el artefacto ya existe en el árbol de dependencias
-                                TreeNode<Artifact> requireModuleNode = dependenciesTree.findNodeByData(a, equalsArtifacByModuleNamePredicate);
-
-                                if (requireModuleNode == null) {
-                                    // Si no existe agrego el artefacto encontrado como hijo del artefacto actual
-                                    artifactNodeReference.get().getChildren().add(new TreeNode<>(a));
-                                } else {
-                                    // Si ya existe en el árbol...
-                                    int currentArtifactLevel = dependenciesTree.getNodeLevel(artifactNodeReference.get());
-                                    int requiredArtifactLevel = dependenciesTree.getNodeLevel(requireModuleNode);
-
-                                    // Si el nivel en que se encuentra el artefacto requerido es menor o igual
-                                    // que el nivel donde se encuentra el artefacto actual, se lo quito al padre
-                                    // y lo agrego como hijo del artefacto actual.
-                                    // En caso contrario no es necesario hacerlo ya que si el nivel del requerido
-                                    // es mayor, este será modularizado antes
-                                    if (requiredArtifactLevel <= currentArtifactLevel) {
-                                        dependenciesTree.removeSubtree(requireModuleNode);
-                                        artifactNodeReference.get().getChildren().add(requireModuleNode);
-                                    }
-                                }
-                            });
-
-                }
-            }
+    private void completeArtifact(ArtifactJob job) {
+        compileArtifact(job);
+        if (!job.finished) {
+            writeArtifact(job);
         }
+    }
 
-        // Obtener el listado de ordenado de los artefactos según deben ser modularizados
-        // Los primeros deben ser los que se hayan en el nivel más profundo
-        int treeLevel = dependenciesTree.getTreeLevel();
-        artifactList = new ArrayList<>();
-        for (int i = treeLevel; i > 0; i--) {
-            List<TreeNode<Artifact>> nodesAtLevel = dependenciesTree.getNodesAtLevel(i);
-            for (TreeNode<Artifact> item : nodesAtLevel) {
-                artifactList.add(item.getData());
-            }
+    /**
+     * Compila el descriptor del artefacto {@code job} si aún no se tiene el archivo module-info.class.
+     */
+    private void compileArtifact(ArtifactJob job) {
+        if (job.descriptorData == null) {
+            long compileStart = System.nanoTime();
+            compileModuleDescriptor(job);
+            job.record.addTime(RunReport.Phase.COMPILE, compileStart);
+        }
+        if (job.descriptorData == null) {
+            failArtifact(job, new RuntimeException("Can not to compile module-info.java"));
         }
     }
 
     /**
-     * Modulariza el archivo JAR {@code file} de acuerdo con la definición de módulo especificada en el descriptor de
-     * modularización.
-     *
-     * @param file Ruta al archivo JAR a modularizar.
-     * @param artifact Objeto que contiene los datos de la entrada correspondiente al archivo JAR en el descriptor de
-     *                 modularización.
-     *
-     * @return {@code true} si la modularización se completó satisfactoriamente, {@code false} en caso contrario.
+     * Agrega el descriptor compilado del artefacto {@code job} al almacén y a su JAR, y actualiza la caché.
      */
-    private boolean modularizeJar(File file, Artifact artifact) {
-        // Esto es necesario para poder utilizar la variable dentro de expresiones lambda
-        // ya que se utilizamos directamente el tipo File no podremos hacerlo, ya que no
-        // sería final o efectivamente final
-        final AtomicReference<File> tempArtifactDir = new AtomicReference<>();
-
+    private void writeArtifact(ArtifactJob job) {
         try {
-            JarFile jarFile = new JarFile(file);
+            storeModuleDescriptor(job);
 
-            tempArtifactDir.set(new File(Main.destDir, file.getName() + "-temp"));
-            if (!tempArtifactDir.get().mkdirs()) {
-                throw new RuntimeException("Can not create temp dir '" + tempArtifactDir + "'.");
+            // Agregar el descriptor del módulo al JAR. Las entradas del JAR original se copian completas, salvo con
+            // --in-place, en cuyo caso solo se reescribe su directorio central
+            long patchStart = System.nanoTime();
+            FlightEvents.Span patchEvent = FlightEvents.begin(FlightEvents.Type.PATCH);
+            long sourceJarSize = job.file.length();
+            boolean replaced = patchJar(job.file, job.descriptorData);
+            moduleFingerprints.put(job.artifact.getModule().getName(), Digests.sha256(job.descriptorData));
+            long modularJarSize = getModularJarFile(job.file).length();
+            patchEvent.end(job.file.getName(), job.artifact.getModule().getName(), job.jarContent.getEntryCount() + 1, modularJarSize);
+            job.record.addTime(RunReport.Phase.PATCH, patchStart);
+            if (options.inPlace) {
+                long centralDirectorySize = job.jarContent.getCentralDirectorySize();
+                job.record.addBytesRead(centralDirectorySize);
+                job.record.addBytesWritten(modularJarSize - sourceJarSize + centralDirectorySize);
+            } else {
+                job.record.addBytesRead(sourceJarSize);
+                job.record.addBytesWritten(modularJarSize);
             }
 
-            // Validar que el jar no tenga al menos una definición de módulo
-            jarFile.stream()
-                    .filter(entry -> entry.getName().contains("module-info.class"))
-                    .findFirst()
-                    .ifPresent(entry -> {
-                        throw new RuntimeException("JAR file contains al least one module definition.");
-                    });
-
-            // Extraer el contenido del archivo JAR
-            Set<String> nonEmptyPackages = new HashSet<>();
-            jarFile.stream()
-                    // Ordenar las entradas para que los directorios siempre aparezcan antes de los archivos que contiene
-                    .sorted(Comparator.comparing(JarEntry::getName))
-                    .forEach(entry -> {
-                        File entryOutFile = new File(tempArtifactDir.get() + File.separator + entry.getName().replaceAll("/", "\\" + File.separator));
-
-                        if (!entry.isDirectory()) {
-                            // Agregar el paquete que contiene la clase al conjunto de paquetes candidatos a exportar
-                            if (entry.getName().endsWith(".class")) {
-                                int lastSlashIndex = entry.getName().lastIndexOf('/');
-                                nonEmptyPackages.add(entry.getName().substring(0, lastSlashIndex).replaceAll("/", "."));
-                            }
-
-                            // Escribir el archivo en el disco duro
-                            try (OutputStream fos = new FileOutputStream(entryOutFile)) {
-                                fos.write(jarFile.getInputStream(entry).readAllBytes());
-                            } catch (IOException e) {
-                                throw new RuntimeException(e.getMessage(), e);
-                            }
-                        } else {
-                            // Crear todos los directorios que indique la entrada
-                            entryOutFile.mkdirs();
-                        }
-                    });
+            job.out.println("[INFO] '" + job.file.getName() + "' modularized to module '" + job.artifact.getModule().getName() + "'"
+                    + (replaced ? "" : " (identical to the existing modular JAR, left untouched)"));
+            countModularized.incrementAndGet();
+        } catch (Exception e) {
+            failArtifact(job, e);
+            return;
+        }
 
-            // Generar el archivo module-info.class
-            byte[] moduleInfoData = null;
+        if (cache != null && job.cacheKey != null) {
+            long cacheStart = System.nanoTime();
             try {
-                moduleInfoData = generateModuleDescriptor(tempArtifactDir.get(), artifact.getModule(), nonEmptyPackages);
-            } catch (IOException e) {
-                throw new IOException("Error generating module descriptor. " + e.getMessage());
-            }
-            if (moduleInfoData == null) {
-                throw new RuntimeException("Can not to compile module-info.java");
-            }
-
-            // Agregar el descriptor del módulo al JAR
-            patchJar(file, moduleInfoData);
-
-            System.out.println("[INFO] '" + file.getName() + "' modularized to module '" + artifact.getModule().getName() + "'");
-            countModularized++;
-            return true;
-        } catch (IOException e) {
-            System.out.println("[ERROR] I/O error modularizing JAR file '" + file.getName() + "'. " + e.getMessage());
-        } catch (Exception e) {
-            System.out.println("[ERROR] Unexpected error modularizing JAR file '" + file.getName() + "'. " + e.getMessage());
-        } finally {
-            if (tempArtifactDir.get() != null) {
-                try {
-                    recursiveRemove(tempArtifactDir.get());
-                } catch (Exception e) {
-                    System.out.println("[WARN] Error while remove temp dir '" + tempArtifactDir.get().getName() + "'. " + e.getMessage());
+                // Si sus dependencias se modularizaron en el mismo lote la clave tiene que calcularse de nuevo
+                ArtifactCache.Entry cacheKey = job.dependsOnPendingModules ? cache.computeKey(job.file, job.artifact) : job.cacheKey;
+                File modularJarFile = getModularJarFile(job.file);
+                String outputDigest = digestManifest != null ? digestManifest.get(modularJarFile) : null;
+                if (options.inPlace) {
+                    cache.updateInPlace(job.artifact, cacheKey, job.file, outputDigest);
+                } else {
+                    cache.update(job.artifact, cacheKey, modularJarFile, outputDigest);
                 }
+            } catch (IOException e) {
+                job.out.println("[WARN] Can not update cache for '" + job.file.getName() + "'. " + e.getMessage());
+                cache.invalidate(job.artifact);
             }
+            job.record.addTime(RunReport.Phase.CACHE, cacheStart);
         }
 
-        return false;
+        job.finish(RunReport.Status.MODULARIZED);
     }
 
-    /**
-     * Permite eliminar un archivo o directorio. Si {@code file} representa un directorio, se eliminarán recursivamente
-     * todos los archivos y subdirectorios que este contenga. Si el archivo/directorio no existe, la llamada a este
-     * método no tendrá efecto.
-     *
-     * @param file Archivo o directorio a eliminar.
-     */
-    private void recursiveRemove(File file) {
-        try {
-            if (file.isDirectory()) {
-                String[] dirEntries = file.list();
-                for (String entry : dirEntries) {
-                    recursiveRemove(new File(file + File.separator + entry));
-                }
-            }
-
-            Files.deleteIfExists(file.toPath());
-        } catch (Exception e) {
-            throw new RuntimeException("Can not remove " + (file.isFile() ? "file " : "directory ") + file);
+    private void failArtifact(ArtifactJob job, Exception e) {
+        if (e instanceof IOException) {
+            job.out.println("[ERROR] I/O error modularizing JAR file '" + job.file.getName() + "'. " + e.getMessage());
+        } else {
+            job.out.println("[ERROR] Unexpected error modularizing JAR file '" + job.file.getName() + "'. " + e.getMessage());
         }
+
+        job.finish(RunReport.Status.FAILED);
     }
 
     /**
-     * Genera el descriptor del módulo {@code module} en el directorio definido por {code outputDir}.<br/>
+     * Genera el descriptor del módulo del artefacto {@code job} para el contenido de su archivo JAR.<br/>
      * <br/>
      * El proceso inicia creando la definición del descriptor del módulo, un archivo module-info.java. Para agregar
      * las directivas {@code exports} se utiliza la definición hecha en el descriptor de modularización. Si dicha
@@ -395,7 +1439,12 @@ class Modularizer {
      * directiva de este tipo.<br/>
      * <br/>
      * Una vez creado el descriptor del módulo (archivo module-info.java) este es compilado utilido el jdk sobre el
-     * cual se está ejecutando este programa.<br/>
+     * cual se está ejecutando este programa (ver {@link #compileModuleDescriptor(ArtifactJob)}), por separado o junto
+     * con los de otros artefactos si se indicó el parámetro {@code --batch}. El código fuente no se escribe en disco y
+     * el contenido del JAR original se le indica al compilador como si se tratara de un {@code --patch-module}, por lo
+     * que tampoco es necesario extraerlo. Si se seleccionó el mecanismo {@link DescriptorEngine#BYTECODE} no se crea
+     * ni compila el archivo module-info.java, sino que el archivo module-info.class es generado directamente por
+     * {@link ModuleInfoWriter}.<br/>
      * <br/>
      * El proceso de compilación puede fallar si los módulos de los cuales depende este módulo (según las directivas
      * {@code requires} definidas) no son visibles por el compilador. Por defecto se agrega al comando de compilación
@@ -406,20 +1455,38 @@ class Modularizer {
      * se depende y luego se modularice este). Si adicionalmente el módulo a modularizar depende de otros ya existentes
      * se puede utilizar el parámetro {@code --module-path} al ejecutar la aplicación para agregar cualquier otro
      * directorio y/o archivos (este parámetro tiene la misma sintaxis del homónimo en {@code java}, {@code javac},
-     * {@code jlink} y demás herramientas del JDK).
-     *
-     * @param outputDir Directorio en donde se debe generar el archivo module-info.java. Debe ser el directorio raíz en
-     *                  el cual se extrajo el contenido del archivo JAR a modularizar.
-     * @param module Objeto con la definición del módulo.
-     * @param jarNonEmptyPackages Listado de los paquetes contenidos en el archivo JAR que al menos contiene una archivo
-     *                            .class. Si {@code module.exportsPackages == null} se agregará una entrada del tipo
-     *                            {@code exports package.name} para cada uno de los elementos de este listado.
+     * {@code jlink} y demás herramientas del JDK). En lugar de los directorios completos al compilador solo se le
+     * indican los JARs y módulos que el módulo requiere, directa o indirectamente (ver
+     * {@link #getCompilerModulePath(Collection)}).<br/>
+     * <br/>
+     * Si se indicó un almacén de descriptores (parámetro {@code --descriptor-store}) antes de compilar se busca en él
+     * un descriptor compilado con la misma clave (ver {@link #findStoredDescriptor(ArtifactJob)}) y, si
+     * existe, se utiliza en lugar de invocar al compilador. Si alguno de los módulos requeridos va a ser compilado
+     * en el mismo lote su huella aún no se conoce, por lo que solo se agrega al almacén tras compilarlo.
      *
-     * @return Cotenido del archivo module-info.class correspondiente al archivo module-info.java compilado.
+     * @param job Artefacto a modularizar, con el contenido de su archivo JAR ya analizado. Si
+     *            {@code module.exportsPackages == null} se agregará una entrada del tipo {@code exports package.name}
+     *            para cada uno de los paquetes del JAR que contengan al menos un archivo .class. Se le asigna el
+     *            contenido del archivo module-info.class, si no es necesario compilarlo, o el del archivo
+     *            module-info.java a compilar.
      *
-     * @throws IOException Si ocurre un error escribiendo el archivo module-info.java en el disco duro.
+     * @throws IOException Si ocurre un error generando el descriptor.
      */
-    private byte[] generateModuleDescriptor(File outputDir, Module module, Set<String> jarNonEmptyPackages) throws IOException {
+    private void generateModuleDescriptor(ArtifactJob job) throws IOException {
+        long generateStart = System.nanoTime();
+        FlightEvents.Span generateEvent = FlightEvents.begin(FlightEvents.Type.DESCRIPTOR_GENERATE);
+        Module module = job.artifact.getModule();
+        Set<String> jarNonEmptyPackages = job.jarContent.getNonEmptyPackages();
+
+        // Si no se usa el compilador el descriptor se escribe directamente
+        if (options.engine == DescriptorEngine.BYTECODE) {
+            job.descriptorData = ModuleInfoWriter.write(module, jarNonEmptyPackages);
+            int exportsCount = module.getExportsPackages() != null ? module.getExportsPackages().size() : jarNonEmptyPackages.size();
+            generateEvent.end(job.file.getName(), module.getName(), exportsCount, job.descriptorData.length);
+            job.record.addTime(RunReport.Phase.GENERATE, generateStart);
+            return;
+        }
+
         // Crear el contenido del descriptor
         final StringBuilder builder = new StringBuilder("module ")
                 .append(module.getName())
@@ -435,6 +1502,10 @@ class Modularizer {
             finalPackagesList = module.getExportsPackages();
         }
 
+        // Las directivas se escriben ordenadas, al igual que con ModuleInfoWriter, para que el descriptor compilado no
+        // dependa del orden en que se encontraron los paquetes
+        finalPackagesList = new TreeSet<>(finalPackagesList);
+
         finalPackagesList.forEach(p -> builder.append("    exports ")
                 .append(p)
                 .append(";")
@@ -442,7 +1513,7 @@ class Modularizer {
         );
 
         if (module.getRequiresModules() != null) {
-            module.getRequiresModules().forEach(m -> builder.append("    requires ")
+            new TreeSet<>(module.getRequiresModules()).forEach(m -> builder.append("    requires ")
                     .append(m)
                     .append(";")
                     .append((char) Character.LINE_SEPARATOR)
@@ -451,70 +1522,337 @@ class Modularizer {
 
         builder.append("}");
 
-        String moduleDescriptorPath = outputDir + File.separator + "module-info.java";
+        job.moduleSource = builder.toString();
+        generateEvent.end(job.file.getName(), module.getName(), finalPackagesList.size(), job.moduleSource.length());
+        job.record.addTime(RunReport.Phase.GENERATE, generateStart);
+    }
 
-        // Escribir el descriptor en el disco duro
-        try (OutputStream fos = new FileOutputStream(moduleDescriptorPath)) {
-            fos.write(builder.toString().getBytes());
-        } catch (IOException e) {
-            throw e;
+    /**
+     * Busca en el almacén el descriptor compilado del artefacto {@code job}. La clave incluye las huellas de los
+     * módulos requeridos, por lo que debe hacerse cuando ya se han procesado los artefactos de los que depende.
+     */
+    private void findStoredDescriptor(ArtifactJob job) {
+        if (descriptorStore == null || job.moduleSource == null || job.dependsOnPendingModules) {
+            return;
+        }
+
+        long storeStart = System.nanoTime();
+        Module module = job.artifact.getModule();
+        job.storeKey = getDescriptorStoreKey(job.moduleSource, job.jarContent.getNonEmptyPackages(), module);
+        job.descriptorData = descriptorStore.get(job.storeKey, module.getName());
+        job.storedDescriptor = job.descriptorData != null;
+        job.record.addTime(RunReport.Phase.STORE, storeStart);
+    }
+
+    /**
+     * Compila por separado el descriptor del artefacto {@code job} generado por
+     * {@link #generateModuleDescriptor(ArtifactJob)}. Si la compilación falla el artefacto se queda sin descriptor y
+     * los errores se muestran en su salida.
+     */
+    private void compileModuleDescriptor(ArtifactJob job) {
+        if (job.moduleSource == null) {
+            return;
         }
 
-        // Compilar el descriptor
+        ByteArrayOutputStream descriptorData = new ByteArrayOutputStream();
         try {
-            compiler.compileModuleDescriptor(outputDir.toString(), Main.destDir.toString() + (Main.modulePath != null ? File.pathSeparator + Main.modulePath : ""))
-                    .ifPresent(System.out::println);
+            compiler.compileModuleDescriptor(job.artifact.getModule().getName(), job.moduleSource, job.jarContent, getCompilerModulePath(Collections.singletonList(job)), descriptorData)
+                    .ifPresent(job.out::println);
         } catch (Exception e) {
-            System.out.println("[ERROR] " + e.getMessage());
+            job.out.println("[ERROR] " + e.getMessage());
         }
 
-        // Leer el descriptor compilado
-        byte[] descriptorData = null;
+        if (descriptorData.size() > 0) {
+            job.descriptorData = descriptorData.toByteArray();
+        }
+    }
 
-        try (InputStream fis = new FileInputStream(outputDir + File.separator + "module-info.class")) {
-            descriptorData = fis.readAllBytes();
-        } catch (Exception e) {
-            System.out.println("[ERROR] " + e.getMessage());
+    /**
+     * Agrega al almacén de descriptores el descriptor compilado del artefacto {@code job}.
+     */
+    private void storeModuleDescriptor(ArtifactJob job) {
+        if (descriptorStore == null || job.moduleSource == null || job.storedDescriptor) {
+            return;
+        }
+
+        long storeStart = System.nanoTime();
+
+        // Las huellas de los módulos requeridos ya son conocidas
+        if (job.storeKey == null) {
+            job.storeKey = getDescriptorStoreKey(job.moduleSource, job.jarContent.getNonEmptyPackages(), job.artifact.getModule());
+        }
+
+        try {
+            descriptorStore.put(job.storeKey, job.descriptorData);
+        } catch (IOException e) {
+            job.out.println("[WARN] Can not add module descriptor to store. " + e.getMessage());
+        }
+        job.record.addTime(RunReport.Phase.STORE, storeStart);
+    }
+
+    /**
+     * Calcula la clave del descriptor en el almacén de descriptores. La clave es el resumen de todo lo que determina
+     * el resultado de la compilación del descriptor:
+     * <ul>
+     *     <li>El JDK utilizado para compilar</li>
+     *     <li>El código fuente del descriptor</li>
+     *     <li>Los paquetes del JAR, ya que el compilador comprueba que existan los paquetes exportados</li>
+     *     <li>El descriptor de cada uno de los módulos requeridos (ver {@link #getModuleFingerprint(String)})</li>
+     * </ul>
+     */
+    private String getDescriptorStoreKey(String moduleSource, Set<String> jarNonEmptyPackages, Module module) {
+        StringBuilder canonical = new StringBuilder()
+                .append("compiler=").append(compilerFingerprint).append('\n')
+                .append("source=").append(moduleSource).append('\n')
+                .append("packages=").append(new TreeSet<>(jarNonEmptyPackages)).append('\n');
+
+        if (module.getRequiresModules() != null) {
+            for (String moduleName : new TreeSet<>(module.getRequiresModules())) {
+                canonical.append("requires ").append(moduleName).append('=').append(getModuleFingerprint(moduleName)).append('\n');
+            }
+        }
+
+        return Digests.sha256(canonical.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Obtiene la huella del módulo {@code moduleName} tal como la verá el compilador. Se busca en el mismo orden que
+     * el compilador: primero en los JARs modularizados en {@code destDir} y luego en el {@code --module-path}. La
+     * huella es el resumen de su archivo module-info.class (o de su descriptor si es un módulo automático). Si no se
+     * encuentra se asume que es un módulo del JDK, que ya forma parte de la huella del compilador.
+     */
+    private String getModuleFingerprint(String moduleName) {
+        String fingerprint = moduleFingerprints.get(moduleName);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+
+        try {
+            fingerprint = findModularJarFingerprint(moduleName);
+            if (fingerprint == null) {
+                fingerprint = findModulePathFingerprint(moduleName);
+            }
+        } catch (IOException e) {
+            // El módulo no se puede leer, tampoco lo podrá leer el compilador
+            fingerprint = "unreadable:" + e.getMessage();
+        }
+
+        if (fingerprint == null) {
+            fingerprint = "jdk";
+        }
+
+        String previous = moduleFingerprints.putIfAbsent(moduleName, fingerprint);
+        return previous != null ? previous : fingerprint;
+    }
+
+    private String findModularJarFingerprint(String moduleName) throws IOException {
+        Optional<File> jarFile = Optional.ofNullable(descriptor.findByModuleName(moduleName))
+                .flatMap(this::findJarFile);
+        if (!jarFile.isPresent()) {
+            return null;
+        }
+
+        File modularJarFile = getModularJarFile(jarFile.get());
+        if (!modularJarFile.isFile()) {
+            return null;
+        }
+
+        try (JarFile jar = new JarFile(modularJarFile)) {
+            JarEntry entry = jar.getJarEntry("module-info.class");
+            if (entry == null) {
+                return null;
+            }
+
+            try (InputStream in = jar.getInputStream(entry)) {
+                return Digests.sha256(in.readAllBytes());
+            }
+        }
+    }
+
+    /**
+     * @return Huella del módulo {@code moduleName} del {@code --module-path} (ver
+     *         {@link #getModuleFingerprint(String)}), o {@code null} si no se encuentra en él
+     */
+    private String getModulePathFingerprint(String moduleName) {
+        return modulePathFingerprints.computeIfAbsent(moduleName, name -> {
+            try {
+                return Optional.ofNullable(findModulePathFingerprint(name));
+            } catch (IOException e) {
+                return Optional.of("unreadable:" + e.getMessage());
+            }
+        }).orElse(null);
+    }
+
+    private String findModulePathFingerprint(String moduleName) throws IOException {
+        Optional<ModuleReference> reference = getModulePathFinder().find(moduleName);
+        if (!reference.isPresent()) {
+            return null;
+        }
+
+        try (ModuleReader reader = reference.get().open()) {
+            Optional<ByteBuffer> descriptorData = reader.read("module-info.class");
+            if (descriptorData.isPresent()) {
+                try {
+                    ByteBuffer buffer = descriptorData.get();
+                    byte[] data = new byte[buffer.remaining()];
+                    buffer.get(data);
+                    return Digests.sha256(data);
+                } finally {
+                    reader.release(descriptorData.get());
+                }
+            }
+        }
+
+        // Módulo automático
+        return Digests.sha256(reference.get().descriptor().toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private synchronized ModuleFinder getModulePathFinder() {
+        if (modulePathFinder == null) {
+            List<Path> paths = new ArrayList<>();
+            if (options.modulePath != null) {
+                for (String path : options.modulePath.split(File.pathSeparator)) {
+                    if (!path.isEmpty()) {
+                        paths.add(Paths.get(path));
+                    }
+                }
+            }
+
+            modulePathFinder = ModuleFinder.of(paths.toArray(new Path[0]));
+        }
+
+        return modulePathFinder;
+    }
+
+    /**
+     * La huella del compilador identifica la versión del JDK que compila los descriptores: la del JDK en ejecución si
+     * se compila en el mismo proceso o el contenido del archivo {@code release} del JDK indicado en caso contrario.
+     */
+    private String getCompilerFingerprint() throws IOException {
+        if (compiler.isInProcess()) {
+            return System.getProperty("java.vendor") + " " + System.getProperty("java.runtime.version");
+        }
+
+        File releaseFile = new File(compiler.getJdkHome(), "release");
+        if (releaseFile.isFile()) {
+            return new String(Files.readAllBytes(releaseFile.toPath()), StandardCharsets.UTF_8);
         }
 
-        return descriptorData;
+        return new File(compiler.getJdkHome()).getCanonicalPath();
     }
 
     /**
      * Agrega la entrada /module-info.class al archivo JAR cuya ruta es {@code jarFilePath}. El contenido de la entrada
-     * será {@code moduleDescriptorData}.
+     * será {@code moduleDescriptorData}.<br/>
+     * <br/>
+     * Las entradas del JAR original se copian sin descomprimirlas (ver {@link ZipRewriter}), salvo que se indique un
+     * nivel de compresión ({@code --compression}), en cuyo caso se vuelven a comprimir en paralelo. El JAR se escribe
+     * con un nombre temporal y se renombra al terminar, de forma que el compilador nunca encuentre en {@code destDir}
+     * un JAR incompleto mientras se modularizan otros artefactos.<br/>
+     * <br/>
+     * Con --in-place la entrada se agrega al propio JAR original, escribiendo solo la entrada y un nuevo directorio
+     * central (ver {@link ZipRewriter#appendEntry(File, String, byte[], LocalDateTime, File)}). El compilador no lo
+     * lee mientras tanto, ya que solo recibe los JARs de los artefactos ya modularizados.<br/>
+     * <br/>
+     * Con --reproducible la entrada tiene siempre la misma fecha y, al igual que el resto de las entradas, la misma
+     * posición, por lo que los mismos JAR y descriptor producen el mismo JAR modularizado, byte a byte. Su resumen se
+     * calcula mientras se escribe y se registra en el manifiesto de resúmenes; si en {@code destDir} ya existe un JAR
+     * idéntico este no se reemplaza, de forma que conserve su fecha de modificación.
      *
      * @param jarFilePath Archivo JAR a patchar
      * @param moduleDescriptorData Contenido de la entrada /module-info.class
+     *
+     * @return {@code true} si se escribió el JAR modularizado, {@code false} si ya existía uno idéntico
      */
-    public void patchJar(File jarFilePath, byte[] moduleDescriptorData) {
-        try (
-                OutputStream fos = new FileOutputStream(Main.destDir + File.separator + jarFilePath.getName() + "-mod.jar");
-                JarOutputStream jos = new JarOutputStream(fos)
-            ) {
-
-            // Hago una copia exacta del JAR
-            JarFile jar = new JarFile(jarFilePath);
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                jos.putNextEntry(entry);
-
-                if (!entry.isDirectory()) {
-                    byte[] entryData = jar.getInputStream(entry).readAllBytes();
-                    jos.write(entryData);
-                    jos.flush();
-                    jos.closeEntry();
+    public boolean patchJar(File jarFilePath, byte[] moduleDescriptorData) {
+        LocalDateTime entryTime = options.reproducible ? REPRODUCIBLE_ENTRY_TIME : LocalDateTime.now();
+        try {
+            if (options.inPlace) {
+                ZipRewriter.appendEntry(jarFilePath, "module-info.class", moduleDescriptorData, entryTime, getJournalFile(jarFilePath));
+                if (digestManifest != null) {
+                    // Solo se escribió el final del JAR, por lo que tiene que leerse completo para calcular su resumen
+                    digestManifest.put(jarFilePath, Digests.sha256(jarFilePath));
+                }
+                return true;
+            }
+
+            File modularJarFile = getModularJarFile(jarFilePath);
+            File partialJarFile = new File(options.destDir, modularJarFile.getName() + ".part");
+            MessageDigest digest = digestManifest != null ? Digests.newSha256() : null;
+            try {
+                if (options.compression != null) {
+                    ZipRewriter.reencodeWithEntry(jarFilePath, partialJarFile, "module-info.class", moduleDescriptorData,
+                            entryTime, options.compression, compressionExecutor, options.compressionThreads, digest);
+                } else {
+                    ZipRewriter.copyWithEntry(jarFilePath, partialJarFile, "module-info.class", moduleDescriptorData, entryTime, digest);
                 }
+            } catch (IOException | RuntimeException e) {
+                // El JAR incompleto no se deja en destDir
+                Files.deleteIfExists(partialJarFile.toPath());
+                throw e;
             }
 
-            // Agrego el descriptor del módulo al JAR
-            jos.putNextEntry(new JarEntry("module-info.class"));
-            jos.write(moduleDescriptorData);
-            jos.flush();
-            jos.closeEntry();
+            if (digest != null) {
+                String outputDigest = Digests.toHex(digest.digest());
+                digestManifest.put(modularJarFile, outputDigest);
+                if (modularJarFile.length() == partialJarFile.length() && outputDigest.equals(Digests.sha256(modularJarFile))) {
+                    Files.delete(partialJarFile.toPath());
+                    return false;
+                }
+            }
+
+            Files.move(partialJarFile.toPath(), modularJarFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
         } catch (Exception e) {
             throw new RuntimeException("Error to patching original jar file. " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Estado de la modularización de un artefacto. Permite separar la modularización en fases, de forma que los
+     * descriptores de varios artefactos puedan compilarse juntos (ver {@link #processJarsInBatches(boolean[])}).
+     */
+    private static final class ArtifactJob {
+        private final File file;
+        private final Artifact artifact;
+        private final PrintStream out;
+        private final ByteArrayOutputStream output;
+        private final RunReport.ArtifactRecord record;
+
+        private ArtifactCache.Entry cacheKey;
+        private JarContent jarContent;
+        private String moduleSource;
+        private String storeKey;
+        private boolean storedDescriptor;
+        private byte[] descriptorData;
+        private boolean dependsOnPendingModules;
+        private Exception scanError;
+
+        private boolean finished;
+        private boolean success;
+        private RunReport.Status status;
+
+        private ArtifactJob(File file, Artifact artifact, PrintStream out, ByteArrayOutputStream output, RunReport.ArtifactRecord record) {
+            this.file = file;
+            this.artifact = artifact;
+            this.out = out;
+            this.output = output;
+            this.record = record;
+        }
+
+        /**
+         * @return Artefacto cuya salida se acumula hasta que se muestre completa
+         */
+        static ArtifactJob buffered(File file, Artifact artifact, RunReport.ArtifactRecord record) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            return new ArtifactJob(file, artifact, new PrintStream(output, true), output, record);
+        }
+
+        void finish(RunReport.Status status) {
+            this.finished = true;
+            this.success = status != RunReport.Status.FAILED;
+            this.status = status;
+            record.setStatus(status);
+        }
+    }
+}
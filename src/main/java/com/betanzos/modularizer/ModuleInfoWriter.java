@@ -0,0 +1,232 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Module;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.module.InvalidModuleDescriptorException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Genera el contenido de un archivo module-info.class directamente a partir de la definición del módulo, sin
+ * necesidad de crear el archivo module-info.java ni de compilarlo.<br/>
+ * <br/>
+ * El archivo generado contiene únicamente lo que produciría {@code javac} para el mismo descriptor: la clase
+ * {@code module-info} con el atributo {@code Module} (JVMS §4.7.25). Las directivas se escriben ordenadas
+ * alfabéticamente para que la salida sea siempre la misma para la misma definición.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ModuleInfoWriter {
+
+    // Versión del formato de archivo de clase de Java 9, la primera que soporta módulos
+    private static final int CLASS_FILE_MAJOR_VERSION = 53;
+
+    private static final int ACC_MODULE = 0x8000;
+    private static final int ACC_MANDATED = 0x8000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final String JAVA_BASE = "java.base";
+
+    /**
+     * Private for avoid class instantiation
+     */
+    private ModuleInfoWriter() {}
+
+    /**
+     * Genera el archivo module-info.class del módulo {@code module}.<br/>
+     * <br/>
+     * Al igual que en la generación del archivo module-info.java, si {@code module.exportsPackages == null} se
+     * exportarán todos los paquetes de {@code jarNonEmptyPackages}. Siempre se agrega la directiva
+     * {@code requires java.base} (marcada como {@code ACC_MANDATED}) tal y como lo hace el compilador.
+     *
+     * @param module Objeto con la definición del módulo.
+     * @param jarNonEmptyPackages Listado de los paquetes contenidos en el archivo JAR que al menos contiene una archivo
+     *                            .class.
+     *
+     * @return Contenido del archivo module-info.class
+     *
+     * @throws IOException Si la definición del módulo no es válida, por ejemplo si se exporta un paquete que no
+     *                     existe en el JAR o algún nombre no es un identificador Java válido.
+     */
+    static byte[] write(Module module, Set<String> jarNonEmptyPackages) throws IOException {
+        Set<String> exportsPackages = new TreeSet<>(module.getExportsPackages() != null ? module.getExportsPackages() : jarNonEmptyPackages);
+        for (String exportedPackage : exportsPackages) {
+            // Mismo error que reportaría javac, un módulo no puede exportar un paquete que no contiene
+            if (!jarNonEmptyPackages.contains(exportedPackage)) {
+                throw new IOException("Package '" + exportedPackage + "' is empty or does not exist in module '" + module.getName() + "'");
+            }
+        }
+
+        Set<String> requiresModules = new TreeSet<>();
+        if (module.getRequiresModules() != null) {
+            requiresModules.addAll(module.getRequiresModules());
+        }
+        if (!JAVA_BASE.equals(module.getName())) {
+            requiresModules.add(JAVA_BASE);
+        }
+
+        ConstantPool pool = new ConstantPool();
+        int thisClassIndex = pool.classInfo("module-info");
+        int moduleAttributeNameIndex = pool.utf8("Module");
+        int moduleNameIndex = pool.moduleInfo(module.getName());
+
+        List<int[]> requires = new ArrayList<>(requiresModules.size());
+        for (String requiredModule : requiresModules) {
+            int flags = JAVA_BASE.equals(requiredModule) ? ACC_MANDATED : 0;
+            requires.add(new int[] { pool.moduleInfo(requiredModule), flags });
+        }
+
+        List<Integer> exports = new ArrayList<>(exportsPackages.size());
+        for (String exportedPackage : exportsPackages) {
+            exports.add(pool.packageInfo(exportedPackage.replace('.', '/')));
+        }
+
+        // Atributo Module
+        ByteArrayOutputStream moduleAttribute = new ByteArrayOutputStream();
+        DataOutputStream mos = new DataOutputStream(moduleAttribute);
+        mos.writeShort(moduleNameIndex);
+        mos.writeShort(0);// module_flags
+        mos.writeShort(0);// module_version_index
+        mos.writeShort(requires.size());
+        for (int[] require : requires) {
+            mos.writeShort(require[0]);
+            mos.writeShort(require[1]);
+            mos.writeShort(0);// requires_version_index
+        }
+        mos.writeShort(exports.size());
+        for (int exportIndex : exports) {
+            mos.writeShort(exportIndex);
+            mos.writeShort(0);// exports_flags
+            mos.writeShort(0);// exports_to_count
+        }
+        mos.writeShort(0);// opens_count
+        mos.writeShort(0);// uses_count
+        mos.writeShort(0);// provides_count
+        mos.flush();
+
+        // Archivo de clase
+        ByteArrayOutputStream classFile = new ByteArrayOutputStream(256);
+        DataOutputStream cos = new DataOutputStream(classFile);
+        cos.writeInt(0xCAFEBABE);
+        cos.writeShort(0);
+        cos.writeShort(CLASS_FILE_MAJOR_VERSION);
+        pool.writeTo(cos);
+        cos.writeShort(ACC_MODULE);
+        cos.writeShort(thisClassIndex);
+        cos.writeShort(0);// super_class
+        cos.writeShort(0);// interfaces_count
+        cos.writeShort(0);// fields_count
+        cos.writeShort(0);// methods_count
+        cos.writeShort(1);// attributes_count
+        cos.writeShort(moduleAttributeNameIndex);
+        cos.writeInt(moduleAttribute.size());
+        moduleAttribute.writeTo(cos);
+        cos.flush();
+
+        byte[] descriptorData = classFile.toByteArray();
+
+        // Comprobar que la JVM acepta el descriptor generado. Esto valida, entre otras cosas, que los nombres de
+        // módulos y paquetes sean correctos
+        try {
+            ModuleDescriptor.read(ByteBuffer.wrap(descriptorData));
+        } catch (InvalidModuleDescriptorException e) {
+            throw new IOException("Invalid module descriptor for module '" + module.getName() + "'. " + e.getMessage(), e);
+        }
+
+        return descriptorData;
+    }
+
+    /**
+     * Tabla de constantes del archivo de clase. Las entradas iguales se reutilizan.
+     */
+    private static final class ConstantPool {
+        private final Map<String, Integer> entries = new LinkedHashMap<>();
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final DataOutputStream dos = new DataOutputStream(data);
+        private int nextIndex = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get("U" + value);
+            if (index == null) {
+                dos.writeByte(CONSTANT_UTF8);
+                dos.writeUTF(value);
+                index = register("U" + value);
+            }
+
+            return index;
+        }
+
+        int classInfo(String internalName) throws IOException {
+            return reference(CONSTANT_CLASS, "C", internalName);
+        }
+
+        int moduleInfo(String moduleName) throws IOException {
+            return reference(CONSTANT_MODULE, "M", moduleName);
+        }
+
+        int packageInfo(String internalName) throws IOException {
+            return reference(CONSTANT_PACKAGE, "P", internalName);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            dos.flush();
+            out.writeShort(nextIndex);
+            data.writeTo(out);
+        }
+
+        private int reference(int tag, String keyPrefix, String name) throws IOException {
+            Integer index = entries.get(keyPrefix + name);
+            if (index == null) {
+                int nameIndex = utf8(name);
+                dos.writeByte(tag);
+                dos.writeShort(nameIndex);
+                index = register(keyPrefix + name);
+            }
+
+            return index;
+        }
+
+        private int register(String key) {
+            int index = nextIndex++;
+            entries.put(key, index);
+            return index;
+        }
+    }
+}
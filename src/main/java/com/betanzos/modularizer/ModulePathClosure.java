@@ -0,0 +1,220 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.File;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Cierre transitivo de los módulos requeridos por cada artefacto del descriptor de modularización, tanto los definidos
+ * en el propio descriptor como los que se encuentran en el {@code --module-path}. Permite indicar al compilador solo
+ * los módulos que necesita para compilar el descriptor de cada artefacto, en lugar de todos los JARs modularizados y
+ * todo el {@code --module-path}, de forma que el coste de la resolución de módulos no crece con el tamaño del
+ * repositorio.<br/>
+ * <br/>
+ * Los módulos se identifican con el mismo índice que los artefactos en el {@link DependencyGraph} y los del
+ * {@code --module-path} a continuación de estos. El cierre de cada artefacto es un {@link BitSet} sobre esos índices y
+ * se calcula una sola vez, en orden topológico, como la unión de los cierres de los módulos que requiere directamente.
+ * Los módulos del JDK no forman parte del cierre, ya que el compilador siempre los encuentra.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ModulePathClosure {
+
+    private final int artifactCount;
+    private final BitSet[] closures;
+    private final List<File> externalFiles;
+
+    private ModulePathClosure(int artifactCount, BitSet[] closures, List<File> externalFiles) {
+        this.artifactCount = artifactCount;
+        this.closures = closures;
+        this.externalFiles = externalFiles;
+    }
+
+    /**
+     * Calcula el cierre de los módulos requeridos por cada artefacto del grafo {@code graph}.
+     *
+     * @implNote Los artefactos que forman parte de un ciclo no pueden modularizarse y su cierre queda vacío. Las
+     *           directivas {@code requires static} de los módulos del {@code --module-path} no se siguen, ya que el
+     *           compilador tampoco las resuelve.
+     *
+     * @param graph Grafo de dependencias de los artefactos
+     * @param levels Niveles de dependencias de los artefactos (ver {@link DependencyGraph#getTopologicalLevels()})
+     * @param hasJar Indicador, por identificador de artefacto, de si el artefacto tiene JAR en {@code sourceDir}. Los
+     *               módulos de los artefactos sin JAR se buscan en el {@code --module-path}.
+     * @param modulePathFinder Módulos del {@code --module-path}
+     *
+     * @return El cierre de los módulos requeridos por cada artefacto
+     */
+    static ModulePathClosure build(DependencyGraph graph, List<int[]> levels, boolean[] hasJar, ModuleFinder modulePathFinder) {
+        Builder builder = new Builder(graph.size(), modulePathFinder);
+
+        BitSet[] closures = new BitSet[graph.size()];
+        for (int[] level : levels) {
+            for (int id : level) {
+                BitSet closure = new BitSet();
+                for (int dependencyId : graph.getDependencies(id)) {
+                    if (hasJar[dependencyId]) {
+                        closure.set(dependencyId);
+                        closure.or(closures[dependencyId]);
+                    } else {
+                        builder.addExternal(closure, graph.getArtifact(dependencyId).getModule().getName());
+                    }
+                }
+
+                Set<String> requiresModules = graph.getArtifact(id).getModule().getRequiresModules();
+                if (requiresModules != null) {
+                    for (String moduleName : requiresModules) {
+                        if (graph.findByModuleName(moduleName) < 0) {
+                            builder.addExternal(closure, moduleName);
+                        }
+                    }
+                }
+
+                closures[id] = closure;
+            }
+        }
+
+        for (int id = 0; id < closures.length; id++) {
+            if (closures[id] == null) {
+                closures[id] = new BitSet();
+            }
+        }
+
+        return new ModulePathClosure(graph.size(), closures, builder.externalFiles);
+    }
+
+    /**
+     * @param ids Identificadores de los artefactos cuyos descriptores se compilan juntos
+     *
+     * @return Índices de los módulos que necesita el compilador para compilar los descriptores de los artefactos
+     *         {@code ids}, sin incluir los de estos artefactos
+     */
+    BitSet getClosure(Collection<Integer> ids) {
+        BitSet closure = new BitSet();
+        for (int id : ids) {
+            closure.or(closures[id]);
+        }
+        for (int id : ids) {
+            closure.clear(id);
+        }
+
+        return closure;
+    }
+
+    /**
+     * @param index Índice de un módulo del cierre
+     *
+     * @return {@code true} si el módulo es el de un artefacto del descriptor, cuyo identificador es {@code index}
+     */
+    boolean isArtifact(int index) {
+        return index < artifactCount;
+    }
+
+    /**
+     * @param index Índice de un módulo del cierre que no es el de un artefacto del descriptor
+     *
+     * @return Archivo o directorio del {@code --module-path} que contiene el módulo
+     */
+    File getExternalFile(int index) {
+        return externalFiles.get(index - artifactCount);
+    }
+
+    /**
+     * Identifica los módulos del {@code --module-path} a medida que son requeridos y calcula sus cierres.
+     */
+    private static final class Builder {
+        private final int artifactCount;
+        private final ModuleFinder modulePathFinder;
+        private final Map<String, Integer> externalIds = new HashMap<>();
+        private final List<File> externalFiles = new ArrayList<>();
+        private final List<BitSet> externalClosures = new ArrayList<>();
+
+        private Builder(int artifactCount, ModuleFinder modulePathFinder) {
+            this.artifactCount = artifactCount;
+            this.modulePathFinder = modulePathFinder;
+        }
+
+        /**
+         * Agrega a {@code closure} el módulo {@code moduleName} del {@code --module-path} y su cierre, si el módulo
+         * se encuentra en él.
+         */
+        void addExternal(BitSet closure, String moduleName) {
+            int externalId = findExternal(moduleName);
+            if (externalId >= 0) {
+                closure.set(artifactCount + externalId);
+                closure.or(externalClosures.get(externalId));
+            }
+        }
+
+        private int findExternal(String moduleName) {
+            Integer externalId = externalIds.get(moduleName);
+            if (externalId != null) {
+                return externalId;
+            }
+
+            Optional<ModuleReference> reference;
+            try {
+                reference = modulePathFinder.find(moduleName);
+            } catch (FindException e) {
+                // El compilador mostrará el error al no encontrar el módulo
+                reference = Optional.empty();
+            }
+
+            Optional<URI> location = reference.flatMap(ModuleReference::location);
+            if (!location.isPresent()) {
+                externalIds.put(moduleName, -1);
+                return -1;
+            }
+
+            // El índice se asigna antes de seguir sus dependencias para no volver a visitarlo si forman un ciclo
+            externalId = externalFiles.size();
+            externalIds.put(moduleName, externalId);
+            externalFiles.add(new File(location.get()));
+            BitSet closure = new BitSet();
+            externalClosures.add(closure);
+
+            for (ModuleDescriptor.Requires requires : reference.get().descriptor().requires()) {
+                if (!requires.modifiers().contains(ModuleDescriptor.Requires.Modifier.STATIC)) {
+                    addExternal(closure, requires.name());
+                }
+            }
+
+            return externalId;
+        }
+    }
+}
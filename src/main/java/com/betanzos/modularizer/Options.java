@@ -0,0 +1,390 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parámetros de una ejecución. Cada ejecución tiene los suyos, de forma que el modo demonio (ver {@link Daemon}) puede
+ * atender varias a la vez sin que interfieran entre ellas.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class Options {
+
+    static final int DEFAULT_SLOWEST = 5;
+    static final long DEFAULT_WATCH_DELAY = 500;
+
+    File descriptorFile;
+    File sourceDir;
+    boolean recursive;
+    List<String> includes = new ArrayList<>();
+    List<String> excludes = new ArrayList<>();
+    File destDir;
+    String modulePath;
+    String jdkHome;
+    DescriptorEngine engine = DescriptorEngine.JAVAC;
+    int threads = 1;
+    BatchMode batch;
+    InferRequiresMode inferRequires;
+    CompressionLevel compression;
+    int compressionThreads = Runtime.getRuntime().availableProcessors();
+    boolean inPlace;
+    boolean reproducible;
+    boolean useCache = true;
+    File descriptorStoreDir;
+    long descriptorStoreMaxSize = DescriptorStore.DEFAULT_MAX_SIZE;
+    File reportFile;
+    int slowest = DEFAULT_SLOWEST;
+    File jfrFile;
+    boolean watch;
+    long watchDelay = DEFAULT_WATCH_DELAY;
+
+    int shards = 1;
+    int shardIndex;
+    int shardCount;
+    String shardRun;
+
+    boolean daemon;
+    int daemonPort;
+
+    boolean showHelp;
+    boolean showVersion;
+
+    // Argumentos originales y directorio respecto al cual se resuelven, para lanzar los procesos de --shards
+    String[] args;
+    File workingDir;
+
+    /**
+     * Obtiene los parámetros de una ejecución a partir de sus argumentos de línea de comandos.
+     *
+     * @param args Argumentos de línea de comandos
+     * @param workingDir Directorio respecto al cual se resuelven las rutas relativas, o {@code null} para dejarlas
+     *                   relativas al directorio actual
+     * @param out Salida en la que se muestran los errores y advertencias de los argumentos
+     *
+     * @return Los parámetros de la ejecución. Los parámetros con valores no válidos mantienen su valor por defecto.
+     */
+    static Options parse(String[] args, File workingDir, PrintStream out) {
+        Options options = new Options();
+        options.args = args;
+        options.workingDir = workingDir;
+
+        for (int i = 0; i < args.length; i++) {
+            String item = args[i];
+
+            if (item.equals("--help") || item.equals("-h")) {
+                options.showHelp = true;
+                break;
+            } else if (item.equals("--version")) {
+                options.showVersion = true;
+            } else if (item.equals("--descriptor")) {
+                options.descriptorFile = resolve(workingDir, args[++i]);
+
+                if (!options.descriptorFile.exists()) {
+                    out.println("[ERROR] Descriptor file not exist (" + options.descriptorFile + ")");
+                    options.descriptorFile = null;
+                    return options;
+                }
+
+                // Un directorio contiene el descriptor dividido en varios archivos (ver Descriptor)
+                if (!options.descriptorFile.isFile() && !options.descriptorFile.isDirectory()) {
+                    out.println("[ERROR] Descriptor is not a file or directory (" + options.descriptorFile + ")");
+                    options.descriptorFile = null;
+                    return options;
+                }
+            } else if (item.equals("--source")) {
+                options.sourceDir = resolve(workingDir, args[++i]);
+
+                if (!options.sourceDir.exists()) {
+                    out.println("[ERROR] Source directory not exist (" + options.sourceDir + ")");
+                    options.sourceDir = null;
+                    return options;
+                }
+
+                if (!options.sourceDir.isDirectory()) {
+                    out.println("[ERROR] Source is not a directory (" + options.sourceDir + ")");
+                    options.sourceDir = null;
+                    return options;
+                }
+            } else if (item.equals("--recursive")) {
+                options.recursive = true;
+            } else if (item.equals("--include") || item.equals("--exclude")) {
+                String glob = args[++i];
+
+                try {
+                    SourceJarIndex.checkGlob(glob);
+                } catch (IllegalArgumentException e) {
+                    out.println("[ERROR] Invalid glob pattern '" + glob + "' for " + item + ". " + e.getMessage());
+                    options.descriptorFile = null;
+                    return options;
+                }
+
+                (item.equals("--include") ? options.includes : options.excludes).add(glob);
+            } else if (item.equals("--dest")) {
+                options.destDir = resolve(workingDir, args[++i]);
+
+                // Si no existe será creado al iniciar la modularización
+                if (options.destDir.exists() && !options.destDir.isDirectory()) {
+                    out.println("[ERROR] Destination is not a directory (" + options.destDir + ")");
+                    options.destDir = null;
+                    return options;
+                }
+            } else if (item.equals("--module-path")) {
+                options.modulePath = resolvePathGroup(workingDir, args[++i]);
+            } else if (item.equals("--jdk-home")) {
+                options.jdkHome = resolve(workingDir, args[++i]).getPath();
+
+                if (!Compiler.validateJdkHome(options.jdkHome)) {
+                    out.println("[WARN] Invalid JDK_HOME '" + options.jdkHome + "'. Default will be used.");
+                    options.jdkHome = null;
+                }
+            } else if (item.equals("--engine")) {
+                String engineName = args[++i];
+                options.engine = DescriptorEngine.fromName(engineName);
+
+                if (options.engine == null) {
+                    out.println("[WARN] Unknown engine '" + engineName + "'. Default will be used.");
+                    options.engine = DescriptorEngine.JAVAC;
+                }
+            } else if (item.equals("--batch")) {
+                String batchName = args[++i];
+                options.batch = BatchMode.fromName(batchName);
+
+                if (options.batch == null) {
+                    out.println("[WARN] Unknown batch mode '" + batchName + "'. Descriptors will be compiled one by one.");
+                }
+            } else if (item.equals("--infer-requires")) {
+                String modeName = args[++i];
+                options.inferRequires = InferRequiresMode.fromName(modeName);
+
+                if (options.inferRequires == null) {
+                    out.println("[WARN] Unknown infer requires mode '" + modeName + "'. Required modules will not be inferred.");
+                }
+            } else if (item.equals("--compression")) {
+                String levelName = args[++i];
+                options.compression = CompressionLevel.fromName(levelName);
+
+                if (options.compression == null) {
+                    out.println("[WARN] Unknown compression level '" + levelName + "'. JAR entries will be copied without compressing them again.");
+                }
+            } else if (item.equals("--compression-threads")) {
+                String threadsValue = args[++i];
+
+                try {
+                    options.compressionThreads = Integer.parseInt(threadsValue);
+                } catch (NumberFormatException e) {
+                    options.compressionThreads = 0;
+                }
+
+                if (options.compressionThreads < 1) {
+                    out.println("[WARN] Invalid number of compression threads '" + threadsValue + "'. Default will be used.");
+                    options.compressionThreads = Runtime.getRuntime().availableProcessors();
+                }
+            } else if (item.equals("--in-place")) {
+                options.inPlace = true;
+            } else if (item.equals("--reproducible")) {
+                options.reproducible = true;
+            } else if (item.equals("--no-cache")) {
+                options.useCache = false;
+            } else if (item.equals("--descriptor-store")) {
+                options.descriptorStoreDir = resolve(workingDir, args[++i]);
+            } else if (item.equals("--descriptor-store-size")) {
+                String sizeValue = args[++i];
+
+                long sizeMB;
+                try {
+                    sizeMB = Long.parseLong(sizeValue);
+                } catch (NumberFormatException e) {
+                    sizeMB = 0;
+                }
+
+                if (sizeMB < 1) {
+                    out.println("[WARN] Invalid descriptor store size '" + sizeValue + "'. Default will be used.");
+                } else {
+                    options.descriptorStoreMaxSize = sizeMB * 1024 * 1024;
+                }
+            } else if (item.equals("--report")) {
+                options.reportFile = resolve(workingDir, args[++i]);
+            } else if (item.equals("--jfr")) {
+                options.jfrFile = resolve(workingDir, args[++i]);
+            } else if (item.equals("--slowest")) {
+                String slowestValue = args[++i];
+
+                try {
+                    options.slowest = Integer.parseInt(slowestValue);
+                } catch (NumberFormatException e) {
+                    options.slowest = -1;
+                }
+
+                if (options.slowest < 0) {
+                    out.println("[WARN] Invalid number of slowest JAR files '" + slowestValue + "'. Default will be used.");
+                    options.slowest = DEFAULT_SLOWEST;
+                }
+            } else if (item.equals("--threads")) {
+                String threadsValue = args[++i];
+
+                try {
+                    options.threads = Integer.parseInt(threadsValue);
+                } catch (NumberFormatException e) {
+                    options.threads = 0;
+                }
+
+                if (options.threads < 1) {
+                    out.println("[WARN] Invalid number of threads '" + threadsValue + "'. Default will be used.");
+                    options.threads = 1;
+                }
+            } else if (item.equals("--watch")) {
+                options.watch = true;
+            } else if (item.equals("--watch-delay")) {
+                String delayValue = args[++i];
+
+                try {
+                    options.watchDelay = Long.parseLong(delayValue);
+                } catch (NumberFormatException e) {
+                    options.watchDelay = -1;
+                }
+
+                if (options.watchDelay < 0) {
+                    out.println("[WARN] Invalid watch delay '" + delayValue + "'. Default will be used.");
+                    options.watchDelay = DEFAULT_WATCH_DELAY;
+                }
+            } else if (item.equals("--shards")) {
+                String shardsValue = args[++i];
+
+                try {
+                    options.shards = Integer.parseInt(shardsValue);
+                } catch (NumberFormatException e) {
+                    options.shards = 0;
+                }
+
+                if (options.shards < 1) {
+                    out.println("[WARN] Invalid number of worker processes '" + shardsValue + "'. A single process will be used.");
+                    options.shards = 1;
+                }
+            } else if (item.equals("--shard")) {
+                String shardValue = args[++i];
+                String[] parts = shardValue.split("/");
+
+                try {
+                    options.shardIndex = Integer.parseInt(parts[0]);
+                    options.shardCount = parts.length == 2 ? Integer.parseInt(parts[1]) : 0;
+                } catch (NumberFormatException e) {
+                    options.shardCount = 0;
+                }
+
+                // Un valor no válido haría que el proceso modularizara JARs de otros procesos
+                if (options.shardCount < 1 || options.shardIndex < 1 || options.shardIndex > options.shardCount) {
+                    out.println("[ERROR] Invalid shard '" + shardValue + "'. Expected <index>/<count>, with index from 1 to count.");
+                    options.descriptorFile = null;
+                    return options;
+                }
+            } else if (item.equals("--shard-run")) {
+                options.shardRun = args[++i];
+            } else if (item.equals("--daemon")) {
+                options.daemon = true;
+            } else if (item.equals("--daemon-port")) {
+                String portValue = args[++i];
+
+                try {
+                    options.daemonPort = Integer.parseInt(portValue);
+                } catch (NumberFormatException e) {
+                    options.daemonPort = -1;
+                }
+
+                if (options.daemonPort < 0 || options.daemonPort > 0xFFFF) {
+                    out.println("[WARN] Invalid daemon port '" + portValue + "'. A free port will be used.");
+                    options.daemonPort = 0;
+                }
+            }
+        }
+
+        if (options.shardIndex > 0 && (options.shardRun == null || options.shardRun.isEmpty() || options.shardRun.contains(File.separator))) {
+            out.println("[ERROR] --shard requires --shard-run <id>, with the same id in all the worker processes.");
+            options.descriptorFile = null;
+            return options;
+        }
+
+        // Cada proceso de una modularización repartida procesa sus JARs uno detrás de otro, esperando por los de otros
+        // procesos, y no se mantiene en ejecución
+        if (options.shards > 1 || options.shardIndex > 0) {
+            if (options.threads > 1 || options.batch != null) {
+                out.println("[WARN] --threads and --batch can not be used with --shards. Each worker process modularizes its JAR files through a pipeline.");
+                options.threads = 1;
+                options.batch = null;
+            }
+            if (options.watch) {
+                out.println("[WARN] Watch mode can not be used with --shards.");
+                options.watch = false;
+            }
+        }
+
+        // SourceWatcher solo vigila los JARs del propio directorio sourceDir
+        if (options.recursive && options.watch) {
+            out.println("[WARN] Watch mode can not be used with --recursive.");
+            options.watch = false;
+        }
+
+        // La entrada module-info.class se agrega al JAR original sin copiar las demás, por lo que no se pueden volver a
+        // comprimir
+        if (options.inPlace && options.compression != null) {
+            out.println("[WARN] --compression can not be used with --in-place. JAR entries will not be compressed again.");
+            options.compression = null;
+        }
+
+        return options;
+    }
+
+    private static File resolve(File workingDir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() || workingDir == null ? file : new File(workingDir, path);
+    }
+
+    /**
+     * Resuelve cada una de las rutas de un grupo de rutas ({@code --module-path}).
+     */
+    private static String resolvePathGroup(File workingDir, String pathGroup) {
+        if (workingDir == null) {
+            return pathGroup;
+        }
+
+        StringBuilder resolved = new StringBuilder();
+        for (String path : pathGroup.split(File.pathSeparator)) {
+            if (path.isEmpty()) {
+                continue;
+            }
+
+            if (resolved.length() > 0) {
+                resolved.append(File.pathSeparator);
+            }
+            resolved.append(resolve(workingDir, path));
+        }
+
+        return resolved.toString();
+    }
+}
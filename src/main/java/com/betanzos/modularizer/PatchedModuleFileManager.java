@@ -0,0 +1,174 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Administrador de archivos para compilar el descriptor de un módulo sin extraer el contenido del JAR ni escribir
+ * nada en disco.<br/>
+ * <br/>
+ * El compilador solo necesita saber qué paquetes contiene el módulo (para validar las directivas {@code exports}),
+ * por lo que el contenido del JAR se presenta como si hubiera sido indicado con {@code --patch-module}, pero
+ * construido a partir de los nombres de las entradas ({@link JarContent}). Estas entradas nunca son leídas. El archivo
+ * module-info.class generado se escribe en {@code classOutput}.<br/>
+ * <br/>
+ * Cualquier otra operación se delega en el {@link StandardJavaFileManager} compartido por todas las compilaciones.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class PatchedModuleFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final String moduleName;
+    private final JarContent jarContent;
+    private final OutputStream classOutput;
+    private final Location patchLocation;
+
+    PatchedModuleFileManager(StandardJavaFileManager fileManager, String moduleName, JarContent jarContent, OutputStream classOutput) {
+        super(fileManager);
+        this.moduleName = moduleName;
+        this.jarContent = jarContent;
+        this.classOutput = classOutput;
+        this.patchLocation = new Location() {
+            @Override
+            public String getName() {
+                return StandardLocation.PATCH_MODULE_PATH.getName() + "[" + moduleName + "]";
+            }
+
+            @Override
+            public boolean isOutputLocation() {
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public boolean hasLocation(Location location) {
+        return location == StandardLocation.PATCH_MODULE_PATH || location == patchLocation || super.hasLocation(location);
+    }
+
+    @Override
+    public Location getLocationForModule(Location location, String moduleName) throws IOException {
+        if (location == StandardLocation.PATCH_MODULE_PATH) {
+            return this.moduleName.equals(moduleName) ? patchLocation : null;
+        }
+
+        return super.getLocationForModule(location, moduleName);
+    }
+
+    @Override
+    public Iterable<Set<Location>> listLocationsForModules(Location location) throws IOException {
+        if (location == StandardLocation.PATCH_MODULE_PATH) {
+            return Collections.singletonList(Collections.singleton(patchLocation));
+        }
+
+        return super.listLocationsForModules(location);
+    }
+
+    @Override
+    public String inferModuleName(Location location) throws IOException {
+        if (location == patchLocation) {
+            return moduleName;
+        }
+
+        return super.inferModuleName(location);
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        if (location != patchLocation) {
+            return super.list(location, packageName, kinds, recurse);
+        }
+
+        List<JavaFileObject> files = new ArrayList<>();
+        if (kinds.contains(JavaFileObject.Kind.CLASS)) {
+            for (String className : jarContent.getClasses(packageName)) {
+                files.add(new JarClassFileObject(className));
+            }
+        }
+
+        return files;
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof JarClassFileObject) {
+            return ((JarClassFileObject) file).binaryName;
+        }
+
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean contains(Location location, FileObject file) throws IOException {
+        if (file instanceof JarClassFileObject) {
+            return location == patchLocation;
+        }
+
+        return super.contains(location, file);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+        return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+            @Override
+            public OutputStream openOutputStream() {
+                return classOutput;
+            }
+        };
+    }
+
+    /**
+     * Archivo de clase del JAR del que solo se conoce el nombre
+     */
+    private final class JarClassFileObject extends SimpleJavaFileObject {
+        private final String binaryName;
+
+        JarClassFileObject(String binaryName) {
+            super(URI.create(jarContent.getFile().toURI() + "!/" + binaryName.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.binaryName = binaryName;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            throw new FileNotFoundException("Content of '" + toUri() + "' is not available");
+        }
+    }
+}
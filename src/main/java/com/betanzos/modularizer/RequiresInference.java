@@ -0,0 +1,353 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.betanzos.modularizer.pojo.Artifact;
+import com.betanzos.modularizer.pojo.Module;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Infiere los módulos que requiere cada artefacto a partir de los paquetes referenciados por sus archivos de clase
+ * (ver {@link ClassReferenceScanner}). Los JARs se analizan en paralelo y cada paquete referenciado se resuelve, en
+ * este orden, contra los paquetes exportados por los módulos del sistema (JDK en ejecución), los paquetes de los demás
+ * artefactos del descriptor de modularización y los módulos del {@code --module-path}.<br/>
+ * <br/>
+ * Los módulos inferidos completan o comprueban los {@code requiresModules} del descriptor según el modo
+ * ({@link InferRequiresMode}). El módulo {@code java.base} nunca se agrega, ya que todos los módulos lo requieren.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class RequiresInference {
+
+    private static final String BASE_MODULE_NAME = "java.base";
+    private static final int MAX_UNRESOLVED_SHOWN = 5;
+
+    private final ModuleFinder modulePathFinder;
+    private final PrintStream out;
+
+    /**
+     * @param modulePathFinder Módulos del {@code --module-path}
+     * @param out Salida en la que se muestran los módulos inferidos y las advertencias
+     */
+    RequiresInference(ModuleFinder modulePathFinder, PrintStream out) {
+        this.modulePathFinder = modulePathFinder;
+        this.out = out;
+    }
+
+    /**
+     * Infiere los módulos requeridos por los artefactos de {@code descriptor} cuyo JAR está en {@code jarFilesByName}.
+     * En el modo {@link InferRequiresMode#FILL} se modifican los {@code requiresModules} de sus módulos.
+     *
+     * @param descriptor Descriptor de modularización
+     * @param jarFilesByName Archivos JAR del directorio {@code sourceDir}, por nombre
+     * @param mode Uso de los módulos inferidos
+     * @param threads Cantidad de JARs analizados al mismo tiempo
+     *
+     * @return Cantidad de JARs que no pudieron analizarse
+     *
+     * @throws InterruptedException Si el hilo es interrumpido mientras espera el análisis de los JARs
+     */
+    int infer(Descriptor descriptor, Map<String, File> jarFilesByName, InferRequiresMode mode, int threads) throws InterruptedException {
+        List<Artifact> artifacts = new ArrayList<>();
+        for (Artifact artifact : descriptor.getArtifacts()) {
+            if (artifact.getModule() != null && jarFilesByName.containsKey(artifact.getName())) {
+                artifacts.add(artifact);
+            }
+        }
+
+        // Análisis de los JARs en paralelo. Cada hilo reutiliza su analizador y su buffer de lectura
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        List<JarReferences> references = new ArrayList<>(artifacts.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<JarReferences>> futures = new ArrayList<>(artifacts.size());
+            for (Artifact artifact : artifacts) {
+                File file = jarFilesByName.get(artifact.getName());
+                futures.add(executor.submit(() -> workers.get().scan(file)));
+            }
+
+            for (Future<JarReferences> future : futures) {
+                try {
+                    references.add(future.get());
+                } catch (ExecutionException e) {
+                    references.add(new JarReferences(null, null, e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause())));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Índice de paquetes. El primer módulo que contiene un paquete es el que lo aporta
+        Map<String, String> modulesByPackage = new HashMap<>(SystemModules.MODULES_BY_PACKAGE);
+        for (int i = 0; i < artifacts.size(); i++) {
+            if (references.get(i).packages != null) {
+                String moduleName = artifacts.get(i).getModule().getName();
+                for (String packageName : references.get(i).packages) {
+                    modulesByPackage.putIfAbsent(packageName, moduleName);
+                }
+            }
+        }
+        addModulePathPackages(modulesByPackage);
+
+        int errors = 0;
+        for (int i = 0; i < artifacts.size(); i++) {
+            Artifact artifact = artifacts.get(i);
+            JarReferences jarReferences = references.get(i);
+            if (jarReferences.error != null) {
+                out.println("[ERROR] Can not infer required modules of '" + artifact.getName() + "'. " + jarReferences.error.getMessage());
+                errors++;
+                continue;
+            }
+
+            if (jarReferences.invalidClassCount > 0) {
+                out.println("[WARN] " + jarReferences.invalidClassCount + " invalid class files in '" + artifact.getName() + "' were ignored while inferring required modules.");
+            }
+
+            Module module = artifact.getModule();
+            Set<String> inferred = new TreeSet<>();
+            Set<String> unresolved = new TreeSet<>();
+            for (String packageName : jarReferences.referencedPackages) {
+                if (jarReferences.packages.contains(packageName)) {
+                    continue;
+                }
+
+                String moduleName = modulesByPackage.get(packageName);
+                if (moduleName == null) {
+                    unresolved.add(packageName);
+                } else if (!moduleName.equals(module.getName()) && !moduleName.equals(BASE_MODULE_NAME)) {
+                    inferred.add(moduleName);
+                }
+            }
+
+            applyInferred(artifact, inferred, mode);
+
+            if (!unresolved.isEmpty()) {
+                out.println("[WARN] '" + artifact.getName() + "' references packages not found in the JDK, the descriptor or the module path: " + describe(unresolved));
+            }
+        }
+
+        return errors;
+    }
+
+    private void applyInferred(Artifact artifact, Set<String> inferred, InferRequiresMode mode) {
+        Module module = artifact.getModule();
+        Set<String> declared = module.getRequiresModules() != null ? module.getRequiresModules() : new HashSet<>();
+
+        Set<String> missing = new TreeSet<>(inferred);
+        missing.removeAll(declared);
+
+        if (mode == InferRequiresMode.FILL) {
+            if (!missing.isEmpty()) {
+                Set<String> requiresModules = new HashSet<>(declared);
+                requiresModules.addAll(missing);
+                module.setRequiresModules(requiresModules);
+                out.println("[INFO] Module '" + module.getName() + "' requires inferred modules " + missing);
+            }
+        } else {
+            Set<String> unused = new TreeSet<>(declared);
+            unused.removeAll(inferred);
+            unused.remove(BASE_MODULE_NAME);
+
+            if (!missing.isEmpty()) {
+                out.println("[WARN] Module '" + module.getName() + "' does not declare the required modules " + missing);
+            }
+            if (!unused.isEmpty()) {
+                out.println("[WARN] Module '" + module.getName() + "' declares required modules not referenced by its classes " + unused);
+            }
+        }
+    }
+
+    private void addModulePathPackages(Map<String, String> modulesByPackage) {
+        Set<ModuleReference> references;
+        try {
+            references = modulePathFinder.findAll();
+        } catch (FindException e) {
+            out.println("[WARN] Can not read the module path to infer required modules. " + e.getMessage());
+            return;
+        }
+
+        for (ModuleReference reference : references) {
+            addPackages(reference.descriptor(), modulesByPackage);
+        }
+    }
+
+    /**
+     * Agrega los paquetes que el módulo {@code descriptor} pone a disposición de cualquier otro módulo: los exportados
+     * sin restricciones, o todos en el caso de los módulos automáticos.
+     */
+    private static void addPackages(ModuleDescriptor descriptor, Map<String, String> modulesByPackage) {
+        if (descriptor.isAutomatic()) {
+            for (String packageName : descriptor.packages()) {
+                modulesByPackage.putIfAbsent(packageName, descriptor.name());
+            }
+        } else {
+            for (ModuleDescriptor.Exports exports : descriptor.exports()) {
+                if (!exports.isQualified()) {
+                    modulesByPackage.putIfAbsent(exports.source(), descriptor.name());
+                }
+            }
+        }
+    }
+
+    private static String describe(Set<String> packages) {
+        StringBuilder text = new StringBuilder();
+        int shown = 0;
+        for (String packageName : packages) {
+            if (shown == MAX_UNRESOLVED_SHOWN) {
+                text.append(" and ").append(packages.size() - shown).append(" more");
+                break;
+            }
+
+            if (shown > 0) {
+                text.append(", ");
+            }
+            text.append(packageName);
+            shown++;
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Paquetes exportados por los módulos del sistema. Se calculan una sola vez por proceso.
+     */
+    private static final class SystemModules {
+        static final Map<String, String> MODULES_BY_PACKAGE;
+
+        static {
+            Map<String, String> modulesByPackage = new HashMap<>();
+            for (ModuleReference reference : ModuleFinder.ofSystem().findAll()) {
+                addPackages(reference.descriptor(), modulesByPackage);
+            }
+            MODULES_BY_PACKAGE = modulesByPackage;
+        }
+    }
+
+    /**
+     * Estado de cada hilo de análisis.
+     */
+    private static final class Worker {
+        private final ClassReferenceScanner scanner = new ClassReferenceScanner();
+        private byte[] buffer = new byte[64 * 1024];
+
+        /**
+         * Obtiene los paquetes que contiene y los que referencia el JAR {@code file}. Los archivos de clase bajo
+         * {@code META-INF/} y los descriptores de módulo no se tienen en cuenta.
+         */
+        JarReferences scan(File file) throws IOException {
+            Set<String> packages = new HashSet<>();
+            int invalidClassCount = 0;
+
+            scanner.reset();
+            try (ZipFile zipFile = new ZipFile(file)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (entry.isDirectory() || !name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                        continue;
+                    }
+
+                    int separator = name.lastIndexOf('/');
+                    if (separator > 0) {
+                        packages.add(name.substring(0, separator).replace('/', '.'));
+                    }
+
+                    int length;
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        length = read(input, entry.getSize());
+                    }
+
+                    try {
+                        scanner.scan(buffer, length);
+                    } catch (IOException e) {
+                        invalidClassCount++;
+                    }
+                }
+            }
+
+            JarReferences references = new JarReferences(packages, scanner.getPackages(), null);
+            references.invalidClassCount = invalidClassCount;
+            return references;
+        }
+
+        private int read(InputStream input, long size) throws IOException {
+            if (size > buffer.length) {
+                buffer = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, buffer.length * 2L))];
+            }
+
+            int length = 0;
+            int count;
+            while ((count = input.read(buffer, length, buffer.length - length)) > 0) {
+                length += count;
+                if (length == buffer.length) {
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                }
+            }
+
+            return length;
+        }
+    }
+
+    /**
+     * Resultado del análisis de un JAR.
+     */
+    private static final class JarReferences {
+        final Set<String> packages;
+        final Set<String> referencedPackages;
+        final IOException error;
+        int invalidClassCount;
+
+        JarReferences(Set<String> packages, Set<String> referencedPackages, IOException error) {
+            this.packages = packages;
+            this.referencedPackages = referencedPackages;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Tiempos y volumen de datos de una ejecución. Cada artefacto registra el tiempo empleado en cada una de las fases de
+ * su modularización ({@link Phase}) y los bytes leídos y escritos, y la ejecución registra el tiempo de las fases que
+ * no corresponden a ningún artefacto en particular (deserialización del descriptor, ordenamiento, compilación en lote
+ * con --batch, etc.).<br/>
+ * <br/>
+ * El informe puede escribirse en un archivo (parámetro {@code --report}) en formato JSON o CSV, según la extensión
+ * del archivo, con una fila por artefacto y los percentiles 50, 95 y 99, el máximo y el total de cada fase.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class RunReport {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int[] PERCENTILES = {50, 95, 99};
+
+    /**
+     * Fases de la modularización de un artefacto
+     */
+    enum Phase {
+        /** Cálculo de la clave y comprobación de la caché, y actualización de esta al terminar */
+        CACHE("cache"),
+        /** Análisis de las entradas del JAR (ver {@link JarContent}) */
+        SCAN("scan"),
+        /** Generación del descriptor del módulo, module-info.java o module-info.class */
+        GENERATE("generate"),
+        /** Búsqueda y registro del descriptor en el almacén de descriptores */
+        STORE("store"),
+        /** Compilación del descriptor. En lote se reparte el tiempo de cada compilación entre sus módulos */
+        COMPILE("compile"),
+        /** Creación del JAR modularizado */
+        PATCH("patch");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Resultado de la modularización de un artefacto
+     */
+    enum Status {
+        MODULARIZED("modularized"),
+        UP_TO_DATE("up-to-date"),
+        FAILED("failed");
+
+        private final String label;
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        String getLabel() {
+            return label;
+        }
+    }
+
+    private final Map<String, Long> runPhaseNanos = new LinkedHashMap<>();
+    private final List<ArtifactRecord> artifacts = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Registra un nuevo artefacto.
+     *
+     * @param artifactName Nombre del archivo JAR
+     * @param moduleName Nombre del módulo a crear
+     *
+     * @return Registro en el que se anotan los tiempos del artefacto
+     */
+    ArtifactRecord addArtifact(String artifactName, String moduleName) {
+        ArtifactRecord record = new ArtifactRecord(artifactName, moduleName);
+        artifacts.add(record);
+
+        return record;
+    }
+
+    /**
+     * Suma a la fase de la ejecución {@code name} el tiempo transcurrido desde {@code startNanos}.
+     *
+     * @param name Nombre de la fase
+     * @param startNanos Valor de {@link System#nanoTime()} al iniciar la fase
+     */
+    synchronized void addRunTime(String name, long startNanos) {
+        runPhaseNanos.merge(name, System.nanoTime() - startNanos, Long::sum);
+    }
+
+    /**
+     * Muestra los {@code count} artefactos cuya modularización tardó más tiempo, con el tiempo de cada fase.
+     */
+    void printSlowest(PrintStream out, int count) {
+        List<ArtifactRecord> slowest = getSortedArtifacts(Comparator.comparingLong(ArtifactRecord::getTotalNanos).reversed());
+        if (count < 1 || slowest.isEmpty()) {
+            return;
+        }
+
+        out.println("  Slowest JAR files:");
+        for (ArtifactRecord record : slowest.subList(0, Math.min(count, slowest.size()))) {
+            StringBuilder phases = new StringBuilder();
+            for (Phase phase : Phase.values()) {
+                if (record.phaseNanos[phase.ordinal()] > 0) {
+                    phases.append(phases.length() > 0 ? ", " : "")
+                            .append(phase.getLabel()).append(' ').append(formatMillis(record.phaseNanos[phase.ordinal()])).append(" ms");
+                }
+            }
+
+            out.printf("    %10s ms  %s (%s)%n", formatMillis(record.getTotalNanos()), record.artifactName, phases);
+        }
+        out.println();
+    }
+
+    /**
+     * Escribe el informe en el archivo {@code file}. Si su extensión es {@code .csv} se escribe en formato CSV, en
+     * caso contrario en formato JSON.
+     *
+     * @param file Archivo del informe
+     * @param durationMillis Duración total de la ejecución
+     *
+     * @throws IOException Si ocurre un error escribiendo el archivo
+     */
+    void write(File file, long durationMillis) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can not create directory '" + parent + "'");
+        }
+
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+            writeCsv(file);
+        } else {
+            writeJson(file, durationMillis);
+        }
+    }
+
+    private void writeJson(File file, long durationMillis) throws IOException {
+        List<ArtifactRecord> records = getSortedArtifacts(null);
+
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("version", FORMAT_VERSION);
+        content.put("durationMillis", durationMillis);
+
+        Map<String, Object> runPhases = new LinkedHashMap<>();
+        synchronized (this) {
+            runPhaseNanos.forEach((name, nanos) -> runPhases.put(name, toMillis(nanos)));
+        }
+        content.put("runPhasesMillis", runPhases);
+
+        Map<String, Long> countByStatus = new LinkedHashMap<>();
+        for (Status status : Status.values()) {
+            countByStatus.put(status.getLabel(), records.stream().filter(r -> r.status == status).count());
+        }
+        content.put("artifactsByStatus", countByStatus);
+
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            phases.put(phase.getLabel(), toMillis(getStatistics(records, r -> r.phaseNanos[phase.ordinal()])));
+        }
+        phases.put("total", toMillis(getStatistics(records, ArtifactRecord::getTotalNanos)));
+        content.put("phasesMillis", phases);
+
+        content.put("bytesRead", getStatistics(records, r -> r.bytesRead));
+        content.put("bytesWritten", getStatistics(records, r -> r.bytesWritten));
+
+        List<Map<String, Object>> rows = new ArrayList<>(records.size());
+        for (ArtifactRecord record : records) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("name", record.artifactName);
+            row.put("module", record.moduleName);
+            row.put("status", record.status != null ? record.status.getLabel() : null);
+
+            Map<String, Object> artifactPhases = new LinkedHashMap<>();
+            for (Phase phase : Phase.values()) {
+                if (record.phaseNanos[phase.ordinal()] > 0) {
+                    artifactPhases.put(phase.getLabel(), toMillis(record.phaseNanos[phase.ordinal()]));
+                }
+            }
+            row.put("phasesMillis", artifactPhases);
+            row.put("totalMillis", toMillis(record.getTotalNanos()));
+            row.put("bytesRead", record.bytesRead);
+            row.put("bytesWritten", record.bytesWritten);
+            rows.add(row);
+        }
+        content.put("artifacts", rows);
+
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, content);
+    }
+
+    /**
+     * El formato CSV tiene una fila por artefacto seguida de una fila con cada estadística (percentiles, máximo y
+     * total) de todas las columnas numéricas. Las filas de estadísticas tienen {@code *} como nombre de artefacto y
+     * el nombre de la estadística como estado.
+     */
+    private void writeCsv(File file) throws IOException {
+        List<ArtifactRecord> records = getSortedArtifacts(null);
+
+        List<ToLongFunction<ArtifactRecord>> columns = new ArrayList<>();
+        StringBuilder header = new StringBuilder("artifact,module,status");
+        for (Phase phase : Phase.values()) {
+            header.append(',').append(phase.getLabel()).append("_ms");
+            columns.add(r -> r.phaseNanos[phase.ordinal()]);
+        }
+        header.append(",total_ms,bytes_read,bytes_written");
+        columns.add(ArtifactRecord::getTotalNanos);
+        columns.add(r -> r.bytesRead);
+        columns.add(r -> r.bytesWritten);
+        int timeColumns = Phase.values().length + 1;
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            writer.println(header);
+
+            for (ArtifactRecord record : records) {
+                writer.print(csvValue(record.artifactName) + ',' + csvValue(record.moduleName) + ',' + (record.status != null ? record.status.getLabel() : ""));
+                for (int i = 0; i < columns.size(); i++) {
+                    long value = columns.get(i).applyAsLong(record);
+                    writer.print(',');
+                    writer.print(i < timeColumns ? formatMillis(value) : String.valueOf(value));
+                }
+                writer.println();
+            }
+
+            List<Map<String, Long>> statistics = new ArrayList<>(columns.size());
+            for (ToLongFunction<ArtifactRecord> column : columns) {
+                statistics.add(getStatistics(records, column));
+            }
+
+            for (String statistic : statistics.get(0).keySet()) {
+                if (statistic.equals("count")) {
+                    continue;
+                }
+
+                writer.print("*,," + statistic);
+                for (int i = 0; i < columns.size(); i++) {
+                    long value = statistics.get(i).get(statistic);
+                    writer.print(',');
+                    writer.print(i < timeColumns ? formatMillis(value) : String.valueOf(value));
+                }
+                writer.println();
+            }
+        }
+    }
+
+    /**
+     * Calcula los percentiles (por el método del rango más cercano), el máximo y el total de un valor de los
+     * artefactos. Los artefactos en los que el valor es 0 (la fase no se ejecutó) no se tienen en cuenta en los
+     * percentiles.
+     */
+    private static Map<String, Long> getStatistics(List<ArtifactRecord> records, ToLongFunction<ArtifactRecord> value) {
+        long[] values = records.stream().mapToLong(value).filter(v -> v > 0).toArray();
+        Arrays.sort(values);
+
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("count", (long) values.length);
+        for (int percentile : PERCENTILES) {
+            statistics.put("p" + percentile, values.length > 0 ? values[(int) Math.ceil(percentile / 100.0 * values.length) - 1] : 0);
+        }
+        statistics.put("max", values.length > 0 ? values[values.length - 1] : 0);
+        statistics.put("total", Arrays.stream(values).sum());
+
+        return statistics;
+    }
+
+    /**
+     * Convierte a milisegundos las estadísticas de tiempo calculadas con {@link #getStatistics(List, ToLongFunction)},
+     * excepto la cantidad de artefactos.
+     */
+    private static Map<String, Object> toMillis(Map<String, Long> statistics) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        statistics.forEach((name, value) -> result.put(name, name.equals("count") ? (Object) value : toMillis(value)));
+
+        return result;
+    }
+
+    private List<ArtifactRecord> getSortedArtifacts(Comparator<ArtifactRecord> comparator) {
+        List<ArtifactRecord> records;
+        synchronized (artifacts) {
+            records = new ArrayList<>(artifacts);
+        }
+
+        if (comparator != null) {
+            records.sort(comparator);
+        }
+
+        return records;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String csvValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Tiempos y bytes leídos y escritos durante la modularización de un artefacto. Un artefacto solo es procesado por
+     * un hilo a la vez, por lo que no es necesario sincronizar el acceso a sus datos.
+     */
+    static final class ArtifactRecord {
+        private final String artifactName;
+        private final String moduleName;
+        private final long[] phaseNanos = new long[Phase.values().length];
+        private long bytesRead;
+        private long bytesWritten;
+        private Status status;
+
+        private ArtifactRecord(String artifactName, String moduleName) {
+            this.artifactName = artifactName;
+            this.moduleName = moduleName;
+        }
+
+        /**
+         * Suma a la fase {@code phase} el tiempo transcurrido desde {@code startNanos}.
+         *
+         * @param phase Fase
+         * @param startNanos Valor de {@link System#nanoTime()} al iniciar la fase
+         */
+        void addTime(Phase phase, long startNanos) {
+            addNanos(phase, System.nanoTime() - startNanos);
+        }
+
+        void addNanos(Phase phase, long nanos) {
+            phaseNanos[phase.ordinal()] += nanos;
+        }
+
+        void addBytesRead(long bytes) {
+            bytesRead += bytes;
+        }
+
+        void addBytesWritten(long bytes) {
+            bytesWritten += bytes;
+        }
+
+        void setStatus(Status status) {
+            this.status = status;
+        }
+
+        long getTotalNanos() {
+            return Arrays.stream(phaseNanos).sum();
+        }
+    }
+}
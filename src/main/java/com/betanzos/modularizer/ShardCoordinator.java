@@ -0,0 +1,310 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Modularización repartida entre varios procesos ({@code --shards <n>}). El coordinador lanza {@code n} procesos en
+ * este mismo equipo con los mismos argumentos más {@code --shard <i>/<n>} y {@code --shard-run <id>}. Cada uno
+ * modulariza los artefactos que le corresponden según {@link ShardPartition} y, antes de compilar un descriptor,
+ * espera a que los módulos de otros procesos de los que depende estén en {@code destDir} (ver
+ * {@link ShardManifests}). Los procesos también pueden lanzarse a mano en otros equipos que compartan el sistema de
+ * archivos, indicando a todos el mismo identificador de ejecución.<br/>
+ * <br/>
+ * Los mensajes de los procesos, incluidos los del compilador, se muestran a medida que se producen, precedidos del
+ * proceso que los generó. El resumen de cada proceso no se muestra: al terminar se suman sus contadores, se muestran
+ * juntos sus errores y se eliminan los manifiestos de la ejecución.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ShardCoordinator {
+
+    // Líneas con las que cada proceso abre su salida y separa de ella su resumen (ver Main)
+    private static final String START_LINE = "Starting modularization process...";
+    private static final String SEPARATOR_LINE = "--------------------------------------------------------------------";
+
+    private final Options options;
+    private final PrintStream out;
+
+    private int countModularized;
+    private int countErrorFounds;
+    private int countCacheHits;
+    private int countCacheMisses;
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param options Parámetros de la ejecución, incluidos los argumentos con los que se lanzan los procesos
+     * @param out Salida en la que se muestran los mensajes de los procesos
+     */
+    ShardCoordinator(Options options, PrintStream out) {
+        this.options = options;
+        this.out = out;
+    }
+
+    /**
+     * Lanza los procesos y espera a que terminen todos.
+     *
+     * @return {@code true} si todos los procesos terminaron sin errores
+     *
+     * @throws InterruptedException Si se interrumpe la espera. Los procesos que sigan en ejecución se detienen.
+     */
+    boolean run() throws InterruptedException {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        File runDir = ShardManifests.getRunDir(options.destDir, runId);
+
+        out.println();
+        out.println("Starting modularization process...");
+        out.println("--------------------------------------------------------------------");
+        out.println();
+        out.println("[INFO] Modularizing with " + options.shards + " worker processes (run " + runId + ")");
+
+        List<String> workerArgs = getWorkerArgs();
+        String javaExecutable = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+
+        List<Process> processes = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        try {
+            for (int shardIndex = 1; shardIndex <= options.shards; shardIndex++) {
+                List<String> command = new ArrayList<>();
+                command.add(javaExecutable);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(Main.class.getName());
+                command.addAll(workerArgs);
+                command.add("--shard");
+                command.add(shardIndex + "/" + options.shards);
+                command.add("--shard-run");
+                command.add(runId);
+
+                ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+                if (options.workingDir != null) {
+                    builder.directory(options.workingDir);
+                }
+
+                Process process;
+                try {
+                    process = builder.start();
+                } catch (IOException e) {
+                    printError("[ERROR] Can not start worker process " + shardIndex + "/" + options.shards + ". " + e.getMessage());
+                    finishAbandoned(runDir, shardIndex);
+                    continue;
+                }
+                processes.add(process);
+
+                int index = shardIndex;
+                Thread thread = new Thread(() -> followWorker(process, index, runDir), "shard-" + shardIndex);
+                thread.start();
+                threads.add(thread);
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            processes.forEach(Process::destroy);
+        }
+
+        collectSummaries(runDir);
+        deleteRun(runDir);
+        return countErrorFounds == 0;
+    }
+
+    /**
+     * Muestra los mensajes del proceso {@code shardIndex} y espera a que termine. Si termina sin completar su
+     * manifiesto se completa en su nombre, para que el resto de procesos no esperen por sus artefactos.
+     */
+    private void followWorker(Process process, int shardIndex, File runDir) {
+        String prefix = "[shard " + shardIndex + "/" + options.shards + "] ";
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+            String line;
+            boolean started = false;
+            boolean summary = false;
+            while ((line = reader.readLine()) != null) {
+                // Los resúmenes de cada proceso se sustituyen por el resumen conjunto, pero su salida se sigue leyendo
+                // para que no se bloquee
+                if (summary || line.isEmpty()) {
+                    continue;
+                }
+
+                if (line.equals(START_LINE)) {
+                    started = true;
+                    continue;
+                }
+                if (line.equals(SEPARATOR_LINE)) {
+                    // El primer separador cierra la cabecera, el siguiente abre el resumen
+                    summary = !started;
+                    started = false;
+                    continue;
+                }
+
+                if (line.startsWith("[ERROR]")) {
+                    errors.add(prefix + line);
+                }
+                synchronized (out) {
+                    out.println(prefix + line);
+                }
+            }
+
+            int exitCode = process.waitFor();
+            if (ShardManifests.readSummary(ShardManifests.getManifestFile(runDir, shardIndex)) == null) {
+                printError(prefix + "[ERROR] Worker process finished with exit code " + exitCode + " without completing its JAR files.");
+                finishAbandoned(runDir, shardIndex);
+            }
+        } catch (IOException e) {
+            printError(prefix + "[ERROR] Can not read worker process output. " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void finishAbandoned(File runDir, int shardIndex) {
+        try {
+            ShardManifests.finishAbandoned(ShardManifests.getManifestFile(runDir, shardIndex), new ShardManifests.Summary(0, 1, -1, -1));
+        } catch (IOException e) {
+            printError("[ERROR] Can not complete manifest of worker process " + shardIndex + "/" + options.shards + ". " + e.getMessage());
+        }
+    }
+
+    private void collectSummaries(File runDir) {
+        boolean cacheUsed = true;
+        for (int shardIndex = 1; shardIndex <= options.shards; shardIndex++) {
+            ShardManifests.Summary summary = null;
+            try {
+                summary = ShardManifests.readSummary(ShardManifests.getManifestFile(runDir, shardIndex));
+            } catch (IOException e) {
+                printError("[ERROR] Can not read manifest of worker process " + shardIndex + "/" + options.shards + ". " + e.getMessage());
+            }
+
+            if (summary == null) {
+                countErrorFounds++;
+                cacheUsed = false;
+                continue;
+            }
+
+            countModularized += summary.modularized;
+            countErrorFounds += summary.errors;
+            countCacheHits += summary.cacheHits;
+            countCacheMisses += summary.cacheMisses;
+            cacheUsed &= summary.cacheHits >= 0;
+        }
+
+        if (!cacheUsed) {
+            countCacheHits = -1;
+            countCacheMisses = -1;
+        }
+    }
+
+    /**
+     * @return Los argumentos de esta ejecución sin los que no aplican a los procesos: {@code --shards}, los de los modos
+     *         que no se usan con {@code --shards} (ver {@link Options}), y {@code --report} y {@code --jfr}, ya que
+     *         todos los procesos escribirían el mismo archivo
+     */
+    private List<String> getWorkerArgs() {
+        List<String> args = new ArrayList<>(Arrays.asList(options.args));
+        for (String option : new String[] { "--shards", "--threads", "--batch", "--watch", "--watch-delay", "--report", "--jfr" }) {
+            int index = args.indexOf(option);
+            if (index < 0) {
+                continue;
+            }
+
+            if (option.equals("--report") || option.equals("--jfr")) {
+                out.println("[WARN] " + option + " can not be used with --shards and will be ignored.");
+            }
+            int valueCount = option.equals("--watch") ? 0 : 1;
+            args.subList(index, Math.min(index + 1 + valueCount, args.size())).clear();
+        }
+
+        return args;
+    }
+
+    /**
+     * Elimina los manifiestos de esta ejecución. Los de otras ejecuciones no se tocan, ya que pueden pertenecer a
+     * procesos lanzados a mano que aún no han terminado. El directorio {@value ShardManifests#DIR_NAME} solo se
+     * elimina si queda vacío.
+     */
+    private void deleteRun(File runDir) {
+        File[] files = runDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        runDir.delete();
+        runDir.getParentFile().delete();
+    }
+
+    private void printError(String message) {
+        errors.add(message);
+        synchronized (out) {
+            out.println(message);
+        }
+    }
+
+    /**
+     * @return Cantidad de archivos modularizados por todos los procesos
+     */
+    int getCountModularized() {
+        return countModularized;
+    }
+
+    /**
+     * @return Cantidad de errores encontrados por todos los procesos
+     */
+    int getCountErrorFounds() {
+        return countErrorFounds;
+    }
+
+    /**
+     * @return Cantidad de aciertos de la caché de todos los procesos, o {@code -1} si no se usó la caché
+     */
+    int getCountCacheHits() {
+        return countCacheHits;
+    }
+
+    /**
+     * @return Cantidad de fallos de la caché de todos los procesos, o {@code -1} si no se usó la caché
+     */
+    int getCountCacheMisses() {
+        return countCacheMisses;
+    }
+
+    /**
+     * @return Los mensajes de error de todos los procesos, precedidos del proceso que los generó
+     */
+    List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Manifiestos con los artefactos terminados por cada uno de los procesos de una modularización repartida (ver
+ * {@link ShardCoordinator}), a través de los cuales los procesos saben cuándo están disponibles en {@code destDir} los
+ * módulos de otros procesos de los que dependen. Como solo se usan archivos, los procesos pueden ejecutarse en otras
+ * máquinas siempre que compartan el sistema de archivos.<br/>
+ * <br/>
+ * Los manifiestos de una ejecución se guardan en el directorio {@code destDir/.shards/<run>}, uno por proceso. Cada
+ * proceso solo escribe en el suyo, agregando una línea por artefacto terminado con su nombre, su estado y el resumen
+ * de su JAR modularizado, y al terminar una última línea con sus contadores. Los demás procesos leen los manifiestos de
+ * forma incremental, ignorando la última línea mientras esté incompleta.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ShardManifests implements Closeable {
+
+    static final String DIR_NAME = ".shards";
+
+    private static final String END_MARK = "#END";
+    private static final long POLL_MILLIS = 100;
+
+    private final OutputStream output;
+    private final Reader[] readers;
+
+    /**
+     * Crea, vacío, el manifiesto del proceso {@code shardIndex}.
+     *
+     * @param runDir Directorio de los manifiestos de la ejecución (ver {@link #getRunDir(File, String)})
+     * @param shardIndex Índice del proceso, a partir de 1
+     * @param shardCount Cantidad de procesos
+     *
+     * @throws IOException Si no se puede crear el manifiesto
+     */
+    ShardManifests(File runDir, int shardIndex, int shardCount) throws IOException {
+        if (!runDir.isDirectory() && !runDir.mkdirs()) {
+            throw new IOException("Can not create directory '" + runDir + "'");
+        }
+
+        this.output = new FileOutputStream(getManifestFile(runDir, shardIndex));
+        this.readers = new Reader[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            readers[i] = new Reader(getManifestFile(runDir, i + 1));
+        }
+    }
+
+    /**
+     * @return Directorio de los manifiestos de la ejecución {@code runId}
+     */
+    static File getRunDir(File destDir, String runId) {
+        return new File(new File(destDir, DIR_NAME), runId);
+    }
+
+    /**
+     * @return Manifiesto del proceso {@code shardIndex} (a partir de 1)
+     */
+    static File getManifestFile(File runDir, int shardIndex) {
+        return new File(runDir, "shard-" + shardIndex + ".manifest");
+    }
+
+    /**
+     * Agrega al manifiesto de este proceso un artefacto terminado.
+     *
+     * @param artifactName Nombre del artefacto
+     * @param status Estado en que terminó
+     * @param outputDigest Resumen SHA-256 de su JAR modularizado, o {@code null} si no se conoce
+     *
+     * @throws IOException Si no se puede escribir el manifiesto
+     */
+    synchronized void record(String artifactName, RunReport.Status status, String outputDigest) throws IOException {
+        write(artifactName + '\t' + status.name() + '\t' + (outputDigest != null ? outputDigest : "-"));
+    }
+
+    /**
+     * Termina el manifiesto de este proceso con sus contadores. A partir de ese momento los demás procesos dejan de
+     * esperar por sus artefactos.
+     *
+     * @param summary Contadores del proceso
+     *
+     * @throws IOException Si no se puede escribir el manifiesto
+     */
+    synchronized void finish(Summary summary) throws IOException {
+        write(summary.toLine());
+    }
+
+    private void write(String line) throws IOException {
+        output.write((line + '\n').getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    /**
+     * Espera hasta que el proceso {@code shardIndex} termine el artefacto {@code artifactName}.
+     *
+     * @param artifactName Nombre del artefacto
+     * @param shardIndex Índice del proceso al que se asignó el artefacto, a partir de 1
+     *
+     * @return El artefacto terminado, o {@code null} si el proceso terminó sin procesarlo
+     *
+     * @throws IOException Si no se puede leer el manifiesto del proceso
+     * @throws InterruptedException Si se interrumpe la espera
+     */
+    Entry await(String artifactName, int shardIndex) throws IOException, InterruptedException {
+        Reader reader = readers[shardIndex - 1];
+        synchronized (reader) {
+            while (true) {
+                reader.refresh();
+                Entry entry = reader.entries.get(artifactName);
+                if (entry != null) {
+                    return entry;
+                }
+                if (reader.summary != null) {
+                    return null;
+                }
+
+                Thread.sleep(POLL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Lee los contadores con los que terminó un proceso.
+     *
+     * @param manifestFile Manifiesto del proceso
+     *
+     * @return Los contadores, o {@code null} si el proceso aún no ha terminado su manifiesto
+     *
+     * @throws IOException Si no se puede leer el manifiesto
+     */
+    static Summary readSummary(File manifestFile) throws IOException {
+        Reader reader = new Reader(manifestFile);
+        reader.refresh();
+        return reader.summary;
+    }
+
+    /**
+     * Termina el manifiesto de un proceso que finalizó sin hacerlo, de forma que el resto de procesos no lo esperen
+     * indefinidamente. Si el proceso dejó una línea incompleta esta queda separada y se ignora.
+     *
+     * @param manifestFile Manifiesto del proceso
+     * @param summary Contadores con los que se termina el manifiesto
+     *
+     * @throws IOException Si no se puede escribir el manifiesto
+     */
+    static void finishAbandoned(File manifestFile, Summary summary) throws IOException {
+        try (OutputStream out = new FileOutputStream(manifestFile, true)) {
+            out.write(('\n' + summary.toLine() + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * Artefacto terminado por un proceso.
+     */
+    static final class Entry {
+        final RunReport.Status status;
+        final String outputDigest;
+
+        private Entry(RunReport.Status status, String outputDigest) {
+            this.status = status;
+            this.outputDigest = outputDigest;
+        }
+    }
+
+    /**
+     * Contadores con los que terminó un proceso. Los de la caché son {@code -1} si no se usó.
+     */
+    static final class Summary {
+        final int modularized;
+        final int errors;
+        final int cacheHits;
+        final int cacheMisses;
+
+        Summary(int modularized, int errors, int cacheHits, int cacheMisses) {
+            this.modularized = modularized;
+            this.errors = errors;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+        }
+
+        private String toLine() {
+            return END_MARK + '\t' + modularized + '\t' + errors + '\t' + cacheHits + '\t' + cacheMisses;
+        }
+    }
+
+    /**
+     * Lector incremental del manifiesto de un proceso.
+     */
+    private static final class Reader {
+        private final File file;
+        private final Map<String, Entry> entries = new HashMap<>();
+        private final ByteArrayOutputStream pendingLine = new ByteArrayOutputStream();
+        private long position;
+        private Summary summary;
+
+        private Reader(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Lee las líneas completas agregadas desde la lectura anterior.
+         */
+        private void refresh() throws IOException {
+            if (summary != null || !file.isFile()) {
+                return;
+            }
+
+            byte[] data;
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                long length = input.length();
+                if (length <= position) {
+                    return;
+                }
+
+                data = new byte[(int) Math.min(length - position, Integer.MAX_VALUE)];
+                input.seek(position);
+                input.readFully(data);
+                position += data.length;
+            }
+
+            int lineStart = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] == '\n') {
+                    pendingLine.write(data, lineStart, i - lineStart);
+                    parseLine(new String(pendingLine.toByteArray(), StandardCharsets.UTF_8));
+                    pendingLine.reset();
+                    lineStart = i + 1;
+                }
+            }
+            pendingLine.write(data, lineStart, data.length - lineStart);
+        }
+
+        private void parseLine(String line) {
+            String[] fields = line.split("\t");
+            try {
+                if (fields.length == 5 && fields[0].equals(END_MARK)) {
+                    summary = new Summary(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+                } else if (fields.length == 3) {
+                    entries.put(fields[0], new Entry(RunReport.Status.valueOf(fields[1]), fields[2].equals("-") ? null : fields[2]));
+                }
+            } catch (IllegalArgumentException e) {
+                // Línea incompleta de un proceso que terminó de forma inesperada (ver finishAbandoned)
+            }
+        }
+    }
+}
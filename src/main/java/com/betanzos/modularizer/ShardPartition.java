@@ -0,0 +1,156 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reparte los artefactos del descriptor de modularización entre los procesos que los modularizan (ver
+ * {@link ShardCoordinator}).<br/>
+ * <br/>
+ * Primero se intenta que cada componente conexo del grafo de dependencias quede completo en un mismo proceso, ya que
+ * así ninguno tiene que esperar por los módulos de otro. Los componentes se asignan de mayor a menor tamaño al proceso
+ * con menos artefactos, siempre que no supere su capacidad (el total de artefactos dividido entre los procesos). Los
+ * componentes que no caben se dividen en porciones: sus artefactos se recorren en orden topológico y cada uno se
+ * asigna al proceso al que pertenecen más de los artefactos de los que depende, si aún tiene capacidad, o al proceso
+ * con menos artefactos en caso contrario.<br/>
+ * <br/>
+ * El reparto solo depende del descriptor y de la cantidad de procesos, por lo que cada proceso lo calcula por su cuenta
+ * y obtiene el mismo resultado que los demás.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ShardPartition {
+
+    /**
+     * Private for avoid class instantiation
+     */
+    private ShardPartition() {}
+
+    /**
+     * @param graph Grafo de dependencias de los artefactos
+     * @param levels Niveles de dependencias de los artefactos (ver {@link DependencyGraph#getTopologicalLevels()})
+     * @param shardCount Cantidad de procesos
+     *
+     * @return Índice del proceso (a partir de 0) al que se asigna cada artefacto, por identificador de artefacto
+     */
+    static int[] partition(DependencyGraph graph, List<int[]> levels, int shardCount) {
+        int size = graph.size();
+
+        // Componentes conexos, sin tener en cuenta la dirección de las dependencias
+        int[] parent = new int[size];
+        for (int id = 0; id < size; id++) {
+            parent[id] = id;
+        }
+        for (int id = 0; id < size; id++) {
+            for (int dependencyId : graph.getDependencies(id)) {
+                parent[find(parent, id)] = find(parent, dependencyId);
+            }
+        }
+
+        // Artefactos de cada componente en orden topológico. Los que no pueden ordenarse (ciclos) van al final.
+        Map<Integer, List<Integer>> components = new LinkedHashMap<>();
+        boolean[] sorted = new boolean[size];
+        for (int[] level : levels) {
+            for (int id : level) {
+                sorted[id] = true;
+                components.computeIfAbsent(find(parent, id), root -> new ArrayList<>()).add(id);
+            }
+        }
+        for (int id = 0; id < size; id++) {
+            if (!sorted[id]) {
+                components.computeIfAbsent(find(parent, id), root -> new ArrayList<>()).add(id);
+            }
+        }
+
+        List<List<Integer>> componentList = new ArrayList<>(components.values());
+        componentList.sort(Comparator.comparingInt((List<Integer> component) -> component.size()).reversed());
+
+        int capacity = (size + shardCount - 1) / shardCount;
+        int[] loads = new int[shardCount];
+        int[] shardOf = new int[size];
+        Arrays.fill(shardOf, -1);
+
+        for (List<Integer> component : componentList) {
+            int shard = findLeastLoaded(loads);
+            if (loads[shard] + component.size() <= capacity) {
+                for (int id : component) {
+                    shardOf[id] = shard;
+                }
+                loads[shard] += component.size();
+                continue;
+            }
+
+            // El componente no cabe en ningún proceso y se divide
+            int[] votes = new int[shardCount];
+            for (int id : component) {
+                Arrays.fill(votes, 0);
+                for (int dependencyId : graph.getDependencies(id)) {
+                    if (shardOf[dependencyId] >= 0) {
+                        votes[shardOf[dependencyId]]++;
+                    }
+                }
+
+                shard = -1;
+                for (int candidate = 0; candidate < shardCount; candidate++) {
+                    if (votes[candidate] > 0 && loads[candidate] < capacity && (shard < 0 || votes[candidate] > votes[shard])) {
+                        shard = candidate;
+                    }
+                }
+                if (shard < 0) {
+                    shard = findLeastLoaded(loads);
+                }
+
+                shardOf[id] = shard;
+                loads[shard]++;
+            }
+        }
+
+        return shardOf;
+    }
+
+    private static int find(int[] parent, int id) {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+
+    private static int findLeastLoaded(int[] loads) {
+        int shard = 0;
+        for (int candidate = 1; candidate < loads.length; candidate++) {
+            if (loads[candidate] < loads[shard]) {
+                shard = candidate;
+            }
+        }
+        return shard;
+    }
+}
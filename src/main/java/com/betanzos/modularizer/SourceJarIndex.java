@@ -0,0 +1,305 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * Índice, por nombre de archivo, de los JARs del directorio {@code sourceDir}, de forma que el JAR de cada artefacto
+ * se obtenga en tiempo constante.<br/>
+ * <br/>
+ * Con --recursive se recorre todo el árbol de directorios, por ejemplo un repositorio local de Maven, en paralelo:
+ * cada directorio se lista en uno de los hilos, que a su vez encola sus subdirectorios. Los enlaces simbólicos se
+ * siguen, salvo que apunten a uno de los directorios que los contienen, en cuyo caso se formaría un ciclo. Los JARs y
+ * directorios pueden filtrarse con patrones glob ({@code --include}, {@code --exclude}) sobre su ruta respecto a
+ * {@code sourceDir}. Como en {@code **}{@code /} el separador es obligatorio, los patrones también se prueban sobre la
+ * ruta precedida de un separador, de forma que {@code **}{@code /*-sources.jar} coincida también con los JARs que
+ * están directamente en {@code sourceDir}.<br/>
+ * <br/>
+ * Si el mismo nombre de JAR aparece en varias rutas se utiliza la primera en orden alfabético, con independencia del
+ * orden en que los hilos las encontraron, y las demás se informan como duplicadas.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class SourceJarIndex {
+
+    private static final String JAR_SUFFIX = ".jar";
+    // Raíz a la que se anclan las rutas relativas para probar los patrones que empiezan por **/
+    private static final Path ANCHOR = Paths.get(File.separator);
+
+    private final Path root;
+    private final boolean recursive;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    // Directorio que no se recorre, normalmente destDir, que puede estar dentro de sourceDir
+    private final Object skipDirKey;
+
+    private final Queue<Path> jarPaths = new ConcurrentLinkedQueue<>();
+    private final Queue<String> warnings = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger directoryCount = new AtomicInteger();
+    private final AtomicInteger pendingDirectories = new AtomicInteger();
+    private final CountDownLatch walkFinished = new CountDownLatch(1);
+
+    private final Map<String, File> jarFilesByName = new HashMap<>();
+    private final Map<String, List<File>> duplicates = new TreeMap<>();
+
+    private SourceJarIndex(Path root, boolean recursive, List<PathMatcher> includes, List<PathMatcher> excludes, Object skipDirKey) {
+        this.root = root;
+        this.recursive = recursive;
+        this.includes = includes;
+        this.excludes = excludes;
+        this.skipDirKey = skipDirKey;
+    }
+
+    /**
+     * Busca los archivos JAR de {@code sourceDir}.
+     *
+     * @param sourceDir Directorio de los JARs originales
+     * @param recursive Si se buscan también en sus subdirectorios
+     * @param includeGlobs Patrones glob de las rutas, respecto a {@code sourceDir}, de los JARs a incluir. Si no se
+     *                     indica ninguno se incluyen todos los archivos {@code *.jar}.
+     * @param excludeGlobs Patrones glob de las rutas, respecto a {@code sourceDir}, de los JARs y directorios a
+     *                     excluir
+     * @param skipDir Directorio que no se recorre, o {@code null}
+     * @param threads Cantidad de directorios listados al mismo tiempo
+     *
+     * @return El índice de los JARs encontrados
+     *
+     * @throws IOException Si {@code sourceDir} no puede ser leído
+     * @throws InterruptedException Si se interrumpe el hilo mientras se recorren los directorios
+     */
+    static SourceJarIndex build(File sourceDir, boolean recursive, Collection<String> includeGlobs, Collection<String> excludeGlobs,
+                                File skipDir, int threads) throws IOException, InterruptedException {
+        Path root = sourceDir.toPath();
+        BasicFileAttributes rootAttributes = Files.readAttributes(root, BasicFileAttributes.class);
+        Object skipDirKey = null;
+        if (skipDir != null && skipDir.isDirectory()) {
+            skipDirKey = getKey(skipDir.toPath(), Files.readAttributes(skipDir.toPath(), BasicFileAttributes.class));
+        }
+
+        SourceJarIndex index = new SourceJarIndex(root, recursive, toMatchers(includeGlobs), toMatchers(excludeGlobs), skipDirKey);
+        ExecutorService executor = Executors.newFixedThreadPool(recursive ? Math.max(1, threads) : 1);
+        try {
+            index.submit(executor, root, new Ancestor(getKey(root, rootAttributes), null));
+            index.walkFinished.await();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        index.buildIndex();
+        return index;
+    }
+
+    /**
+     * Comprueba la sintaxis de un patrón glob de {@code --include} o {@code --exclude}.
+     *
+     * @throws IllegalArgumentException Si el patrón no es válido
+     */
+    static void checkGlob(String glob) {
+        try {
+            FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        } catch (PatternSyntaxException e) {
+            // El mensaje de la excepción ocupa varias líneas
+            throw new IllegalArgumentException(e.getDescription() + " at index " + e.getIndex(), e);
+        }
+    }
+
+    /**
+     * @return Archivos JAR encontrados, por nombre
+     */
+    Map<String, File> getJarFilesByName() {
+        return jarFilesByName;
+    }
+
+    /**
+     * @return Rutas de los nombres de JAR encontrados en más de una ruta, por nombre. La primera es la utilizada.
+     */
+    Map<String, List<File>> getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return Directorios que no pudieron ser leídos y enlaces simbólicos que no se siguieron
+     */
+    Collection<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * @return Cantidad de directorios recorridos
+     */
+    int getDirectoryCount() {
+        return directoryCount.get();
+    }
+
+    private void submit(ExecutorService executor, Path dir, Ancestor ancestors) {
+        // Se cuenta antes de encolarlo, de forma que el recorrido no termine mientras queden subdirectorios
+        pendingDirectories.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                listDirectory(executor, dir, ancestors);
+            } catch (RuntimeException e) {
+                warnings.add("Can not read directory '" + dir + "'. " + e.getMessage());
+            } finally {
+                if (pendingDirectories.decrementAndGet() == 0) {
+                    walkFinished.countDown();
+                }
+            }
+        });
+    }
+
+    private void listDirectory(ExecutorService executor, Path dir, Ancestor ancestors) {
+        directoryCount.incrementAndGet();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes;
+                Object key;
+                try {
+                    // Se siguen los enlaces simbólicos
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    key = attributes.isDirectory() && recursive ? getKey(entry, attributes) : null;
+                } catch (IOException e) {
+                    // Enlace simbólico roto o archivo eliminado mientras se recorría el directorio
+                    continue;
+                }
+
+                Path relativePath = root.relativize(entry);
+                if (attributes.isDirectory()) {
+                    if (!recursive || matches(excludes, relativePath)) {
+                        continue;
+                    }
+
+                    if (key.equals(skipDirKey)) {
+                        continue;
+                    }
+                    if (ancestors.contains(key)) {
+                        warnings.add("Symbolic link '" + relativePath + "' points to one of its parent directories. It was not followed.");
+                        continue;
+                    }
+
+                    submit(executor, entry, new Ancestor(key, ancestors));
+                } else if (attributes.isRegularFile() && isSelected(relativePath)) {
+                    jarPaths.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            warnings.add("Can not read directory '" + dir + "'. " + e.getMessage());
+        }
+    }
+
+    private boolean isSelected(Path relativePath) {
+        return relativePath.getFileName().toString().endsWith(JAR_SUFFIX)
+                && (includes.isEmpty() || matches(includes, relativePath))
+                && !matches(excludes, relativePath);
+    }
+
+    /**
+     * Construye el índice a partir de las rutas encontradas, ordenadas para que el resultado no dependa del orden en
+     * que las encontraron los hilos.
+     */
+    private void buildIndex() {
+        List<Path> sortedPaths = new ArrayList<>(jarPaths);
+        sortedPaths.sort(Comparator.comparing(path -> root.relativize(path).toString()));
+
+        for (Path path : sortedPaths) {
+            File file = path.toFile();
+            File first = jarFilesByName.putIfAbsent(file.getName(), file);
+            if (first != null) {
+                duplicates.computeIfAbsent(file.getName(), name -> new ArrayList<>(Collections.singletonList(first))).add(file);
+            }
+        }
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path relativePath) {
+        Path anchoredPath = ANCHOR.resolve(relativePath);
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relativePath) || matcher.matches(anchoredPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PathMatcher> toMatchers(Collection<String> globs) {
+        return globs.stream()
+                .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return Identificador del directorio en el sistema de archivos (el inodo en Unix) o, si no lo proporciona, su
+     *         ruta real
+     */
+    private static Object getKey(Path dir, BasicFileAttributes attributes) throws IOException {
+        Object key = attributes.fileKey();
+        return key != null ? key : dir.toRealPath();
+    }
+
+    /**
+     * Directorios que contienen al que se está recorriendo, para detectar los ciclos formados por enlaces simbólicos.
+     */
+    private static final class Ancestor {
+        private final Object key;
+        private final Ancestor parent;
+
+        Ancestor(Object key, Ancestor parent) {
+            this.key = key;
+            this.parent = parent;
+        }
+
+        boolean contains(Object dirKey) {
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if (ancestor.key.equals(dirKey)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vigila el directorio {@code sourceDir} y el descriptor de modularización para el modo --watch. Los cambios se
+ * agrupan: se espera a que pasen {@code delayMillis} milisegundos sin cambios antes de devolverlos, de forma que un
+ * JAR que todavía se está copiando, o varios JARs copiados a la vez, provoquen una única modularización.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class SourceWatcher implements Closeable {
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Path sourceDir;
+    private final Path descriptorFile;
+    private final boolean descriptorDirectory;
+    private final long delayMillis;
+
+    /**
+     * @param sourceDir Directorio con los JARs originales
+     * @param descriptorFile Descriptor de modularización, o directorio con los archivos en que está dividido
+     * @param delayMillis Tiempo sin cambios que se espera antes de devolverlos
+     *
+     * @throws IOException Si no es posible vigilar alguno de los directorios
+     */
+    SourceWatcher(File sourceDir, File descriptorFile, long delayMillis) throws IOException {
+        this.sourceDir = sourceDir.toPath().toAbsolutePath().normalize();
+        this.descriptorFile = descriptorFile.toPath().toAbsolutePath().normalize();
+        this.descriptorDirectory = descriptorFile.isDirectory();
+        this.delayMillis = delayMillis;
+
+        // Si el descriptor está dividido se vigila su directorio, si no, el directorio que contiene su archivo
+        Path descriptorWatchDir = descriptorDirectory ? this.descriptorFile : this.descriptorFile.getParent();
+
+        watchService = FileSystems.getDefault().newWatchService();
+        try {
+            register(this.sourceDir);
+            if (!descriptorWatchDir.equals(this.sourceDir)) {
+                register(descriptorWatchDir);
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        // Las eliminaciones solo afectan cuando se elimina alguno de los archivos de un descriptor dividido
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, dir);
+    }
+
+    /**
+     * Espera hasta que se produzcan cambios y hayan pasado {@code delayMillis} milisegundos sin ninguno más.
+     *
+     * @return Los cambios, o {@code null} si alguno de los directorios vigilados ya no es accesible
+     *
+     * @throws InterruptedException Si el hilo es interrumpido mientras espera
+     */
+    Changes take() throws InterruptedException {
+        Changes changes = new Changes();
+
+        WatchKey key = watchService.take();
+        while (key != null) {
+            if (!collect(key, changes)) {
+                return null;
+            }
+
+            key = watchService.poll(delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Agrega a {@code changes} los eventos de {@code key}.
+     *
+     * @return {@code false} si el directorio de {@code key} ya no puede vigilarse
+     */
+    private boolean collect(WatchKey key, Changes changes) {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Se han perdido eventos, por lo que no se sabe qué JARs cambiaron
+                changes.overflow = true;
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+            if (descriptorDirectory ? dir.equals(descriptorFile) && path.getFileName().toString().endsWith(Descriptor.PART_EXTENSION)
+                    : path.equals(descriptorFile)) {
+                changes.descriptorChanged = true;
+            } else if (dir.equals(sourceDir) && event.kind() != StandardWatchEventKinds.ENTRY_DELETE
+                    && path.getFileName().toString().endsWith(".jar")) {
+                changes.jarNames.add(path.getFileName().toString());
+            }
+        }
+
+        return key.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Cambios encontrados por {@link SourceWatcher#take()}.
+     */
+    static final class Changes {
+        /** Nombres de los JARs nuevos o modificados */
+        final Set<String> jarNames = new TreeSet<>();
+        /** Si ha cambiado el descriptor de modularización */
+        boolean descriptorChanged;
+        /** Si se perdieron eventos y, por tanto, deben modularizarse todos los JARs */
+        boolean overflow;
+
+        /**
+         * @return Si no hay cambios que afecten a la modularización
+         */
+        boolean isEmpty() {
+            return jarNames.isEmpty() && !descriptorChanged && !overflow;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Ejecuta una tarea por cada artefacto de un {@link DependencyGraph} utilizando varios hilos. La tarea de un artefacto
+ * se inicia tan pronto como han terminado las de todos los artefactos de los que depende, sin esperar a que termine
+ * el resto de artefactos de su mismo nivel.<br/>
+ * <br/>
+ * Entre los artefactos listos para procesarse se elige primero aquel con la cadena de dependientes más larga (ver
+ * {@link DependencyGraph#getDependentChainLengths()}) y, a igualdad de esta, el de mayor peso (por ejemplo, el tamaño
+ * del JAR).
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class WavefrontScheduler {
+
+    private final DependencyGraph graph;
+    private final int threads;
+    private final Object lock = new Object();
+    private final PriorityQueue<Integer> ready;
+    private int[] pendingDependencies;
+    private boolean[] released;
+    private int releasedCount;
+    private int running;
+
+    /**
+     * @param graph Grafo de dependencias entre los artefactos
+     * @param threads Cantidad máxima de artefactos a procesar simultáneamente
+     * @param weight Peso de cada artefacto, a partir de su identificador
+     */
+    WavefrontScheduler(DependencyGraph graph, int threads, IntToLongFunction weight) {
+        this.graph = graph;
+        this.threads = Math.max(1, threads);
+
+        int[] chainLengths = graph.getDependentChainLengths();
+        Comparator<Integer> priority = Comparator.<Integer>comparingInt(id -> chainLengths[id]).reversed()
+                .thenComparing(Comparator.<Integer>comparingLong(weight::applyAsLong).reversed())
+                .thenComparingInt(id -> id);
+        this.ready = new PriorityQueue<>(priority);
+    }
+
+    /**
+     * Ejecuta {@code task} para cada artefacto del grafo respetando sus dependencias. Este método no retorna hasta que
+     * se hayan procesado todos los artefactos.<br/>
+     * <br/>
+     * Si existen dependencias cíclicas, una vez procesado todo lo posible, los artefactos del ciclo se procesan sin
+     * respetar sus dependencias.
+     *
+     * @param task Tarea a ejecutar, recibe el identificador del artefacto. No debe lanzar excepciones.
+     *
+     * @throws InterruptedException Si el hilo es interrumpido mientras espera por los hilos de trabajo
+     */
+    void run(IntConsumer task) throws InterruptedException {
+        int size = graph.size();
+        pendingDependencies = new int[size];
+        released = new boolean[size];
+        releasedCount = 0;
+        running = 0;
+
+        for (int id = 0; id < size; id++) {
+            pendingDependencies[id] = graph.getDependencies(id).length;
+            if (pendingDependencies[id] == 0) {
+                release(id);
+            }
+        }
+
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < Math.min(threads, size); i++) {
+            Thread worker = new Thread(() -> work(task), "modularizer-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private void work(IntConsumer task) {
+        while (true) {
+            int id;
+            synchronized (lock) {
+                while (ready.isEmpty()) {
+                    if (running == 0) {
+                        if (releasedCount == released.length) {
+                            // No queda nada por procesar
+                            lock.notifyAll();
+                            return;
+                        }
+
+                        // Nada se está procesando y nada está listo, por lo que el resto de artefactos
+                        // forma parte de algún ciclo (o depende de uno)
+                        for (int pendingId = 0; pendingId < released.length; pendingId++) {
+                            if (!released[pendingId]) {
+                                release(pendingId);
+                            }
+                        }
+                        break;
+                    }
+
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                id = ready.poll();
+                running++;
+            }
+
+            try {
+                task.accept(id);
+            } finally {
+                synchronized (lock) {
+                    running--;
+                    for (int dependentId : graph.getDependents(id)) {
+                        if (--pendingDependencies[dependentId] == 0 && !released[dependentId]) {
+                            release(dependentId);
+                        }
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void release(int id) {
+        released[id] = true;
+        releasedCount++;
+        ready.add(id);
+    }
+}
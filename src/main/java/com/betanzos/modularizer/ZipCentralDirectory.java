@@ -0,0 +1,247 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Datos del directorio central de un archivo ZIP/JAR, obtenidos del registro de fin del directorio central
+ * (EOCD). Soporta archivos ZIP64, en cuyo caso los valores se toman del registro EOCD de ZIP64.<br/>
+ * <br/>
+ * El archivo puede tener datos delante del ZIP, por ejemplo el script de arranque de un JAR autoejecutable. Al igual
+ * que en {@link java.util.zip.ZipFile}, el tamaño de ese prefijo se obtiene como la diferencia entre la posición real
+ * del registro de fin y la que indican la posición y el tamaño del directorio central, ya que las posiciones
+ * registradas en el archivo son relativas al inicio del ZIP (ver {@link #getPrefixSize()}).
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ZipCentralDirectory {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_SIGNATURE = 0x06054b50;
+    static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIZE = 22;
+    static final int ZIP64_END_SIZE = 56;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private final long offset;
+    private final long prefixSize;
+    private final long size;
+    private final long entryCount;
+    private final long endOffset;
+    private final byte[] comment;
+
+    private ZipCentralDirectory(long offset, long prefixSize, long size, long entryCount, long endOffset, byte[] comment) {
+        this.offset = offset;
+        this.prefixSize = prefixSize;
+        this.size = size;
+        this.entryCount = entryCount;
+        this.endOffset = endOffset;
+        this.comment = comment;
+    }
+
+    /**
+     * Localiza y lee el registro de fin del directorio central del archivo abierto en {@code channel}.
+     *
+     * @param channel Canal de lectura del archivo ZIP
+     *
+     * @return Los datos del directorio central
+     *
+     * @throws IOException Si ocurre un error de lectura o el archivo no es un ZIP válido
+     */
+    static ZipCentralDirectory read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_SIZE) {
+            throw new IOException("Not a ZIP file (too short)");
+        }
+
+        // El registro EOCD se encuentra al final del archivo seguido únicamente del comentario, por lo que basta
+        // buscarlo en los últimos END_SIZE + MAX_COMMENT_SIZE bytes
+        int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE);
+        long tailOffset = fileSize - tailSize;
+        ByteBuffer tail = readFully(channel, tailOffset, tailSize);
+
+        for (int pos = tailSize - END_SIZE; pos >= 0; pos--) {
+            if (tail.getInt(pos) != END_SIGNATURE) {
+                continue;
+            }
+
+            int commentLength = tail.getShort(pos + 20) & 0xFFFF;
+            if (pos + END_SIZE + commentLength != tailSize) {
+                // Coincidencia casual de la firma dentro del comentario o de los datos
+                continue;
+            }
+
+            long entryCount = tail.getShort(pos + 10) & 0xFFFF;
+            long size = tail.getInt(pos + 12) & 0xFFFFFFFFL;
+            long offset = tail.getInt(pos + 16) & 0xFFFFFFFFL;
+            byte[] comment = new byte[commentLength];
+            tail.position(pos + END_SIZE);
+            tail.get(comment);
+
+            long endOffset = tailOffset + pos;
+
+            // Si existe el localizador ZIP64 los valores reales están en el registro EOCD de ZIP64
+            long locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+            if (locatorOffset >= 0) {
+                ByteBuffer locator = readFully(channel, locatorOffset, ZIP64_LOCATOR_SIZE);
+                if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                    // La posición registrada no incluye el prefijo, en cuyo caso el registro EOCD de ZIP64 se busca
+                    // justo antes del localizador, donde lo escriben todas las herramientas
+                    long zip64EndOffset = locator.getLong(8);
+                    ByteBuffer zip64End = zip64EndOffset >= 0 && zip64EndOffset <= locatorOffset - ZIP64_END_SIZE
+                            ? readFully(channel, zip64EndOffset, ZIP64_END_SIZE)
+                            : null;
+                    if ((zip64End == null || zip64End.getInt(0) != ZIP64_END_SIGNATURE) && locatorOffset >= ZIP64_END_SIZE) {
+                        zip64EndOffset = locatorOffset - ZIP64_END_SIZE;
+                        zip64End = readFully(channel, zip64EndOffset, ZIP64_END_SIZE);
+                    }
+                    if (zip64End == null || zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                        throw new IOException("Invalid ZIP64 end of central directory record");
+                    }
+
+                    entryCount = zip64End.getLong(32);
+                    size = zip64End.getLong(40);
+                    offset = zip64End.getLong(48);
+                    endOffset = zip64EndOffset;
+                }
+            }
+
+            // Bytes delante del ZIP, el directorio central termina justo donde empieza el registro de fin
+            long prefixSize = endOffset - size - offset;
+            if (prefixSize < 0) {
+                throw new IOException("Invalid central directory offset");
+            }
+
+            return new ZipCentralDirectory(offset + prefixSize, prefixSize, size, entryCount, endOffset, comment);
+        }
+
+        throw new IOException("Not a ZIP file (end of central directory not found)");
+    }
+
+    /**
+     * Lee {@code length} bytes del canal a partir de la posición {@code position}.
+     *
+     * @return Buffer en orden little-endian (el del formato ZIP) con los datos leídos
+     */
+    static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of ZIP file");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Lee la fecha y hora MS-DOS de cada entrada tal como está registrada en el directorio central, sin convertirla,
+     * de forma que no dependa de la zona horaria del sistema.
+     *
+     * @param channel Canal del archivo del que se leyó el directorio central
+     *
+     * @return Fecha y hora de cada entrada, en el orden del directorio central
+     *
+     * @throws IOException Si ocurre un error leyendo el archivo o el directorio central no es válido
+     */
+    int[] readDosTimes(FileChannel channel) throws IOException {
+        if (size > Integer.MAX_VALUE || entryCount > Integer.MAX_VALUE) {
+            throw new IOException("Central directory too large");
+        }
+
+        ByteBuffer buffer = readFully(channel, offset, (int) size);
+        int[] dosTimes = new int[(int) entryCount];
+        int position = 0;
+        for (int i = 0; i < dosTimes.length; i++) {
+            if (position + CENTRAL_HEADER_SIZE > buffer.limit() || buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory header at offset " + (offset + position));
+            }
+
+            dosTimes[i] = buffer.getInt(position + 12);
+            position += CENTRAL_HEADER_SIZE
+                    + (buffer.getShort(position + 28) & 0xFFFF)
+                    + (buffer.getShort(position + 30) & 0xFFFF)
+                    + (buffer.getShort(position + 32) & 0xFFFF);
+        }
+
+        return dosTimes;
+    }
+
+    /**
+     * @return Posición en el archivo del inicio del directorio central, incluyendo el prefijo. Todas las entradas
+     *         locales se encuentran antes de esta posición.
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Cantidad de bytes delante del ZIP, normalmente {@code 0}. Las posiciones registradas en el directorio
+     *         central y en los registros de fin son relativas al final del prefijo.
+     */
+    long getPrefixSize() {
+        return prefixSize;
+    }
+
+    /**
+     * @return Tamaño en bytes del directorio central
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Cantidad total de entradas del archivo
+     */
+    long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return Posición en el archivo del registro de fin del directorio central (el de ZIP64 si existe)
+     */
+    long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return Comentario del archivo ZIP
+     */
+    byte[] getComment() {
+        return comment;
+    }
+}
@@ -0,0 +1,653 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Permite agregar una entrada a un archivo ZIP/JAR sin descomprimir y volver a comprimir las entradas existentes.<br/>
+ * <br/>
+ * Todo el contenido del archivo original anterior al directorio central (cabeceras locales, datos comprimidos y
+ * descriptores de datos) se copia sin modificaciones, por lo que las posiciones de las entradas existentes no
+ * cambian y sus registros del directorio central pueden copiarse tal cual. A continuación se escribe la nueva entrada
+ * y un nuevo directorio central que la incluye.<br/>
+ * <br/>
+ * Si se quiere cambiar la compresión de las entradas existentes estas se vuelven a comprimir, en paralelo, con
+ * {@link #reencodeWithEntry(File, File, String, byte[], LocalDateTime, CompressionLevel, ExecutorService, int,
+ * MessageDigest)}.<br/>
+ * <br/>
+ * En ambos casos las entradas conservan el orden del archivo original y la nueva entrada es siempre la última, tanto
+ * en los datos como en el directorio central, por lo que con la misma fecha para la nueva entrada el mismo archivo
+ * original produce siempre el mismo resultado, byte a byte. El resumen del resultado puede calcularse mientras se
+ * escribe.<br/>
+ * <br/>
+ * Si el archivo original tiene datos delante del ZIP (ver {@link ZipCentralDirectory#getPrefixSize()}), como el
+ * script de arranque de un JAR autoejecutable, estos se conservan y las posiciones que se registran en el directorio
+ * central y en los registros de fin se escriben, igual que en el original, relativas al final del prefijo.<br/>
+ * <br/>
+ * También se puede agregar la entrada al propio archivo original, sin copiarlo, con
+ * {@link #appendEntry(File, String, byte[], LocalDateTime, File)}.
+ *
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+final class ZipRewriter {
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    // Marca de nombre y comentario en UTF-8, igual que JarOutputStream
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    // Las entradas que se vuelven a comprimir se mantienen en arreglos. El margen cubre la expansión de DEFLATE en el
+    // peor caso, de forma que los tamaños siempre quepan en las cabeceras sin campos extra de ZIP64.
+    private static final long MAX_REENCODED_ENTRY_SIZE = Integer.MAX_VALUE - (1 << 20);
+
+    // Tamaño de los bloques en los que se copian las entradas cuando se calcula el resumen del resultado
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    // "JMJ1", identifica los archivos de diario de appendEntry y la versión de su formato
+    private static final int JOURNAL_MAGIC = 0x4a4d4a31;
+
+    /**
+     * Private for avoid class instantiation
+     */
+    private ZipRewriter() {}
+
+    /**
+     * Crea el archivo {@code target} como una copia de {@code source} a la que se agrega la entrada
+     * {@code entryName} con el contenido {@code entryData}.
+     *
+     * @param source Archivo ZIP/JAR original
+     * @param target Archivo a crear. Si existe será sobrescrito.
+     * @param entryName Nombre de la nueva entrada
+     * @param entryData Contenido (sin comprimir) de la nueva entrada
+     * @param entryTime Fecha de modificación de la nueva entrada
+     * @param digest Resumen a actualizar con el contenido de {@code target}, o {@code null} para no calcularlo. Si
+     *               se indica las entradas existentes se copian a través de memoria en lugar de directamente entre
+     *               los archivos.
+     *
+     * @throws IOException Si ocurre un error de lectura/escritura o {@code source} no es un archivo ZIP válido
+     */
+    static void copyWithEntry(File source, File target, String entryName, byte[] entryData, LocalDateTime entryTime,
+                              MessageDigest digest) throws IOException {
+        try (
+                FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+            ) {
+            ZipCentralDirectory centralDirectory = ZipCentralDirectory.read(in);
+            Output out = new Output(channel, digest, centralDirectory.getPrefixSize());
+
+            // Copia exacta del prefijo y de todas las entradas existentes
+            out.transfer(in, 0, centralDirectory.getOffset());
+
+            // Nueva entrada
+            NewEntry entry = new NewEntry(entryName, entryData, toDosTime(entryTime), CompressionLevel.DEFAULT, false);
+            long entryOffset = out.offset();
+            out.write(entry.localHeader());
+            out.write(ByteBuffer.wrap(entry.compressedData));
+
+            // Directorio central: los registros originales siguen siendo válidos porque las posiciones no cambiaron
+            long centralDirectoryOffset = out.offset();
+            out.transfer(in, centralDirectory.getOffset(), centralDirectory.getSize());
+            out.write(entry.centralHeader(entryOffset));
+            long centralDirectorySize = out.offset() - centralDirectoryOffset;
+
+            out.write(endRecords(out.offset(), centralDirectoryOffset, centralDirectorySize,
+                    centralDirectory.getEntryCount() + 1, centralDirectory.getComment()));
+        }
+    }
+
+    /**
+     * Agrega al propio archivo {@code jar} la entrada {@code entryName} con el contenido {@code entryData}, sin
+     * copiar las entradas existentes.<br/>
+     * <br/>
+     * La nueva entrada se escribe a continuación de la última entrada existente, es decir, en la posición que ocupaba
+     * el directorio central, y tras ella un nuevo directorio central y su registro de fin, por lo que solo se escriben
+     * unos pocos KB. Antes de modificar el archivo se guarda en {@code journal} todo lo que se va a sobrescribir (el
+     * directorio central original y su registro de fin) junto con la longitud original del archivo, y se fuerza su
+     * escritura a disco. El diario se elimina solo cuando el nuevo directorio central se ha escrito completo en
+     * disco, de forma que si el proceso se interrumpe en cualquier momento intermedio el archivo original puede
+     * restaurarse con {@link #recover(File)}.
+     *
+     * @param jar Archivo ZIP/JAR a modificar
+     * @param entryName Nombre de la nueva entrada
+     * @param entryData Contenido (sin comprimir) de la nueva entrada
+     * @param entryTime Fecha de modificación de la nueva entrada
+     * @param journal Archivo de diario a utilizar durante la modificación. No debe existir.
+     *
+     * @throws IOException Si ocurre un error de lectura/escritura o {@code jar} no es un archivo ZIP válido. Si el
+     *                     archivo llegó a modificarse se restaura antes de lanzar la excepción.
+     */
+    static void appendEntry(File jar, String entryName, byte[] entryData, LocalDateTime entryTime, File journal) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ZipCentralDirectory centralDirectory = ZipCentralDirectory.read(channel);
+            long originalLength = channel.size();
+            long tailOffset = centralDirectory.getOffset();
+            long tailLength = originalLength - tailOffset;
+            if (tailLength > Integer.MAX_VALUE) {
+                throw new IOException("Central directory too large to be updated in place");
+            }
+
+            ByteBuffer tail = ZipCentralDirectory.readFully(channel, tailOffset, (int) tailLength);
+            writeJournal(journal, jar, originalLength, tailOffset, tail.array());
+
+            try {
+                NewEntry entry = new NewEntry(entryName, entryData, toDosTime(entryTime), CompressionLevel.DEFAULT, false);
+                channel.position(tailOffset);
+                writeFully(channel, entry.localHeader());
+                writeFully(channel, ByteBuffer.wrap(entry.compressedData));
+
+                // Los registros originales del directorio central siguen siendo válidos porque las entradas no cambiaron
+                // de posición
+                long centralDirectoryOffset = channel.position();
+                writeFully(channel, ByteBuffer.wrap(tail.array(), 0, (int) centralDirectory.getSize()));
+                long prefixSize = centralDirectory.getPrefixSize();
+                writeFully(channel, entry.centralHeader(tailOffset - prefixSize));
+                long centralDirectorySize = channel.position() - centralDirectoryOffset;
+
+                writeFully(channel, endRecords(channel.position() - prefixSize, centralDirectoryOffset - prefixSize, centralDirectorySize,
+                        centralDirectory.getEntryCount() + 1, centralDirectory.getComment()));
+                channel.truncate(channel.position());
+                channel.force(true);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    restore(channel, tailOffset, tail.array(), originalLength);
+                } catch (IOException restoreError) {
+                    // Se conserva el diario para restaurar el archivo en la siguiente ejecución
+                    e.addSuppressed(restoreError);
+                    throw e;
+                }
+                Files.deleteIfExists(journal.toPath());
+                throw e;
+            }
+        }
+
+        Files.delete(journal.toPath());
+    }
+
+    /**
+     * Restaura el archivo modificado por una llamada interrumpida a
+     * {@link #appendEntry(File, String, byte[], LocalDateTime, File)} a partir de su diario, y elimina el diario.
+     *
+     * @param journal Archivo de diario
+     *
+     * @return El archivo restaurado, o {@code null} si el diario está incompleto, en cuyo caso el archivo aún no
+     *         había sido modificado
+     *
+     * @throws IOException Si ocurre un error de lectura/escritura
+     */
+    static File recover(File journal) throws IOException {
+        File jar;
+        long originalLength;
+        long tailOffset;
+        byte[] tail;
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(journal)), crc))) {
+            if (in.readInt() != JOURNAL_MAGIC) {
+                throw new IOException("Invalid journal file '" + journal + "'");
+            }
+
+            jar = new File(in.readUTF());
+            originalLength = in.readLong();
+            tailOffset = in.readLong();
+            tail = new byte[in.readInt()];
+            in.readFully(tail);
+
+            long expectedCrc = crc.getValue();
+            if (in.readLong() != expectedCrc) {
+                Files.delete(journal.toPath());
+                return null;
+            }
+        } catch (EOFException e) {
+            Files.delete(journal.toPath());
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            restore(channel, tailOffset, tail, originalLength);
+        }
+
+        Files.delete(journal.toPath());
+        return jar;
+    }
+
+    private static void writeJournal(File journal, File jar, long originalLength, long tailOffset, byte[] tail) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(journal)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file), crc));
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeUTF(jar.getAbsolutePath());
+            out.writeLong(originalLength);
+            out.writeLong(tailOffset);
+            out.writeInt(tail.length);
+            out.write(tail);
+            out.writeLong(crc.getValue());
+            out.flush();
+
+            // El archivo no se modifica hasta que el diario esté completo en disco
+            file.getFD().sync();
+        }
+    }
+
+    private static void restore(FileChannel channel, long tailOffset, byte[] tail, long originalLength) throws IOException {
+        channel.position(tailOffset);
+        writeFully(channel, ByteBuffer.wrap(tail));
+        channel.truncate(originalLength);
+        channel.force(true);
+    }
+
+    /**
+     * Crea el archivo {@code target} con las entradas de {@code source}, en el mismo orden, comprimidas de nuevo con el
+     * nivel {@code level}, y a continuación la entrada {@code entryName} con el contenido {@code entryData}.<br/>
+     * <br/>
+     * Cada entrada se descomprime y se vuelve a comprimir de forma independiente en {@code executor}, mientras que la
+     * escritura se hace en este hilo y en el orden original. Como la compresión de una entrada no depende de las
+     * demás ni del hilo que la hace, el archivo resultante es idéntico, byte a byte, sea cual sea la cantidad de
+     * hilos. Para limitar la memoria utilizada solo se comprimen por adelantado {@code 2 * parallelism} entradas.<br/>
+     * <br/>
+     * Se conservan los nombres, las fechas y el comentario del archivo. Las fechas se copian de los campos MS-DOS del
+     * directorio central original, sin convertirlas, por lo que el resultado no depende de la zona horaria del
+     * sistema. Los campos extra, incluidos los de fecha extendida, y los comentarios de las entradas no se copian, al
+     * igual que sucede al reescribir un JAR con {@link java.util.jar.JarOutputStream}.
+     * Las entradas de cerca de 2GB o más no pueden comprimirse en memoria, por lo que no se admiten; sí se admiten
+     * archivos de más de 4GB, cuyas posiciones se indican con ZIP64.
+     *
+     * @param source Archivo ZIP/JAR original
+     * @param target Archivo a crear. Si existe será sobrescrito.
+     * @param entryName Nombre de la nueva entrada
+     * @param entryData Contenido (sin comprimir) de la nueva entrada
+     * @param entryTime Fecha de modificación de la nueva entrada
+     * @param level Nivel de compresión de todas las entradas
+     * @param executor Hilos en los que se comprimen las entradas, o {@code null} para comprimirlas en este hilo
+     * @param parallelism Cantidad de hilos de {@code executor}
+     * @param digest Resumen a actualizar con el contenido de {@code target}, o {@code null} para no calcularlo
+     *
+     * @throws IOException Si ocurre un error de lectura/escritura, {@code source} no es un archivo ZIP válido o
+     *                     contiene una entrada demasiado grande
+     */
+    static void reencodeWithEntry(File source, File target, String entryName, byte[] entryData, LocalDateTime entryTime,
+                                  CompressionLevel level, ExecutorService executor, int parallelism,
+                                  MessageDigest digest) throws IOException {
+        try (
+                FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                ZipFile zipFile = new ZipFile(source);
+                FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+            ) {
+            ZipCentralDirectory sourceCentralDirectory = ZipCentralDirectory.read(in);
+            byte[] comment = sourceCentralDirectory.getComment();
+            Output out = new Output(channel, digest, sourceCentralDirectory.getPrefixSize());
+            out.transfer(in, 0, sourceCentralDirectory.getPrefixSize());
+
+            // ZipFile recorre las entradas en el orden del directorio central
+            int[] dosTimes = sourceCentralDirectory.readDosTimes(in);
+
+            ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+            long entryCount = 0;
+            int readCount = 0;
+
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            Deque<Future<NewEntry>> pending = new ArrayDeque<>();
+            int window = Math.max(1, 2 * parallelism);
+            while (entries.hasMoreElements() || !pending.isEmpty()) {
+                while (executor != null && entries.hasMoreElements() && pending.size() < window) {
+                    ZipEntry zipEntry = entries.nextElement();
+                    int dosTime = getDosTime(dosTimes, readCount++);
+                    pending.add(executor.submit(() -> encode(zipFile, zipEntry, dosTime, level)));
+                }
+
+                NewEntry entry;
+                if (executor == null) {
+                    entry = encode(zipFile, entries.nextElement(), getDosTime(dosTimes, readCount++), level);
+                } else {
+                    try {
+                        entry = pending.poll().get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while compressing entries");
+                    } catch (ExecutionException e) {
+                        pending.forEach(future -> future.cancel(true));
+                        throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                    }
+                }
+
+                writeEntry(out, entry, centralDirectory);
+                entryCount++;
+            }
+
+            writeEntry(out, new NewEntry(entryName, entryData, toDosTime(entryTime), level, true), centralDirectory);
+            entryCount++;
+
+            long centralDirectoryOffset = out.offset();
+            out.write(ByteBuffer.wrap(centralDirectory.toByteArray()));
+            long centralDirectorySize = out.offset() - centralDirectoryOffset;
+
+            out.write(endRecords(out.offset(), centralDirectoryOffset, centralDirectorySize, entryCount, comment));
+        }
+    }
+
+    private static int getDosTime(int[] dosTimes, int index) throws IOException {
+        if (index >= dosTimes.length) {
+            throw new IOException("Entry count does not match the central directory");
+        }
+        return dosTimes[index];
+    }
+
+    private static NewEntry encode(ZipFile zipFile, ZipEntry zipEntry, int dosTime, CompressionLevel level) throws IOException {
+        if (zipEntry.getSize() > MAX_REENCODED_ENTRY_SIZE) {
+            throw new IOException("Entry '" + zipEntry.getName() + "' is too large to be compressed again (" + zipEntry.getSize()
+                    + " bytes). Modularize this JAR file without --compression.");
+        }
+
+        byte[] data;
+        try (InputStream input = zipFile.getInputStream(zipEntry)) {
+            data = input.readAllBytes();
+        }
+
+        // Los directorios se almacenan siempre sin comprimir
+        CompressionLevel entryLevel = zipEntry.isDirectory() ? CompressionLevel.STORE : level;
+        return new NewEntry(zipEntry.getName(), data, dosTime, entryLevel, true);
+    }
+
+    private static void writeEntry(Output out, NewEntry entry, ByteArrayOutputStream centralDirectory) throws IOException {
+        long entryOffset = out.offset();
+        out.write(entry.localHeader());
+        out.write(ByteBuffer.wrap(entry.compressedData));
+
+        ByteBuffer centralHeader = entry.centralHeader(entryOffset);
+        centralDirectory.write(centralHeader.array(), centralHeader.arrayOffset() + centralHeader.position(), centralHeader.remaining());
+    }
+
+    /**
+     * Construye los registros de fin del directorio central. Si alguno de los valores no cabe en el registro EOCD
+     * tradicional se agregan también el registro EOCD y el localizador de ZIP64.
+     */
+    static ByteBuffer endRecords(long position, long centralDirectoryOffset, long centralDirectorySize, long entryCount, byte[] comment) {
+        boolean zip64 = entryCount >= ZIP64_MAGIC_COUNT
+                || centralDirectoryOffset >= ZIP64_MAGIC
+                || centralDirectorySize >= ZIP64_MAGIC;
+
+        int length = ZipCentralDirectory.END_SIZE + comment.length
+                + (zip64 ? ZipCentralDirectory.ZIP64_END_SIZE + ZipCentralDirectory.ZIP64_LOCATOR_SIZE : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (zip64) {
+            buffer.putInt(ZipCentralDirectory.ZIP64_END_SIGNATURE);
+            buffer.putLong(ZipCentralDirectory.ZIP64_END_SIZE - 12);
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(entryCount);
+            buffer.putLong(entryCount);
+            buffer.putLong(centralDirectorySize);
+            buffer.putLong(centralDirectoryOffset);
+
+            buffer.putInt(ZipCentralDirectory.ZIP64_LOCATOR_SIGNATURE);
+            buffer.putInt(0);
+            buffer.putLong(position);
+            buffer.putInt(1);
+        }
+
+        buffer.putInt(ZipCentralDirectory.END_SIGNATURE);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT));
+        buffer.putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT));
+        buffer.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        buffer.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        buffer.putShort((short) comment.length);
+        buffer.put(comment);
+
+        buffer.flip();
+        return buffer;
+    }
+
+    static void transferFully(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long n = in.transferTo(position + transferred, count - transferred, out);
+            if (n <= 0 && in.size() < position + count) {
+                throw new IOException("Unexpected end of ZIP file");
+            }
+            transferred += n;
+        }
+    }
+
+    static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Convierte una fecha al formato de fecha y hora de MS-DOS utilizado en las cabeceras ZIP (fecha en los 16 bits
+     * superiores y hora en los 16 inferiores).
+     */
+    static int toDosTime(LocalDateTime dateTime) {
+        if (dateTime.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+
+        return (dateTime.getYear() - 1980) << 25
+                | dateTime.getMonthValue() << 21
+                | dateTime.getDayOfMonth() << 16
+                | dateTime.getHour() << 11
+                | dateTime.getMinute() << 5
+                | dateTime.getSecond() >> 1;
+    }
+
+    /**
+     * Archivo que se está creando. Si se indica un resumen, este se actualiza con todo lo que se escribe, de forma que
+     * no sea necesario volver a leer el archivo para calcularlo.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        private final long prefixSize;
+        private ByteBuffer transferBuffer;
+
+        Output(FileChannel channel, MessageDigest digest, long prefixSize) {
+            this.channel = channel;
+            this.digest = digest;
+            this.prefixSize = prefixSize;
+        }
+
+        /**
+         * @return Posición actual respecto al final del prefijo, que es la que se registra en el archivo
+         */
+        long offset() throws IOException {
+            return channel.position() - prefixSize;
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            if (digest != null) {
+                digest.update(buffer.duplicate());
+            }
+            writeFully(channel, buffer);
+        }
+
+        /**
+         * Copia {@code count} bytes de {@code in}, a partir de {@code position}. Sin resumen se copian directamente
+         * entre los archivos; con él tienen que pasar por memoria, por lo que se leen por bloques.
+         */
+        void transfer(FileChannel in, long position, long count) throws IOException {
+            if (digest == null) {
+                transferFully(in, position, count, channel);
+                return;
+            }
+
+            if (transferBuffer == null) {
+                transferBuffer = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+            }
+
+            long transferred = 0;
+            while (transferred < count) {
+                transferBuffer.clear();
+                transferBuffer.limit((int) Math.min(transferBuffer.capacity(), count - transferred));
+                int n = in.read(transferBuffer, position + transferred);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of ZIP file");
+                }
+                transferBuffer.flip();
+                write(transferBuffer);
+                transferred += n;
+            }
+        }
+    }
+
+    /**
+     * Entrada a escribir, comprimida con DEFLATE al igual que lo hace {@link java.util.jar.JarOutputStream}, o sin
+     * comprimir con el nivel {@link CompressionLevel#STORE}.
+     */
+    private static final class NewEntry {
+        private final byte[] name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final long crc;
+        private final long size;
+        private final byte[] compressedData;
+
+        NewEntry(String name, byte[] data, int dosTime, CompressionLevel level, boolean utf8Flag) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.flags = utf8Flag ? FLAG_UTF8 : 0;
+            this.method = level == CompressionLevel.STORE ? METHOD_STORED : METHOD_DEFLATED;
+            this.dosTime = dosTime;
+            this.size = data.length;
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(data);
+            this.crc = crc32.getValue();
+
+            if (method == METHOD_STORED) {
+                this.compressedData = data;
+                return;
+            }
+
+            Deflater deflater = new Deflater(level.getDeflaterLevel(), true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length);
+                byte[] buffer = new byte[4096];
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, n);
+                }
+                this.compressedData = compressed.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        ByteBuffer localHeader() {
+            ByteBuffer buffer = ByteBuffer.allocate(ZipCentralDirectory.LOCAL_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(ZipCentralDirectory.LOCAL_HEADER_SIGNATURE);
+            buffer.putShort((short) VERSION_DEFAULT);
+            buffer.putShort((short) flags);
+            buffer.putShort((short) method);
+            buffer.putInt(dosTime);
+            buffer.putInt((int) crc);
+            buffer.putInt(compressedData.length);
+            buffer.putInt((int) size);
+            buffer.putShort((short) name.length);
+            buffer.putShort((short) 0);
+            buffer.put(name);
+            buffer.flip();
+            return buffer;
+        }
+
+        ByteBuffer centralHeader(long localHeaderOffset) {
+            // Si la cabecera local queda más allá de los 4GB su posición se indica en el campo extra de ZIP64
+            boolean zip64 = localHeaderOffset >= ZIP64_MAGIC;
+            int extraLength = zip64 ? 12 : 0;
+
+            ByteBuffer buffer = ByteBuffer.allocate(ZipCentralDirectory.CENTRAL_HEADER_SIZE + name.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(ZipCentralDirectory.CENTRAL_HEADER_SIGNATURE);
+            buffer.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+            buffer.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+            buffer.putShort((short) flags);
+            buffer.putShort((short) method);
+            buffer.putInt(dosTime);
+            buffer.putInt((int) crc);
+            buffer.putInt(compressedData.length);
+            buffer.putInt((int) size);
+            buffer.putShort((short) name.length);
+            buffer.putShort((short) extraLength);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putInt(0);
+            buffer.putInt((int) Math.min(localHeaderOffset, ZIP64_MAGIC));
+            buffer.put(name);
+
+            if (zip64) {
+                buffer.putShort((short) ZIP64_EXTRA_ID);
+                buffer.putShort((short) 8);
+                buffer.putLong(localHeaderOffset);
+            }
+
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -24,8 +24,11 @@
 package com.betanzos.modularizer.tda;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiPredicate;
+import java.util.function.Function;
 
 /**
  * @author Eduardo Betanzos
@@ -35,8 +38,34 @@ public class Tree<T> {
 
     private TreeNode<T> root;
 
+    private final Function<? super T, ?> keyFunction;
+    private final Map<Object, TreeNode<T>> nodesByKey;
+
     public Tree(TreeNode<T> root) {
+        this(root, null);
+    }
+
+    /**
+     * Crea un árbol cuyos nodos están indexados por la clave que {@code keyFunction} obtiene de sus datos, lo que
+     * permite buscarlos en tiempo constante con {@link #findNodeByKey(Object)} y {@link #findNodeByData(Object)}. El
+     * índice se mantiene actualizado al agregar, mover o eliminar nodos.<br/>
+     * <br/>
+     * Las claves deben ser únicas. Si dos nodos tienen la misma clave solo el primero en ser agregado será indexado.
+     * Los nodos cuya clave sea {@code null} no se indexan.
+     *
+     * @param root Raíz del árbol
+     * @param keyFunction Función que obtiene la clave de los datos de un nodo
+     *
+     * @since 1.1
+     */
+    public Tree(TreeNode<T> root, Function<? super T, ?> keyFunction) {
         this.root = root;
+        this.keyFunction = keyFunction;
+        this.nodesByKey = keyFunction != null ? new HashMap<>() : null;
+
+        if (root != null) {
+            root.setTree(this);
+        }
     }
 
     public boolean isEmpty() {
@@ -63,83 +92,135 @@ public class Tree<T> {
     }
 
     public int getTreeLevel() {
-        List<TreeNode<T>> nodeList = getPreOrderNodeList();
-        int treeLevel = 0;
-        for (TreeNode<T> node : nodeList) {
-            int nodeLevel = getNodeLevel(node);
-            if (nodeLevel > treeLevel) {
-                treeLevel = nodeLevel;
-            }
-        }
-        return treeLevel;
+        return getLevels().size() - 1;
     }
 
     public TreeNode<T> getFather(TreeNode<T> node) {
-        TreeNode<T> father = null;
-        if (!node.equals(root)) {
-            List<TreeNode<T>> nodeList = getPreOrderNodeList();
-            boolean found = false;
-            int i = 0;
-            while (!found && i < nodeList.size()) {
-                TreeNode<T> candidateFather = nodeList.get(i);
-                List<TreeNode<T>> children = candidateFather.getChildren();
-                
-                int j = 0;
-                while (!found && j < children.size()) {
-                    TreeNode<T> item = children.get(j);
-                    if (item.equals(node)) {
-                        found = true;
-                    }
-                    j++;
-                }
-                
-                if (found) {
-                    father = candidateFather;
-                }
-                i++;
-            }
+        if (node == root || node.getTree() != this) {
+            return null;
         }
-        
-        return father;
+
+        return node.getParent();
     }
 
     public int getNodeLevel(TreeNode<T> node) {
-        if (node.equals(root)) {
-            return 0;
-        } else {
-            return getNodeLevel(getFather(node)) + 1;
-        }
+        return node.getDepth() - root.getDepth();
     }
 
     public List<TreeNode<T>> getNodesAtLevel(int level) {
-        List<TreeNode<T>> nodeList = getPreOrderNodeList();
-        List<TreeNode<T>> founds = new ArrayList<>();
-        for (TreeNode<T> node : nodeList) {
-            if (getNodeLevel(node) == level) {
-                founds.add(node);
+        List<TreeNode<T>> currentLevel = new ArrayList<>();
+        if (!isEmpty() && level >= 0) {
+            currentLevel.add(root);
+            for (int i = 0; i < level && !currentLevel.isEmpty(); i++) {
+                List<TreeNode<T>> nextLevel = new ArrayList<>();
+                for (TreeNode<T> node : currentLevel) {
+                    nextLevel.addAll(node.getChildren());
+                }
+                currentLevel = nextLevel;
             }
         }
-        return founds;
+        return currentLevel;
     }
 
-    public TreeNode<T> findNodeByData(T data, BiPredicate<T, T> predicate) {
-        List<TreeNode<T>> nodeList = getPreOrderNodeList();
+    /**
+     * Agrupa los nodos del árbol por niveles en un único recorrido.
+     *
+     * @return Listado de los nodos de cada nivel, donde el elemento {@code i} contiene los nodos del nivel {@code i}.
+     *         Si el árbol está vacío el listado estará vacío.
+     *
+     * @since 1.1
+     */
+    public List<List<TreeNode<T>>> getLevels() {
+        List<List<TreeNode<T>>> levels = new ArrayList<>();
+        if (!isEmpty()) {
+            List<TreeNode<T>> currentLevel = new ArrayList<>();
+            currentLevel.add(root);
+            while (!currentLevel.isEmpty()) {
+                levels.add(currentLevel);
+
+                List<TreeNode<T>> nextLevel = new ArrayList<>();
+                for (TreeNode<T> node : currentLevel) {
+                    nextLevel.addAll(node.getChildren());
+                }
+                currentLevel = nextLevel;
+            }
+        }
+        return levels;
+    }
 
-        int i = 0;
-        while (i < nodeList.size()) {
-            TreeNode<T> node = nodeList.get(i);
-            if (predicate.test(node.getData(), data)) {
-                return node;
+    public TreeNode<T> findNodeByData(T data, BiPredicate<T, T> predicate) {
+        if (!isEmpty()) {
+            // Mismo orden que getPreOrderNodeList() pero deteniendo el recorrido al encontrar el nodo
+            List<TreeNode<T>> nodeList = new ArrayList<>();
+            nodeList.add(root);
+            for (int i = 0; i < nodeList.size(); i++) {
+                TreeNode<T> node = nodeList.get(i);
+                if (predicate.test(node.getData(), data)) {
+                    return node;
+                }
+                nodeList.addAll(node.getChildren());
             }
-            i++;
         }
         return null;
     }
 
+    /**
+     * Busca el nodo cuyos datos tienen la misma clave que {@code data}. Si el árbol no fue creado con una función de
+     * clave se busca el nodo cuyos datos sean iguales ({@link Object#equals(Object)}) a {@code data}.
+     *
+     * @param data Datos a buscar
+     *
+     * @return El nodo encontrado o {@code null} si no existe ninguno
+     *
+     * @since 1.1
+     */
+    public TreeNode<T> findNodeByData(T data) {
+        if (nodesByKey != null) {
+            return findNodeByKey(keyFunction.apply(data));
+        }
+
+        return findNodeByData(data, Object::equals);
+    }
+
+    /**
+     * @param key Clave a buscar
+     *
+     * @return El nodo cuyos datos tienen la clave {@code key} o {@code null} si no existe ninguno
+     *
+     * @throws IllegalStateException Si el árbol no fue creado con una función de clave
+     *
+     * @since 1.1
+     */
+    public TreeNode<T> findNodeByKey(Object key) {
+        if (nodesByKey == null) {
+            throw new IllegalStateException("Tree has no key function");
+        }
+
+        return key != null ? nodesByKey.get(key) : null;
+    }
+
     public void removeSubtree(TreeNode<T> node) {
         TreeNode<T> father = getFather(node);
         if (father != null) {
             father.getChildren().remove(node);
         }
     }
+
+    void index(TreeNode<T> node) {
+        if (nodesByKey != null) {
+            Object key = keyFunction.apply(node.getData());
+            if (key != null) {
+                nodesByKey.putIfAbsent(key, node);
+            }
+        }
+    }
+
+    void unindex(TreeNode<T> node) {
+        if (nodesByKey != null) {
+            Object key = keyFunction.apply(node.getData());
+            if (key != null) {
+                nodesByKey.remove(key, node);
+            }
+        }
+    }
 }
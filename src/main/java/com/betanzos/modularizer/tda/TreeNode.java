@@ -23,7 +23,10 @@
  */
 package com.betanzos.modularizer.tda;
 
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 /**
@@ -35,13 +38,17 @@ public class TreeNode<T> {
     private T data;
     private List<TreeNode<T>> children;
 
+    private TreeNode<T> parent;
+    private int depth;
+    private Tree<T> tree;
+
     public TreeNode(T data) {
         if (data == null) {
             throw new IllegalArgumentException("'data' can´t be null");
         }
 
         this.data = data;
-        children = new ArrayList<>();
+        children = new ChildrenList();
     }
 
     public T getData() {
@@ -56,10 +63,34 @@ public class TreeNode<T> {
         return children.isEmpty();
     }
 
+    /**
+     * Los nodos agregados o eliminados mediante la lista devuelta actualizan automáticamente su padre y su
+     * profundidad. Agregar un nodo que ya tiene padre lo mueve (junto con su descendencia) al nuevo padre.
+     *
+     * @return Listado modificable de los hijos del nodo
+     */
     public List<TreeNode<T>> getChildren() {
         return children;
     }
 
+    /**
+     * @return Padre del nodo o {@code null} si el nodo no tiene padre
+     *
+     * @since 1.1
+     */
+    public TreeNode<T> getParent() {
+        return parent;
+    }
+
+    /**
+     * @return Cantidad de ancestros del nodo. Es {@code 0} para un nodo sin padre.
+     *
+     * @since 1.1
+     */
+    public int getDepth() {
+        return depth;
+    }
+
     public int getChildIndex(TreeNode<T> node) {
         boolean found = false;
         int i = 0;
@@ -77,4 +108,144 @@ public class TreeNode<T> {
     public TreeNode<T> getChildAt(int index) {
         return children.get(index);
     }
+
+    /**
+     * Árbol al que pertenece el nodo, solo para la raíz de un {@link Tree} y sus descendientes
+     */
+    Tree<T> getTree() {
+        return tree;
+    }
+
+    /**
+     * Asigna el árbol al que pertenecen este nodo y toda su descendencia
+     */
+    void setTree(Tree<T> tree) {
+        updateSubtree(this, depth, tree);
+    }
+
+    /**
+     * Enlaza {@code child} como hijo de este nodo, desenlazándolo antes de su padre anterior si lo tenía, y actualiza
+     * la profundidad y el árbol de toda su descendencia.
+     */
+    private void attach(TreeNode<T> child) {
+        if (child == null) {
+            throw new IllegalArgumentException("'child' can´t be null");
+        }
+
+        for (TreeNode<T> ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor == child) {
+                throw new IllegalArgumentException("A node can´t be a descendant of itself");
+            }
+        }
+
+        if (child.parent != null) {
+            child.parent.children.remove(child);
+        }
+
+        child.parent = this;
+        updateSubtree(child, depth + 1, tree);
+    }
+
+    private void detach(TreeNode<T> child) {
+        child.parent = null;
+        updateSubtree(child, 0, null);
+    }
+
+    private static <T> void updateSubtree(TreeNode<T> subtreeRoot, int subtreeRootDepth, Tree<T> newTree) {
+        int depthDelta = subtreeRootDepth - subtreeRoot.depth;
+        Tree<T> oldTree = subtreeRoot.tree;
+
+        Deque<TreeNode<T>> pending = new ArrayDeque<>();
+        pending.push(subtreeRoot);
+        while (!pending.isEmpty()) {
+            TreeNode<T> node = pending.pop();
+            node.depth += depthDelta;
+
+            if (oldTree != newTree) {
+                if (oldTree != null) {
+                    oldTree.unindex(node);
+                }
+                node.tree = newTree;
+                if (newTree != null) {
+                    newTree.index(node);
+                }
+            }
+
+            for (TreeNode<T> child : node.children) {
+                pending.push(child);
+            }
+        }
+    }
+
+    /**
+     * Lista de hijos que mantiene actualizados el padre y la profundidad de los nodos que se agregan o eliminan
+     */
+    private final class ChildrenList extends AbstractList<TreeNode<T>> {
+        private final ArrayList<TreeNode<T>> nodes = new ArrayList<>();
+
+        @Override
+        public TreeNode<T> get(int index) {
+            return nodes.get(index);
+        }
+
+        @Override
+        public int size() {
+            return nodes.size();
+        }
+
+        @Override
+        public Object[] toArray() {
+            return nodes.toArray();
+        }
+
+        @Override
+        public <E> E[] toArray(E[] array) {
+            return nodes.toArray(array);
+        }
+
+        @Override
+        public void add(int index, TreeNode<T> node) {
+            // Si el nodo ya es hijo de este nodo, attach lo elimina de su posición actual
+            int currentIndex = node != null && node.parent == TreeNode.this ? nodes.indexOf(node) : -1;
+            attach(node);
+            if (currentIndex >= 0 && currentIndex < index) {
+                index--;
+            }
+
+            nodes.add(index, node);
+            modCount++;
+        }
+
+        @Override
+        public TreeNode<T> set(int index, TreeNode<T> node) {
+            TreeNode<T> previous = nodes.get(index);
+            if (previous == node) {
+                return previous;
+            }
+
+            attach(node);
+            // attach puede haber desplazado los índices si el nodo ya era hijo de este mismo nodo
+            previous = nodes.set(nodes.indexOf(previous), node);
+            detach(previous);
+            return previous;
+        }
+
+        @Override
+        public TreeNode<T> remove(int index) {
+            TreeNode<T> removed = nodes.remove(index);
+            modCount++;
+            detach(removed);
+            return removed;
+        }
+
+        @Override
+        public boolean remove(Object node) {
+            if (!(node instanceof TreeNode) || ((TreeNode<?>) node).parent != TreeNode.this) {
+                return false;
+            }
+
+            remove(nodes.indexOf(node));
+            return true;
+        }
+    }
 }
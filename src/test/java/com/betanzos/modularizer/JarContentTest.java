@@ -0,0 +1,82 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2019 Eduardo E. Betanzos Morales
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.betanzos.modularizer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Eduardo Betanzos
+ * @since 1.1
+ */
+public class JarContentTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * "ñññ" ocupa en UTF-8 los mismos bytes que "abcdef" pero la mitad de caracteres
+     */
+    @Test
+    public void scanFindsNonAsciiPackageAfterAsciiPackageOfSameByteLength() throws IOException {
+        File jar = createJar("abcdef/X.class", "ñññ/A.class", "ñññ/B.class");
+
+        JarContent content = JarContent.scan(jar);
+
+        assertEquals(new HashSet<>(Arrays.asList("abcdef", "ñññ")), content.getNonEmptyPackages());
+        assertEquals(Arrays.asList("ñññ.A", "ñññ.B"), content.getClasses("ñññ"));
+    }
+
+    @Test
+    public void scanFindsAsciiPackageAfterNonAsciiPackageOfSameByteLength() throws IOException {
+        File jar = createJar("ñññ/A.class", "abcdef/X.class");
+
+        JarContent content = JarContent.scan(jar);
+
+        assertEquals(new HashSet<>(Arrays.asList("abcdef", "ñññ")), content.getNonEmptyPackages());
+        assertEquals(Arrays.asList("abcdef.X"), content.getClasses("abcdef"));
+    }
+
+    private File createJar(String... entryNames) throws IOException {
+        File jar = folder.newFile("test.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (String entryName : entryNames) {
+                out.putNextEntry(new ZipEntry(entryName));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}